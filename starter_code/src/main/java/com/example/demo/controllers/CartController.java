@@ -1,13 +1,25 @@
 package com.example.demo.controllers;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.IntStream;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -15,25 +27,94 @@ import com.example.demo.model.persistence.Cart;
 import com.example.demo.model.persistence.Item;
 import com.example.demo.model.persistence.User;
 import com.example.demo.model.persistence.repositories.CartRepository;
+import com.example.demo.model.persistence.repositories.CartRepository.CartVersion;
 import com.example.demo.model.persistence.repositories.ItemRepository;
 import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.requests.BatchCartRequest;
+import com.example.demo.model.requests.CartOperation;
+import com.example.demo.model.requests.MergeCartRequest;
 import com.example.demo.model.requests.ModifyCartRequest;
+import com.example.demo.model.responses.CartDelta;
+import com.example.demo.model.responses.CartSummary;
+import com.example.demo.services.CartEngine;
+import com.example.demo.services.CartJsonCache;
+import com.example.demo.services.CartService;
+import com.example.demo.services.GuestCartTokens;
+import com.example.demo.services.IdempotencyStore;
 
 @RestController
 @RequestMapping("/api/cart")
 public class CartController {
 	
+	private static final String PREFERENCE_APPLIED = "Preference-Applied";
+
+	private static final String RETURN_MINIMAL = "minimal";
+
+	private static final String RETURN_DELTA = "delta";
+	
 	@Autowired
 	private UserRepository userRepository;
 	
+	@Autowired
+	private CartEngine cartEngine;
+	
 	@Autowired
 	private CartRepository cartRepository;
 	
 	@Autowired
 	private ItemRepository itemRepository;
+
+	@Autowired
+	private CartService cartService;
+
+	@Autowired
+	private GuestCartTokens guestCartTokens;
+
+	@Autowired(required = false)
+	private CartJsonCache cartJsonCache;
+
+	@Autowired
+	private IdempotencyStore idempotencyStore;
+	
+	/**
+	 * Returns the user's cart with an {@code ETag} derived from its version.
+	 * When {@code If-None-Match} carries the current tag the answer is
+	 * {@code 304} and neither the lines nor the items are loaded. Otherwise
+	 * the JSON cached for that version is sent as is when there is one.
+	 */
+	@GetMapping("/{username}")
+	public ResponseEntity<Object> getCart(@PathVariable String username,
+			@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+		CartVersion cartVersion = cartRepository.findVersionByUsername(username);
+		if(cartVersion == null) {
+			return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+		}
+		Cart current = cartEngine.current(cartVersion.getId());
+		long version = current == null ? cartVersion.getVersion() : current.getVersion();
+		String etag = "\"" + cartVersion.getId() + "." + version + "\"";
+		if(matches(ifNoneMatch, etag)) {
+			return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+		}
+		byte[] json = cartJsonCache == null ? null : cartJsonCache.get(cartVersion.getId(), version);
+		if(json != null) {
+			return ResponseEntity.ok().eTag(etag).contentType(MediaType.APPLICATION_JSON).body(json);
+		}
+		Cart cart = current != null ? current : cartRepository.findById(cartVersion.getId()).orElse(null);
+		if(cart == null) {
+			return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+		}
+		return body(ResponseEntity.ok().eTag(etag), cart);
+	}
 	
 	@PostMapping("/addToCart")
-	public ResponseEntity<Cart> addTocart(@RequestBody ModifyCartRequest request) {
+	public ResponseEntity<Object> addTocart(@RequestBody ModifyCartRequest request,
+			@RequestHeader(value = "Prefer", required = false) String prefer,
+			@RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
+		return idempotencyStore.execute("cart/addToCart/" + request.getUsername(), idempotencyKey, request,
+				() -> addItem(request, prefer));
+	}
+
+	private ResponseEntity<Object> addItem(ModifyCartRequest request, String prefer) {
 		User user = userRepository.findByUsername(request.getUsername());
 		if(user == null) {
 			return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
@@ -42,15 +123,21 @@ public class CartController {
 		if(!item.isPresent()) {
 			return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
 		}
-		Cart cart = user.getCart();
-		IntStream.range(0, request.getQuantity())
-			.forEach(i -> cart.addItem(item.get()));
-		cartRepository.save(cart);
-		return ResponseEntity.ok(cart);
+		CartOperation operation = new CartOperation(CartOperation.Type.ADD, request.getItemId(), request.getQuantity());
+		List<CartOperation> operations = List.of(operation);
+		Cart cart = apply(user.getCart(), operations, Map.of(request.getItemId(), item.get()));
+		return respond(cart, operations, prefer);
 	}
 	
 	@PostMapping("/removeFromCart")
-	public ResponseEntity<Cart> removeFromcart(@RequestBody ModifyCartRequest request) {
+	public ResponseEntity<Object> removeFromcart(@RequestBody ModifyCartRequest request,
+			@RequestHeader(value = "Prefer", required = false) String prefer,
+			@RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
+		return idempotencyStore.execute("cart/removeFromCart/" + request.getUsername(), idempotencyKey, request,
+				() -> removeItem(request, prefer));
+	}
+
+	private ResponseEntity<Object> removeItem(ModifyCartRequest request, String prefer) {
 		User user = userRepository.findByUsername(request.getUsername());
 		if(user == null) {
 			return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
@@ -59,11 +146,164 @@ public class CartController {
 		if(!item.isPresent()) {
 			return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
 		}
-		Cart cart = user.getCart();
-		IntStream.range(0, request.getQuantity())
-			.forEach(i -> cart.removeItem(item.get()));
-		cartRepository.save(cart);
-		return ResponseEntity.ok(cart);
+		CartOperation operation = new CartOperation(CartOperation.Type.REMOVE, request.getItemId(), request.getQuantity());
+		List<CartOperation> operations = List.of(operation);
+		Cart cart = apply(user.getCart(), operations, Map.of(request.getItemId(), item.get()));
+		return respond(cart, operations, prefer);
+	}
+
+	/**
+	 * Applies a list of add/remove/set operations to one cart. All referenced
+	 * items are resolved with a single query and the cart is persisted once, so
+	 * a whole basket can be synchronised in one round trip. Adds and removes
+	 * take a positive quantity and sets a quantity of zero or more, zero
+	 * taking the item out of the cart; anything else is rejected with
+	 * {@code 400}.
+	 * <p>
+	 * Like the single-item endpoints, the response honours
+	 * {@code Prefer: return=minimal} and {@code Prefer: return=delta}, and a
+	 * retry with the same {@code Idempotency-Key} gets the stored response.
+	 */
+	@PostMapping("/batch")
+	public ResponseEntity<Object> batch(@RequestBody BatchCartRequest request,
+			@RequestHeader(value = "Prefer", required = false) String prefer,
+			@RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
+		return idempotencyStore.execute("cart/batch/" + request.getUsername(), idempotencyKey, request,
+				() -> applyBatch(request, prefer));
 	}
-		
+
+	private ResponseEntity<Object> applyBatch(BatchCartRequest request, String prefer) {
+		if(request.getOperations() == null || request.getOperations().isEmpty()) {
+			return ResponseEntity.badRequest().build();
+		}
+		for(CartOperation operation : request.getOperations()) {
+			if(operation == null || operation.getType() == null || !validQuantity(operation)) {
+				return ResponseEntity.badRequest().build();
+			}
+		}
+		User user = userRepository.findByUsername(request.getUsername());
+		if(user == null) {
+			return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+		}
+		Set<Long> itemIds = request.getOperations().stream()
+			.map(CartOperation::getItemId)
+			.collect(Collectors.toSet());
+		Map<Long, Item> items = itemRepository.findAllById(itemIds).stream()
+			.collect(Collectors.toMap(Item::getId, Function.identity()));
+		if(items.size() != itemIds.size()) {
+			return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+		}
+		Cart cart = apply(user.getCart(), request.getOperations(), items);
+		return respond(cart, request.getOperations(), prefer);
+	}
+
+	private static boolean validQuantity(CartOperation operation) {
+		return operation.getType() == CartOperation.Type.SET ? operation.getQuantity() >= 0 : operation.getQuantity() > 0;
+	}
+
+	/**
+	 * Merges a signed guest cart, built with {@code /api/guest-cart}, into
+	 * the user's cart in one batched write. Meant to be called right after
+	 * login. The guest's quantities replace the user's for the same items, so
+	 * merging a token twice leaves the cart as after the first merge. A
+	 * forged or expired token is rejected with {@code 400}.
+	 */
+	@PostMapping("/merge")
+	public ResponseEntity<Object> merge(@RequestBody MergeCartRequest request,
+			@RequestHeader(value = "Prefer", required = false) String prefer,
+			@RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
+		return idempotencyStore.execute("cart/merge/" + request.getUsername(), idempotencyKey, request,
+				() -> mergeGuestCart(request, prefer));
+	}
+
+	private ResponseEntity<Object> mergeGuestCart(MergeCartRequest request, String prefer) {
+		Map<Long, Integer> quantities;
+		try {
+			quantities = guestCartTokens.decode(request.getGuestCart());
+		} catch(IllegalArgumentException e) {
+			return ResponseEntity.badRequest().build();
+		}
+		User user = userRepository.findByUsername(request.getUsername());
+		if(user == null) {
+			return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+		}
+		Cart cart = cartService.merge(user.getCart(), quantities);
+		List<CartOperation> operations = new ArrayList<>();
+		quantities.forEach((itemId, quantity) -> operations.add(new CartOperation(CartOperation.Type.SET, itemId, quantity)));
+		return respond(cart, operations, prefer);
+	}
+
+	/**
+	 * Builds the mutation response the client asked for with the
+	 * {@code Prefer} header: the full cart by default, only its version, line
+	 * count and total for {@code return=minimal}, or that plus the lines the
+	 * operations touched for {@code return=delta}.
+	 */
+	private ResponseEntity<Object> respond(Cart cart, List<CartOperation> operations, String prefer) {
+		String mode = returnPreference(prefer);
+		if(RETURN_MINIMAL.equals(mode)) {
+			return ResponseEntity.ok()
+				.header(PREFERENCE_APPLIED, "return=" + RETURN_MINIMAL)
+				.body(new CartSummary(cart));
+		}
+		if(RETURN_DELTA.equals(mode)) {
+			Set<Long> itemIds = new LinkedHashSet<>();
+			operations.forEach(operation -> itemIds.add(operation.getItemId()));
+			return ResponseEntity.ok()
+				.header(PREFERENCE_APPLIED, "return=" + RETURN_DELTA)
+				.body(new CartDelta(cart, itemIds));
+		}
+		return body(ResponseEntity.ok(), cart);
+	}
+
+	/**
+	 * Sends the full cart, through the JSON cache when it is enabled so that
+	 * the next read, or a request that leaves the cart unchanged, reuses the
+	 * bytes rendered here.
+	 */
+	private ResponseEntity<Object> body(ResponseEntity.BodyBuilder response, Cart cart) {
+		if(cartJsonCache == null) {
+			return response.body(cart);
+		}
+		return response.contentType(MediaType.APPLICATION_JSON).body(cartJsonCache.render(cart));
+	}
+
+	/**
+	 * Extracts the value of the {@code return} preference from a
+	 * {@code Prefer} header such as {@code respond-async, return=minimal}.
+	 */
+	private static String returnPreference(String prefer) {
+		if(prefer == null) {
+			return null;
+		}
+		for(String preference : prefer.split(",")) {
+			String token = preference.split(";", 2)[0].trim();
+			int equals = token.indexOf('=');
+			if(equals > 0 && token.substring(0, equals).trim().equalsIgnoreCase("return")) {
+				return token.substring(equals + 1).trim().replace("\"", "").toLowerCase(Locale.ROOT);
+			}
+		}
+		return null;
+	}
+
+	private static boolean matches(String ifNoneMatch, String etag) {
+		if(ifNoneMatch == null) {
+			return false;
+		}
+		for(String candidate : ifNoneMatch.split(",")) {
+			String tag = candidate.trim();
+			if(tag.startsWith("W/")) {
+				tag = tag.substring(2);
+			}
+			if(tag.equals("*") || tag.equals(etag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private Cart apply(Cart cart, List<CartOperation> operations, Map<Long, Item> items) {
+		return cartService.apply(cart, operations, items);
+	}
+
 }
@@ -0,0 +1,53 @@
+package com.example.demo.controllers;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.example.demo.services.CrdtCartEngine;
+import com.example.demo.services.ReplicatedCart;
+
+/**
+ * Node-to-node endpoints of the {@code crdt} cart engine. Peers push the
+ * carts they changed and pull single carts at checkout. Callers must send
+ * the shared {@code cart.crdt.replication-key}, which has no default: the
+ * engine refuses to start without one.
+ */
+@RestController
+@RequestMapping(CrdtCartEngine.REPLICATION_PATH)
+@ConditionalOnProperty(name = "cart.engine", havingValue = "crdt")
+public class CrdtReplicationController {
+
+	@Autowired
+	private CrdtCartEngine crdtCartEngine;
+
+	@PostMapping
+	public ResponseEntity<Void> receive(@RequestHeader(value = CrdtCartEngine.REPLICATION_KEY_HEADER, required = false) String key,
+			@RequestBody Map<Long, ReplicatedCart> carts) {
+		if(!crdtCartEngine.isReplicationKey(key)) {
+			return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+		}
+		crdtCartEngine.receive(carts);
+		return ResponseEntity.noContent().build();
+	}
+
+	@GetMapping("/{cartId}")
+	public ResponseEntity<ReplicatedCart> snapshot(@RequestHeader(value = CrdtCartEngine.REPLICATION_KEY_HEADER, required = false) String key,
+			@PathVariable Long cartId) {
+		if(!crdtCartEngine.isReplicationKey(key)) {
+			return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+		}
+		ReplicatedCart snapshot = crdtCartEngine.snapshot(cartId);
+		return snapshot == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(snapshot);
+	}
+}
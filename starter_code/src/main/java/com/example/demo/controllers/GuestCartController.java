@@ -0,0 +1,65 @@
+package com.example.demo.controllers;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.example.demo.model.requests.CartOperation;
+import com.example.demo.model.requests.GuestCartRequest;
+import com.example.demo.model.responses.GuestCartResponse;
+import com.example.demo.services.GuestCartTokens;
+
+/**
+ * Cart for visitors without an account. The cart lives entirely in a signed
+ * token held by the client: each request sends the token and the operations,
+ * and gets a new token back. Nothing is read from or written to the database
+ * until the token is merged through {@code /api/cart/merge} or an order
+ * submission.
+ */
+@RestController
+@RequestMapping("/api/guest-cart")
+public class GuestCartController {
+
+	@Autowired
+	private GuestCartTokens guestCartTokens;
+
+	@PostMapping("/batch")
+	public ResponseEntity<GuestCartResponse> batch(@RequestBody GuestCartRequest request) {
+		if(request.getOperations() == null || request.getOperations().isEmpty()) {
+			return ResponseEntity.badRequest().build();
+		}
+		Map<Long, Integer> quantities;
+		try {
+			quantities = guestCartTokens.decode(request.getGuestCart());
+		} catch(IllegalArgumentException e) {
+			return ResponseEntity.badRequest().build();
+		}
+		for(CartOperation operation : request.getOperations()) {
+			// an absent or null itemId binds to 0, which no item has
+			if(operation == null || operation.getType() == null || operation.getItemId() <= 0) {
+				return ResponseEntity.badRequest().build();
+			}
+			int current = quantities.getOrDefault(operation.getItemId(), 0);
+			int quantity = Math.max(operation.getQuantity(), 0);
+			int target = switch(operation.getType()) {
+				case ADD -> (int) Math.min((long) current + quantity, Integer.MAX_VALUE);
+				case REMOVE -> Math.max(current - quantity, 0);
+				case SET -> quantity;
+			};
+			if(target == 0) {
+				quantities.remove(operation.getItemId());
+			} else {
+				quantities.put(operation.getItemId(), target);
+			}
+		}
+		if(quantities.size() > guestCartTokens.getMaxLines()) {
+			return ResponseEntity.badRequest().build();
+		}
+		return ResponseEntity.ok(new GuestCartResponse(guestCartTokens.encode(quantities), quantities));
+	}
+}
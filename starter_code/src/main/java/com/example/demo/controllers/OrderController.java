@@ -1,22 +1,52 @@
 
 package com.example.demo.controllers;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.OrderLine;
+import com.example.demo.model.persistence.RevenueRollup.Granularity;
 import com.example.demo.model.persistence.User;
 import com.example.demo.model.persistence.UserOrder;
 import com.example.demo.model.persistence.repositories.OrderRepository;
 import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.responses.OrderStatus;
+import com.example.demo.model.responses.OrderSummary;
+import com.example.demo.model.responses.RevenueReport;
+import com.example.demo.services.CartEngine;
+import com.example.demo.services.CartService;
+import com.example.demo.services.CheckoutService;
+import com.example.demo.services.GuestCartTokens;
+import com.example.demo.services.IdempotencyStore;
+import com.example.demo.services.OrderArchive;
+import com.example.demo.services.OrderHistoryExporter;
+import com.example.demo.services.OrderSubmissionQueue;
+import com.example.demo.services.RevenueRollups;
 
 @RestController
 @RequestMapping("/api/order")
@@ -24,14 +54,77 @@ public class OrderController {
 
 	private static final Logger logger = LoggerFactory.getLogger(OrderController.class);
 
+	public static final String GUEST_CART_HEADER = "X-Guest-Cart";
+
+	private static final String RESPOND_ASYNC = "respond-async";
+
 	@Autowired
 	private UserRepository userRepository;
 
 	@Autowired
 	private OrderRepository orderRepository;
 
+	@Autowired
+	private CartEngine cartEngine;
+
+	@Autowired
+	private CartService cartService;
+
+	@Autowired
+	private GuestCartTokens guestCartTokens;
+
+	@Autowired
+	private OrderHistoryExporter orderHistoryExporter;
+
+	@Autowired(required = false)
+	private OrderArchive orderArchive;
+
+	@Autowired
+	private OrderSubmissionQueue orderSubmissionQueue;
+
+	@Autowired
+	private CheckoutService checkoutService;
+
+	@Autowired
+	private IdempotencyStore idempotencyStore;
+
+	@Value("${order.history.default-page-size:50}")
+	private int defaultPageSize;
+
+	@Value("${order.history.max-page-size:200}")
+	private int maxPageSize;
+
+	@Autowired(required = false)
+	private RevenueRollups revenueRollups;
+
+	@Value("${order.rollup.max-buckets:10000}")
+	private int maxReportBuckets;
+
+	/**
+	 * Places an order for the contents of the user's cart and empties the
+	 * cart, in one transaction. A guest cart token passed in
+	 * {@value #GUEST_CART_HEADER} is merged into the cart first, in one
+	 * batched write that sets the guest's quantities, so a retried
+	 * submission carrying the same token does not add them again.
+	 * <p>
+	 * With {@code Prefer: respond-async} the order is validated and built
+	 * here but inserted, and the cart emptied, by {@link OrderSubmissionQueue}:
+	 * the answer is {@code 202} with an {@link OrderStatus} handle and a
+	 * {@code Location} to poll, or {@code 503} when the queue is full.
+	 * <p>
+	 * A retry carrying the {@code Idempotency-Key} of an earlier submission
+	 * gets that submission's response instead of placing a second order.
+	 */
 	@PostMapping("/submit/{username}")
-	public ResponseEntity<UserOrder> submit(@PathVariable String username) {
+	public ResponseEntity<Object> submit(@PathVariable String username,
+			@RequestHeader(value = GUEST_CART_HEADER, required = false) String guestCart,
+			@RequestHeader(value = "Prefer", required = false) String prefer,
+			@RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
+		return idempotencyStore.execute("order/submit/" + username, idempotencyKey, guestCart,
+				() -> placeOrder(username, guestCart, prefer));
+	}
+
+	private ResponseEntity<Object> placeOrder(String username, String guestCart, String prefer) {
 		logger.info("Order submission request initiated for username: {}", username);
 
 		try {
@@ -46,27 +139,56 @@ public class OrderController {
 				return ResponseEntity.badRequest().build();
 			}
 
-			if(user.getCart().getItems() == null || user.getCart().getItems().isEmpty()) {
+			Cart cart = user.getCart();
+			if(guestCart != null) {
+				Map<Long, Integer> quantities;
+				try {
+					quantities = guestCartTokens.decode(guestCart);
+				} catch(IllegalArgumentException e) {
+					logger.warn("Order submission failed for username: {} - Invalid guest cart: {}", username, e.getMessage());
+					return ResponseEntity.badRequest().build();
+				}
+				cart = cartService.merge(cart, quantities);
+			}
+			cart = cartEngine.flush(cart);
+
+			if(cart.getItems() == null || cart.getItems().isEmpty()) {
 				logger.warn("Order submission failed for username: {} - Cart is empty", username);
 				return ResponseEntity.badRequest().build();
 			}
 
-			logger.debug("Creating order for username: {} with {} items, total: {}",
-					username,
-					user.getCart().getItems().size(),
-					user.getCart().getTotal());
+			if(respondAsync(prefer)) {
+				UserOrder order = UserOrder.createFromCart(cart);
+				order.setUser(user);
+				OrderStatus status = orderSubmissionQueue.submit(order, cart.getId(), cart.getVersion());
+				if(status == null) {
+					logger.warn("Order submission failed for username: {} - Submission queue is full", username);
+					return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").build();
+				}
+				logger.info("Order submission accepted for username: {} - Handle: {}", username, status.getHandle());
+				return ResponseEntity.accepted()
+						.location(ServletUriComponentsBuilder.fromCurrentContextPath()
+								.path("/api/order/status/{handle}").buildAndExpand(status.getHandle()).toUri())
+						.header("Preference-Applied", RESPOND_ASYNC)
+						.body(status);
+			}
 
-			UserOrder order = UserOrder.createFromCart(user.getCart());
-			order.setUser(user);
+			logger.debug("Checking out cart for username: {} with {} items, total: {}",
+					username,
+					cart.getItems().size(),
+					cart.getTotal());
 
-			logger.debug("Saving order to database for username: {}", username);
-			UserOrder savedOrder = orderRepository.save(order);
+			UserOrder savedOrder = checkoutService.checkout(user, cart.getId());
+			if(savedOrder == null) {
+				logger.warn("Order submission failed for username: {} - Cart is empty", username);
+				return ResponseEntity.badRequest().build();
+			}
 
-			logger.info("Order submission successful for username: {} - Order created with ID: {}, total: {}, items count: {}",
+			logger.info("Order submission successful for username: {} - Order created with ID: {}, total: {}, lines: {}",
 					username,
 					savedOrder.getId(),
 					savedOrder.getTotal(),
-					savedOrder.getItems().size());
+					savedOrder.getLines().size());
 
 			return ResponseEntity.ok(savedOrder);
 
@@ -77,10 +199,54 @@ public class OrderController {
 		}
 	}
 
+	/**
+	 * Reports whether an order submitted with {@code Prefer: respond-async}
+	 * is still pending, was persisted (with its order id) or failed.
+	 */
+	@GetMapping("/status/{handle}")
+	public ResponseEntity<OrderStatus> getSubmissionStatus(@PathVariable String handle) {
+		OrderStatus status = orderSubmissionQueue.status(handle);
+		if(status == null) {
+			return ResponseEntity.notFound().build();
+		}
+		return ResponseEntity.ok(status);
+	}
+
+	/**
+	 * Returns one page of the user's orders, newest first. Pages are keyed by
+	 * order id: {@code before} is the id of the last order of the previous
+	 * page, and {@code limit} is capped at {@code order.history.max-page-size}.
+	 * When more orders remain, a {@code Link} header with {@code rel="next"}
+	 * points at the following page.
+	 * <p>
+	 * {@code from} and {@code to} (ISO-8601 instants) restrict the history to
+	 * orders created in {@code [from, to)}; either may be left out. The range
+	 * is kept in the {@code next} link.
+	 * <p>
+	 * With {@code order.archive.enabled=true} orders moved to the
+	 * {@link OrderArchive} are merged in, so the history reads the same.
+	 * <p>
+	 * Orders are listed as {@link OrderSummary}: a page costs one query for
+	 * the orders and one for all of their lines, whatever its size.
+	 */
 	@GetMapping("/history/{username}")
-	public ResponseEntity<List<UserOrder>> getOrdersForUser(@PathVariable String username) {
+	public ResponseEntity<List<OrderSummary>> getOrdersForUser(@PathVariable String username,
+			@RequestParam(required = false) Long before,
+			@RequestParam(required = false) Integer limit,
+			@RequestParam(required = false) Instant from,
+			@RequestParam(required = false) Instant to) {
 		logger.info("Order history request initiated for username: {}", username);
 
+		if((before != null && before <= 0) || (limit != null && limit <= 0)) {
+			logger.warn("Order history request failed for username: {} - Invalid cursor {} or limit {}", username, before, limit);
+			return ResponseEntity.badRequest().build();
+		}
+		if(from != null && to != null && !from.isBefore(to)) {
+			logger.warn("Order history request failed for username: {} - Empty range from {} to {}", username, from, to);
+			return ResponseEntity.badRequest().build();
+		}
+		int pageSize = limit == null ? defaultPageSize : Math.min(limit, maxPageSize);
+
 		try {
 			User user = userRepository.findByUsername(username);
 			if(user == null) {
@@ -88,17 +254,35 @@ public class OrderController {
 				return ResponseEntity.notFound().build();
 			}
 
-			logger.debug("Retrieving order history for username: {}", username);
-			List<UserOrder> orders = orderRepository.findByUser(user);
+			logger.debug("Retrieving order history for username: {} before: {} limit: {} from: {} to: {}",
+					username, before, pageSize, from, to);
+			// one extra row tells whether there is a next page
+			Limit fetch = Limit.of(pageSize + 1);
+			List<OrderSummary> orders = findSummaries(user, before, from, to, fetch);
+			if(orderArchive != null) {
+				orders = orderArchive.merge(user.getId(), orders, before, from, to, pageSize + 1);
+			}
 
-			if(orders == null || orders.isEmpty()) {
+			ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+			if(orders.size() > pageSize) {
+				orders = orders.subList(0, pageSize);
+				String next = ServletUriComponentsBuilder.fromCurrentRequest()
+						.replaceQueryParam("before", orders.get(pageSize - 1).getId())
+						.replaceQueryParam("limit", pageSize)
+						.toUriString();
+				response.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+			}
+
+			addLines(orders);
+
+			if(orders.isEmpty()) {
 				logger.info("Order history request completed for username: {} - No orders found", username);
 			} else {
 				logger.info("Order history request successful for username: {} - Retrieved {} orders",
 						username, orders.size());
 			}
 
-			return ResponseEntity.ok(orders);
+			return response.body(orders);
 
 		} catch (Exception e) {
 			logger.error("Order history request failed for username: {} - Unexpected error occurred: {}",
@@ -106,4 +290,103 @@ public class OrderController {
 			return ResponseEntity.status(500).build();
 		}
 	}
+
+	/**
+	 * Streams the user's entire order history as newline-delimited JSON, for
+	 * reconciliation jobs. Unlike {@code /history}, nothing is paged or held
+	 * in memory.
+	 */
+	@GetMapping("/history/{username}/export")
+	public ResponseEntity<StreamingResponseBody> exportOrdersForUser(@PathVariable String username) {
+		logger.info("Order history export initiated for username: {}", username);
+
+		User user = userRepository.findByUsername(username);
+		if(user == null) {
+			logger.warn("Order history export failed for username: {} - User not found", username);
+			return ResponseEntity.notFound().build();
+		}
+
+		StreamingResponseBody body = out -> {
+			long count = orderHistoryExporter.export(user, out);
+			logger.info("Order history export successful for username: {} - Streamed {} orders", username, count);
+		};
+		return ResponseEntity.ok()
+				.contentType(MediaType.parseMediaType(OrderHistoryExporter.MEDIA_TYPE))
+				.body(body);
+	}
+
+	/**
+	 * Orders, revenue and units sold across all users in {@code [from, to)},
+	 * in total and per {@code granularity} bucket ({@code minute},
+	 * {@code hour} or {@code day}, UTC), read from the roll-ups rather than
+	 * the orders. Defaults to the last 24 hours by hour. A range spanning more
+	 * than {@code order.rollup.max-buckets} buckets is refused.
+	 */
+	@GetMapping("/revenue")
+	public ResponseEntity<RevenueReport> getRevenue(@RequestParam(defaultValue = "hour") String granularity,
+			@RequestParam(required = false) Instant from,
+			@RequestParam(required = false) Instant to) {
+		if(revenueRollups == null) {
+			return ResponseEntity.notFound().build();
+		}
+		Granularity bucket;
+		try {
+			bucket = Granularity.valueOf(granularity.toUpperCase(Locale.ROOT));
+		} catch(IllegalArgumentException e) {
+			logger.warn("Revenue report failed - Unknown granularity {}", granularity);
+			return ResponseEntity.badRequest().build();
+		}
+		Instant end = to == null ? Instant.now() : to;
+		Instant start = from == null ? end.minus(1, ChronoUnit.DAYS) : from;
+		if(!start.isBefore(end) || Duration.between(start, end).toMillis() / bucket.millis() >= maxReportBuckets) {
+			logger.warn("Revenue report failed - Range from {} to {} by {} is empty or too long", start, end, bucket);
+			return ResponseEntity.badRequest().build();
+		}
+
+		RevenueReport report = revenueRollups.report(bucket, start, end);
+		logger.info("Revenue report from {} to {} by {}: {} orders, revenue {}",
+				report.getFrom(), report.getTo(), bucket, report.getOrders(), report.getRevenue());
+		return ResponseEntity.ok(report);
+	}
+
+	private List<OrderSummary> findSummaries(User user, Long before, Instant from, Instant to, Limit fetch) {
+		if(from == null && to == null) {
+			return before == null
+					? orderRepository.findSummariesByUser(user, fetch)
+					: orderRepository.findSummariesByUserBefore(user, before, fetch);
+		}
+		Instant start = from == null ? Instant.EPOCH : from;
+		Instant end = to == null ? Instant.now() : to;
+		return before == null
+				? orderRepository.findSummariesByUserCreatedBetween(user, start, end, fetch)
+				: orderRepository.findSummariesByUserCreatedBetweenBefore(user, start, end, before, fetch);
+	}
+
+	private void addLines(List<OrderSummary> orders) {
+		Map<Long, OrderSummary> byId = new HashMap<>();
+		for(OrderSummary order : orders) {
+			// archived orders come with their lines
+			if(order.getLines().isEmpty()) {
+				byId.put(order.getId(), order);
+			}
+		}
+		if(byId.isEmpty()) {
+			return;
+		}
+		for(OrderLine line : orderRepository.findLinesByOrderIds(byId.keySet())) {
+			byId.get(line.getOrder().getId()).getLines().add(line);
+		}
+	}
+
+	private static boolean respondAsync(String prefer) {
+		if(prefer == null) {
+			return false;
+		}
+		for(String preference : prefer.split(",")) {
+			if(preference.split(";", 2)[0].trim().equalsIgnoreCase(RESPOND_ASYNC)) {
+				return true;
+			}
+		}
+		return false;
+	}
 }
\ No newline at end of file
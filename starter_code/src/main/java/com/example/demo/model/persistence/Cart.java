@@ -1,17 +1,24 @@
 package com.example.demo.model.persistence;
 
-import java.math.BigDecimal;
 import java.util.ArrayList;
-import java.util.List;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import jakarta.persistence.CascadeType;
 import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
-import jakarta.persistence.ManyToMany;
+import jakarta.persistence.Lob;
+import jakarta.persistence.MapKey;
+import jakarta.persistence.OneToMany;
 import jakarta.persistence.OneToOne;
 import jakarta.persistence.Table;
 
@@ -25,25 +32,80 @@ public class Cart {
 	@Column
 	private Long id;
 	
-	@ManyToMany
-	@JsonProperty
-	@Column
-    private List<Item> items;
+	@OneToMany(mappedBy = "cart", cascade = CascadeType.ALL, orphanRemoval = true)
+	@MapKey(name = "itemId")
+	@JsonIgnore
+    private Map<Long, CartLine> lines;
 	
 	@OneToOne(mappedBy = "cart")
 	@JsonProperty
     private User user;
 	
-	@Column
+	@Column(precision = 19, scale = Money.SCALE)
+	@Convert(converter = MinorUnitsConverter.class)
+	private long total;
+
+	@Column(nullable = false)
 	@JsonProperty
-	private BigDecimal total;
+	private long version;
+
+	@Lob
+	@Column(name = "replica_state")
+	@JsonIgnore
+	private String replicaState;
+
+	@Column(name = "replica_state_version")
+	@JsonIgnore
+	private Long replicaStateVersion;
 	
-	public BigDecimal getTotal() {
+	@JsonProperty
+	public Money getTotal() {
+		return Money.ofMinor(total);
+	}
+
+	public void setTotal(Money total) {
+		this.total = total.minorUnits();
+	}
+
+	@JsonIgnore
+	public long getTotalMinorUnits() {
 		return total;
 	}
 
-	public void setTotal(BigDecimal total) {
-		this.total = total;
+	/**
+	 * Counter bumped by every change to the lines or the total, so clients can
+	 * tell whether the cart they hold is still current.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	public void setVersion(long version) {
+		this.version = version;
+	}
+
+	/**
+	 * Per-replica counters behind the lines, as JSON, written by the crdt
+	 * engine when it flushes the cart. They only describe the lines while
+	 * {@link #getVersion()} still equals {@link #getReplicaStateVersion()};
+	 * emptying the cart bumps the version and so retires them.
+	 */
+	@JsonIgnore
+	public String getReplicaState() {
+		return replicaState;
+	}
+
+	public void setReplicaState(String replicaState) {
+		this.replicaState = replicaState;
+	}
+
+	@JsonIgnore
+	public Long getReplicaStateVersion() {
+		return replicaStateVersion;
+	}
+
+	public void setReplicaStateVersion(Long replicaStateVersion) {
+		this.replicaStateVersion = replicaStateVersion;
 	}
 
 	public User getUser() {
@@ -62,33 +124,130 @@ public class Cart {
 		this.id = id;
 	}
 
-	public List<Item> getItems() {
-		return items;
+	/**
+	 * Lines of this cart, one per distinct item. Serialized as {@code items}.
+	 */
+	@JsonProperty("items")
+	public Collection<CartLine> getItems() {
+		return lines == null ? Collections.emptyList() : lines.values();
 	}
 
-	public void setItems(List<Item> items) {
-		this.items = items;
+	public Map<Long, CartLine> getLines() {
+		return lines;
 	}
-	
+
+	public void setLines(Map<Long, CartLine> lines) {
+		this.lines = lines;
+	}
+
+	/**
+	 * Returns the number of units of the given item in this cart.
+	 */
+	public int getQuantity(Item item) {
+		CartLine line = lines == null ? null : lines.get(item.getId());
+		return line == null ? 0 : line.getQuantity();
+	}
+
 	public void addItem(Item item) {
-		if(items == null) {
-			items = new ArrayList<>();
+		addItem(item, 1);
+	}
+
+	/**
+	 * Adds {@code quantity} units of the item, creating its line on first use.
+	 */
+	public void addItem(Item item, int quantity) {
+		if(quantity <= 0) {
+			return;
 		}
-		items.add(item);
-		if(total == null) {
-			total = new BigDecimal(0);
+		if(lines == null) {
+			lines = new HashMap<>();
 		}
-		total = total.add(item.getPrice());
+		CartLine line = lines.computeIfAbsent(item.getId(), id -> new CartLine(this, item));
+		line.setQuantity(line.getQuantity() + quantity);
+		addToTotal(item, quantity);
 	}
-	
+
 	public void removeItem(Item item) {
-		if(items == null) {
-			items = new ArrayList<>();
+		removeItem(item, 1);
+	}
+
+	/**
+	 * Removes up to {@code quantity} units of the item. Removing more units
+	 * than the cart holds empties the line; the total only drops by the
+	 * units actually removed.
+	 */
+	public void removeItem(Item item, int quantity) {
+		if(quantity <= 0 || lines == null) {
+			return;
+		}
+		CartLine line = lines.get(item.getId());
+		if(line == null) {
+			return;
 		}
-		items.remove(item);
-		if(total == null) {
-			total = new BigDecimal(0);
+		int removed = Math.min(quantity, line.getQuantity());
+		if(removed == line.getQuantity()) {
+			lines.remove(item.getId());
+		} else {
+			line.setQuantity(line.getQuantity() - removed);
 		}
-		total = total.subtract(item.getPrice());
+		addToTotal(item, -removed);
+	}
+
+	/**
+	 * Sets the number of units of the item to exactly {@code quantity};
+	 * zero or less removes its line.
+	 */
+	public void setQuantity(Item item, int quantity) {
+		int current = getQuantity(item);
+		if(quantity > current) {
+			addItem(item, quantity - current);
+		} else if(quantity < current) {
+			removeItem(item, current - quantity);
+		}
+	}
+
+	/**
+	 * Returns a detached copy of this cart's id, user, lines and total.
+	 */
+	public Cart copy() {
+		Cart copy = new Cart();
+		copy.id = id;
+		copy.user = user;
+		copy.total = total;
+		copy.version = version;
+		if(lines != null) {
+			copy.lines = new HashMap<>();
+			for(CartLine line : lines.values()) {
+				CartLine lineCopy = new CartLine(copy, line.getItem());
+				lineCopy.setQuantity(line.getQuantity());
+				copy.lines.put(line.getItemId(), lineCopy);
+			}
+		}
+		return copy;
+	}
+
+	/**
+	 * Makes this cart hold exactly the lines and total of {@code source},
+	 * touching only the lines that differ. The version takes the higher of
+	 * the two so that it never moves backwards.
+	 */
+	public void copyFrom(Cart source) {
+		if(lines != null) {
+			for(CartLine line : new ArrayList<>(lines.values())) {
+				if(source.getQuantity(line.getItem()) == 0) {
+					lines.remove(line.getItemId());
+				}
+			}
+		}
+		for(CartLine line : source.getItems()) {
+			setQuantity(line.getItem(), line.getQuantity());
+		}
+		total = source.total;
+		version = Math.max(version, source.getVersion());
+	}
+
+	private void addToTotal(Item item, int quantity) {
+		total = Math.addExact(total, Math.multiplyExact(item.getPriceMinorUnits(), quantity));
+		version++;
 	}
 }
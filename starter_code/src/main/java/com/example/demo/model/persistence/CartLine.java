@@ -0,0 +1,111 @@
+package com.example.demo.model.persistence;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+
+/**
+ * One line of a {@link Cart}: an item together with how many units of it
+ * are in the cart. A cart holds at most one line per item, so changing the
+ * quantity of an item is a single update whatever the number of units.
+ */
+@Entity
+@Table(name = "cart_line", uniqueConstraints = @UniqueConstraint(columnNames = {"cart_id", "item_id"}))
+public class CartLine {
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@JsonIgnore
+	private Long id;
+
+	@ManyToOne(optional = false)
+	@JoinColumn(name = "cart_id", nullable = false)
+	@JsonIgnore
+	private Cart cart;
+
+	@Column(name = "item_id", nullable = false)
+	@JsonProperty
+	private Long itemId;
+
+	@ManyToOne
+	@JoinColumn(name = "item_id", insertable = false, updatable = false)
+	@JsonIgnore
+	private Item item;
+
+	@Column(nullable = false)
+	@JsonProperty
+	private int quantity;
+
+	@Column(nullable = false, precision = 19, scale = Money.SCALE)
+	@Convert(converter = MinorUnitsConverter.class)
+	private long subtotal;
+
+	public CartLine() {
+	}
+
+	public CartLine(Cart cart, Item item) {
+		this.cart = cart;
+		setItem(item);
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
+
+	public Cart getCart() {
+		return cart;
+	}
+
+	public void setCart(Cart cart) {
+		this.cart = cart;
+	}
+
+	public Long getItemId() {
+		return itemId;
+	}
+
+	public Item getItem() {
+		return item;
+	}
+
+	public void setItem(Item item) {
+		this.item = item;
+		this.itemId = item.getId();
+	}
+
+	public int getQuantity() {
+		return quantity;
+	}
+
+	/**
+	 * Sets the number of units on this line and recomputes the line subtotal
+	 * from the item's current price.
+	 */
+	public void setQuantity(int quantity) {
+		this.quantity = quantity;
+		this.subtotal = Math.multiplyExact(item.getPriceMinorUnits(), quantity);
+	}
+
+	@JsonProperty
+	public Money getSubtotal() {
+		return Money.ofMinor(subtotal);
+	}
+
+	public void setSubtotal(Money subtotal) {
+		this.subtotal = subtotal.minorUnits();
+	}
+}
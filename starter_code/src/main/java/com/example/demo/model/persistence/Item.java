@@ -1,8 +1,7 @@
 package com.example.demo.model.persistence;
 
-import java.math.BigDecimal;
-
 import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
@@ -27,9 +26,9 @@ public class Item {
 	@JsonProperty
 	private String name;
 	
-	@Column(nullable = false)
-	@JsonProperty
-	private BigDecimal price;
+	@Column(nullable = false, precision = 19, scale = Money.SCALE)
+	@Convert(converter = MinorUnitsConverter.class)
+	private long price;
 	
 	@Column(nullable = false)
 	@JsonProperty
@@ -76,12 +75,21 @@ public class Item {
 		this.name = name;
 	}
 
-	public BigDecimal getPrice() {
-		return price;
+	@JsonProperty
+	public Money getPrice() {
+		return Money.ofMinor(price);
+	}
+
+	public void setPrice(Money price) {
+		this.price = price.minorUnits();
 	}
 
-	public void setPrice(BigDecimal price) {
-		this.price = price;
+	/**
+	 * The price in minor units, for totals maintained without allocating.
+	 */
+	@JsonIgnore
+	public long getPriceMinorUnits() {
+		return price;
 	}
 
 	public String getDescription() {
@@ -0,0 +1,26 @@
+package com.example.demo.model.persistence;
+
+import java.math.BigDecimal;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+/**
+ * Stores an amount kept in memory as {@code long} minor units in a
+ * {@code DECIMAL} column with {@value Money#SCALE} decimal places, so the
+ * schema and seed data keep using plain decimal amounts. A {@code NULL}
+ * column reads as zero.
+ */
+@Converter
+public class MinorUnitsConverter implements AttributeConverter<Long, BigDecimal> {
+
+	@Override
+	public BigDecimal convertToDatabaseColumn(Long minorUnits) {
+		return minorUnits == null ? null : BigDecimal.valueOf(minorUnits, Money.SCALE);
+	}
+
+	@Override
+	public Long convertToEntityAttribute(BigDecimal amount) {
+		return amount == null ? 0L : Money.of(amount).minorUnits();
+	}
+}
@@ -0,0 +1,104 @@
+package com.example.demo.model.persistence;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+/**
+ * Amount of money as a whole number of minor units (cents), with
+ * {@value #SCALE} decimal places.
+ * <p>
+ * Arithmetic is exact: it throws {@link ArithmeticException} on overflow
+ * instead of wrapping, and converting a {@link BigDecimal} with more than
+ * {@value #SCALE} decimal places fails unless a {@link RoundingMode} is given
+ * explicitly. Entities keep the raw minor units in a {@code long} so that
+ * maintaining totals does not allocate; {@code Money} is what they expose.
+ * Serialized to JSON as a plain decimal number.
+ */
+public final class Money implements Comparable<Money> {
+
+	public static final int SCALE = 2;
+
+	public static final Money ZERO = new Money(0);
+
+	private final long minorUnits;
+
+	private Money(long minorUnits) {
+		this.minorUnits = minorUnits;
+	}
+
+	public static Money ofMinor(long minorUnits) {
+		return minorUnits == 0 ? ZERO : new Money(minorUnits);
+	}
+
+	/**
+	 * Converts a decimal amount that has at most {@value #SCALE} decimal
+	 * places.
+	 *
+	 * @throws ArithmeticException if the amount needs rounding or does not
+	 *         fit in a {@code long} of minor units
+	 */
+	@JsonCreator(mode = JsonCreator.Mode.DELEGATING)
+	public static Money of(BigDecimal amount) {
+		return of(amount, RoundingMode.UNNECESSARY);
+	}
+
+	/**
+	 * Converts a decimal amount, rounding to {@value #SCALE} decimal places
+	 * with {@code rounding}.
+	 */
+	public static Money of(BigDecimal amount, RoundingMode rounding) {
+		return ofMinor(amount.setScale(SCALE, rounding).unscaledValue().longValueExact());
+	}
+
+	public static Money of(String amount) {
+		return of(new BigDecimal(amount));
+	}
+
+	public long minorUnits() {
+		return minorUnits;
+	}
+
+	public Money plus(Money other) {
+		return ofMinor(Math.addExact(minorUnits, other.minorUnits));
+	}
+
+	public Money minus(Money other) {
+		return ofMinor(Math.subtractExact(minorUnits, other.minorUnits));
+	}
+
+	public Money times(long quantity) {
+		return ofMinor(Math.multiplyExact(minorUnits, quantity));
+	}
+
+	public int signum() {
+		return Long.signum(minorUnits);
+	}
+
+	@JsonValue
+	public BigDecimal toBigDecimal() {
+		return BigDecimal.valueOf(minorUnits, SCALE);
+	}
+
+	@Override
+	public int compareTo(Money other) {
+		return Long.compare(minorUnits, other.minorUnits);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof Money other && other.minorUnits == minorUnits;
+	}
+
+	@Override
+	public int hashCode() {
+		return Long.hashCode(minorUnits);
+	}
+
+	@Override
+	public String toString() {
+		return toBigDecimal().toPlainString();
+	}
+}
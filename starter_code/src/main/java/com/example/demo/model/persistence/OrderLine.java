@@ -0,0 +1,128 @@
+package com.example.demo.model.persistence;
+
+import org.hibernate.annotations.Immutable;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+
+/**
+ * One line of a {@link UserOrder}, copied from the cart when the order was
+ * placed. The item's name and the price paid are stored on the line itself,
+ * so reading an order never touches the catalog and later changes to an
+ * {@link Item} do not alter orders already placed. Lines are never updated.
+ */
+@Entity
+@Immutable
+@Table(name = "user_order_line", indexes = @Index(name = "idx_user_order_line_order_id", columnList = "order_id, id"))
+public class OrderLine {
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@JsonIgnore
+	private Long id;
+
+	@ManyToOne(fetch = FetchType.LAZY, optional = false)
+	@JoinColumn(name = "order_id", nullable = false)
+	@JsonIgnore
+	private UserOrder order;
+
+	@Column(name = "item_id", nullable = false)
+	@JsonProperty
+	private Long itemId;
+
+	@Column(nullable = false)
+	@JsonProperty
+	private String name;
+
+	@Column(name = "unit_price", nullable = false, precision = 19, scale = Money.SCALE)
+	@Convert(converter = MinorUnitsConverter.class)
+	private long unitPrice;
+
+	@Column(nullable = false)
+	@JsonProperty
+	private int quantity;
+
+	@Column(name = "line_total", nullable = false, precision = 19, scale = Money.SCALE)
+	@Convert(converter = MinorUnitsConverter.class)
+	private long lineTotal;
+
+	public OrderLine() {
+	}
+
+	/**
+	 * Copies a cart line. The unit price is the item's price and the line
+	 * total is the cart line's subtotal, which is what the order total was
+	 * summed from.
+	 */
+	public OrderLine(UserOrder order, CartLine line) {
+		this.order = order;
+		this.itemId = line.getItemId();
+		this.name = line.getItem().getName();
+		this.quantity = line.getQuantity();
+		this.unitPrice = line.getItem().getPriceMinorUnits();
+		this.lineTotal = line.getSubtotal().minorUnits();
+	}
+
+	public OrderLine(UserOrder order, Item item, int quantity) {
+		this.order = order;
+		this.itemId = item.getId();
+		this.name = item.getName();
+		this.quantity = quantity;
+		this.unitPrice = item.getPriceMinorUnits();
+		this.lineTotal = Math.multiplyExact(unitPrice, quantity);
+	}
+
+	/**
+	 * Rebuilds a line read back from the order archive, detached from any
+	 * {@link UserOrder}.
+	 */
+	public OrderLine(Long itemId, String name, long unitPriceMinorUnits, int quantity, long lineTotalMinorUnits) {
+		this.itemId = itemId;
+		this.name = name;
+		this.unitPrice = unitPriceMinorUnits;
+		this.quantity = quantity;
+		this.lineTotal = lineTotalMinorUnits;
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public UserOrder getOrder() {
+		return order;
+	}
+
+	public Long getItemId() {
+		return itemId;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	@JsonProperty
+	public Money getUnitPrice() {
+		return Money.ofMinor(unitPrice);
+	}
+
+	public int getQuantity() {
+		return quantity;
+	}
+
+	@JsonProperty
+	public Money getLineTotal() {
+		return Money.ofMinor(lineTotal);
+	}
+}
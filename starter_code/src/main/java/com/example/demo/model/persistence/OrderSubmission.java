@@ -0,0 +1,83 @@
+package com.example.demo.model.persistence;
+
+import java.time.Instant;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+import com.example.demo.model.responses.OrderStatus;
+
+/**
+ * An order accepted with {@code Prefer: respond-async}, recorded before the
+ * client is answered. It holds the cart and the cart version the order was
+ * built from rather than the order itself: while the cart is still at that
+ * version the order can be built again from it. Written and read by
+ * {@code OrderSubmissionQueue}.
+ */
+@Entity
+@Table(name = "order_submission", indexes = @Index(columnList = "state"))
+public class OrderSubmission {
+
+	@Id
+	@Column(length = 36)
+	private String handle;
+
+	@Column(name = "user_id", nullable = false)
+	private Long userId;
+
+	@Column(name = "cart_id", nullable = false)
+	private Long cartId;
+
+	@Column(name = "cart_version", nullable = false)
+	private long cartVersion;
+
+	@Enumerated(EnumType.STRING)
+	@Column(nullable = false, length = 16)
+	private OrderStatus.State state;
+
+	@Column(name = "order_id")
+	private Long orderId;
+
+	@Column(name = "accepted_at", nullable = false)
+	private Instant acceptedAt;
+
+	@Column(name = "finished_at")
+	private Instant finishedAt;
+
+	public String getHandle() {
+		return handle;
+	}
+
+	public Long getUserId() {
+		return userId;
+	}
+
+	public Long getCartId() {
+		return cartId;
+	}
+
+	public long getCartVersion() {
+		return cartVersion;
+	}
+
+	public OrderStatus.State getState() {
+		return state;
+	}
+
+	public Long getOrderId() {
+		return orderId;
+	}
+
+	public Instant getAcceptedAt() {
+		return acceptedAt;
+	}
+
+	public Instant getFinishedAt() {
+		return finishedAt;
+	}
+}
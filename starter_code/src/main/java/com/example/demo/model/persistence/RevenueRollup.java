@@ -0,0 +1,93 @@
+package com.example.demo.model.persistence;
+
+import java.time.Instant;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+
+/**
+ * Orders placed in one minute, hour or day (UTC): how many, their revenue
+ * and the units sold. Rows are only ever incremented, by
+ * {@code RevenueRollups}, so reports over a range read one row per bucket
+ * instead of every order.
+ */
+@Entity
+@Table(name = "revenue_rollup", uniqueConstraints = @UniqueConstraint(columnNames = {"granularity", "bucket_start"}))
+public class RevenueRollup {
+
+	public enum Granularity {
+		MINUTE(60_000L),
+		HOUR(3_600_000L),
+		DAY(86_400_000L);
+
+		private final long millis;
+
+		Granularity(long millis) {
+			this.millis = millis;
+		}
+
+		public long millis() {
+			return millis;
+		}
+
+		/**
+		 * Start of the bucket holding {@code epochMillis}.
+		 */
+		public long bucketStart(long epochMillis) {
+			return Math.floorDiv(epochMillis, millis) * millis;
+		}
+	}
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	private Long id;
+
+	@Enumerated(EnumType.STRING)
+	@Column(nullable = false, length = 8)
+	private Granularity granularity;
+
+	@Column(name = "bucket_start", nullable = false)
+	private Instant bucketStart;
+
+	@Column(nullable = false)
+	private long orders;
+
+	@Column(nullable = false, precision = 19, scale = Money.SCALE)
+	@Convert(converter = MinorUnitsConverter.class)
+	private long revenue;
+
+	@Column(nullable = false)
+	private long units;
+
+	public Long getId() {
+		return id;
+	}
+
+	public Granularity getGranularity() {
+		return granularity;
+	}
+
+	public Instant getBucketStart() {
+		return bucketStart;
+	}
+
+	public long getOrders() {
+		return orders;
+	}
+
+	public long getRevenueMinorUnits() {
+		return revenue;
+	}
+
+	public long getUnits() {
+		return units;
+	}
+}
@@ -1,46 +1,65 @@
 package com.example.demo.model.persistence;
 
-import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 import jakarta.persistence.CascadeType;
 import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
-import jakarta.persistence.JoinTable;
-import jakarta.persistence.ManyToMany;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.OneToMany;
+import jakarta.persistence.OrderBy;
+import jakarta.persistence.PrePersist;
 import jakarta.persistence.Table;
 
+import org.hibernate.annotations.BatchSize;
+
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 @Entity
-@Table(name = "user_order")
+@Table(name = "user_order", indexes = {
+		@Index(name = "idx_user_order_user_id", columnList = "user_id, id"),
+		@Index(name = "idx_user_order_user_created_at", columnList = "user_id, created_at")
+})
 public class UserOrder {
 
+	/**
+	 * How many orders' lines are loaded by one query when lines are read
+	 * lazily, e.g. while streaming a history.
+	 */
+	public static final int LINE_BATCH_SIZE = 100;
+
 	@Id
 	@GeneratedValue(strategy = GenerationType.IDENTITY)
 	@JsonProperty
 	@Column
 	private Long id;
 	
-	@ManyToMany(cascade = CascadeType.ALL)
+	@OneToMany(mappedBy = "order", cascade = { CascadeType.PERSIST, CascadeType.DETACH })
+	@OrderBy("id")
+	@BatchSize(size = UserOrder.LINE_BATCH_SIZE)
 	@JsonProperty
-	@Column
-    private List<Item> items;
+    private List<OrderLine> lines;
 	
 	@ManyToOne
 	@JoinColumn(name="user_id", nullable = false, referencedColumnName = "id")
 	@JsonProperty
     private User user;
 	
+	@Column(precision = 19, scale = Money.SCALE)
+	@Convert(converter = MinorUnitsConverter.class)
+	private long total;
+
+	@Column(name = "created_at", nullable = false, updatable = false)
 	@JsonProperty
-	@Column
-	private BigDecimal total;
+	private Instant createdAt;
 
 	public Long getId() {
 		return id;
@@ -50,12 +69,12 @@ public class UserOrder {
 		this.id = id;
 	}
 
-	public List<Item> getItems() {
-		return items;
+	public List<OrderLine> getLines() {
+		return lines;
 	}
 
-	public void setItems(List<Item> items) {
-		this.items = items;
+	public void setLines(List<OrderLine> lines) {
+		this.lines = lines;
 	}
 
 	public User getUser() {
@@ -66,18 +85,38 @@ public class UserOrder {
 		this.user = user;
 	}
 	
-	public BigDecimal getTotal() {
-		return total;
+	@JsonProperty
+	public Money getTotal() {
+		return Money.ofMinor(total);
+	}
+
+	public void setTotal(Money total) {
+		this.total = total.minorUnits();
+	}
+
+	public Instant getCreatedAt() {
+		return createdAt;
+	}
+
+	public void setCreatedAt(Instant createdAt) {
+		this.createdAt = createdAt;
 	}
 
-	public void setTotal(BigDecimal total) {
-		this.total = total;
+	@PrePersist
+	void stampCreatedAt() {
+		if(createdAt == null) {
+			createdAt = Instant.now();
+		}
 	}
 
 	public static UserOrder createFromCart(Cart cart) {
 		UserOrder order = new UserOrder();
-		order.setItems(cart.getItems().stream().collect(Collectors.toList()));
-		order.setTotal(cart.getTotal());
+		List<OrderLine> lines = new ArrayList<>();
+		for(CartLine line : cart.getItems()) {
+			lines.add(new OrderLine(order, line));
+		}
+		order.setLines(lines);
+		order.total = cart.getTotalMinorUnits();
 		order.setUser(cart.getUser());
 		return order;
 	}
@@ -1,6 +1,16 @@
 package com.example.demo.model.persistence.repositories;
 
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+
+import jakarta.persistence.LockModeType;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import com.example.demo.model.persistence.Cart;
 import com.example.demo.model.persistence.User;
@@ -10,4 +20,96 @@ import org.springframework.stereotype.Repository;
 @Repository
 public interface CartRepository extends JpaRepository<Cart, Long> {
 	Cart findByUser(User user);
+
+	/**
+	 * Id and version of a user's cart, read without loading the cart lines.
+	 */
+	interface CartVersion {
+		Long getId();
+
+		long getVersion();
+	}
+
+	@Query("select c.id as id, c.version as version from User u join u.cart c where u.username = :username")
+	CartVersion findVersionByUsername(@Param("username") String username);
+
+	/**
+	 * Total, in minor units, and version of a cart, read from the cart row
+	 * alone.
+	 */
+	interface CartTotal {
+		long getTotal();
+
+		long getVersion();
+	}
+
+	@Query("select c.total as total, c.version as version from Cart c where c.id = :cartId")
+	CartTotal findTotal(@Param("cartId") Long cartId);
+
+	/*
+	 * Atomic mutation path. Each statement below changes a cart line or the
+	 * cart total in place, so concurrent callers never read-modify-write the
+	 * entity graph. They are meant to run inside a caller-managed transaction.
+	 * Statements that do arithmetic on amounts are native, since the entities
+	 * keep amounts as minor units converted to decimal columns.
+	 */
+
+	/**
+	 * Takes the row lock on a cart line without changing it.
+	 *
+	 * @return 1 if the line exists, 0 otherwise
+	 */
+	@Modifying(clearAutomatically = true)
+	@Query("update CartLine l set l.quantity = l.quantity where l.cart.id = :cartId and l.itemId = :itemId")
+	int lockLine(@Param("cartId") Long cartId, @Param("itemId") Long itemId);
+
+	@Query("select l.quantity from CartLine l where l.cart.id = :cartId and l.itemId = :itemId")
+	Integer findLineQuantity(@Param("cartId") Long cartId, @Param("itemId") Long itemId);
+
+	@Modifying(clearAutomatically = true)
+	@Query(value = "insert into cart_line (cart_id, item_id, quantity, subtotal) values (:cartId, :itemId, :quantity, :subtotal)",
+			nativeQuery = true)
+	int insertLine(@Param("cartId") Long cartId, @Param("itemId") Long itemId,
+			@Param("quantity") int quantity, @Param("subtotal") BigDecimal subtotal);
+
+	@Modifying(clearAutomatically = true)
+	@Query(value = "update cart_line set quantity = quantity + :quantity, subtotal = subtotal + :amount "
+			+ "where cart_id = :cartId and item_id = :itemId", nativeQuery = true)
+	int incrementLine(@Param("cartId") Long cartId, @Param("itemId") Long itemId,
+			@Param("quantity") int quantity, @Param("amount") BigDecimal amount);
+
+	@Modifying(clearAutomatically = true)
+	@Query("delete from CartLine l where l.cart.id = :cartId and l.itemId = :itemId")
+	int deleteLine(@Param("cartId") Long cartId, @Param("itemId") Long itemId);
+
+	/**
+	 * Adds {@code amount} to the cart total and bumps the cart version.
+	 */
+	@Modifying(clearAutomatically = true)
+	@Query(value = "update cart set total = coalesce(total, 0) + :amount, version = version + 1 where id = :cartId",
+			nativeQuery = true)
+	int incrementTotal(@Param("cartId") Long cartId, @Param("amount") BigDecimal amount);
+
+	/**
+	 * Ids and versions of the given carts, holding their row locks until the
+	 * transaction ends.
+	 */
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query("select c.id as id, c.version as version from Cart c where c.id in :cartIds")
+	List<CartVersion> lockVersions(@Param("cartIds") Collection<Long> cartIds);
+
+	@Query("select c.id as id, c.version as version from Cart c where exists (select l from CartLine l where l.cart = c)")
+	List<CartVersion> findVersionsWithLines();
+
+	@Modifying(clearAutomatically = true)
+	@Query("delete from CartLine l where l.cart.id in :cartIds")
+	int deleteLines(@Param("cartIds") Collection<Long> cartIds);
+
+	/**
+	 * Zeroes the total of a cart that is still at {@code version}, bumping the
+	 * version. Returns {@code 0} if the cart changed in between.
+	 */
+	@Modifying(clearAutomatically = true)
+	@Query(value = "update cart set total = 0, version = version + 1 where id = :cartId and version = :version", nativeQuery = true)
+	int resetTotalIfVersion(@Param("cartId") Long cartId, @Param("version") long version);
 }
@@ -1,14 +1,146 @@
 package com.example.demo.model.persistence.repositories;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
+import jakarta.persistence.QueryHint;
+
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import com.example.demo.model.persistence.OrderLine;
 import com.example.demo.model.persistence.User;
 import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.model.responses.OrderSummary;
 import org.springframework.stereotype.Repository;
 
 @Repository
 public interface OrderRepository extends JpaRepository<UserOrder, Long> {
 	List<UserOrder> findByUser(User user);
+
+	/**
+	 * First page of a user's history, newest order first, without the lines
+	 * or the user.
+	 */
+	@Query("select new com.example.demo.model.responses.OrderSummary(o.id, o.total, o.createdAt)"
+			+ " from UserOrder o where o.user = :user order by o.id desc")
+	List<OrderSummary> findSummariesByUser(@Param("user") User user, Limit limit);
+
+	/**
+	 * Next page of a user's history: the orders older than {@code before},
+	 * newest first. Served by the {@code (user_id, id)} index whatever the
+	 * length of the history.
+	 */
+	@Query("select new com.example.demo.model.responses.OrderSummary(o.id, o.total, o.createdAt)"
+			+ " from UserOrder o where o.user = :user and o.id < :before order by o.id desc")
+	List<OrderSummary> findSummariesByUserBefore(@Param("user") User user, @Param("before") Long before, Limit limit);
+
+	/**
+	 * First page of the orders a user placed in {@code [from, to)}, newest
+	 * first. The time range is served by the {@code (user_id, created_at)}
+	 * index.
+	 */
+	@Query("select new com.example.demo.model.responses.OrderSummary(o.id, o.total, o.createdAt)"
+			+ " from UserOrder o where o.user = :user and o.createdAt >= :from and o.createdAt < :to"
+			+ " order by o.id desc")
+	List<OrderSummary> findSummariesByUserCreatedBetween(@Param("user") User user, @Param("from") Instant from,
+			@Param("to") Instant to, Limit limit);
+
+	/**
+	 * Next page of the orders a user placed in {@code [from, to)}: those older
+	 * than {@code before}, newest first.
+	 */
+	@Query("select new com.example.demo.model.responses.OrderSummary(o.id, o.total, o.createdAt)"
+			+ " from UserOrder o where o.user = :user and o.createdAt >= :from and o.createdAt < :to"
+			+ " and o.id < :before order by o.id desc")
+	List<OrderSummary> findSummariesByUserCreatedBetweenBefore(@Param("user") User user, @Param("from") Instant from,
+			@Param("to") Instant to, @Param("before") Long before, Limit limit);
+
+	/**
+	 * The lines of all the given orders in one query, in the order they were
+	 * placed. Served by the {@code (order_id, id)} index, without joining the
+	 * orders or the catalog.
+	 */
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+	@Query("select l from OrderLine l where l.order.id in :orderIds order by l.id")
+	List<OrderLine> findLinesByOrderIds(@Param("orderIds") Collection<Long> orderIds);
+
+	/**
+	 * The oldest orders created before {@code cutoff}, for the archiver.
+	 */
+	@Query("select o.id as id, o.user.id as userId, o.total as total, o.createdAt as createdAt"
+			+ " from UserOrder o where o.createdAt < :cutoff order by o.id")
+	List<ArchivableOrder> findArchivable(@Param("cutoff") Instant cutoff, Limit limit);
+
+	/**
+	 * Orders placed after {@code id}, oldest first, for reconciling the
+	 * order ledger.
+	 */
+	List<UserOrder> findByIdGreaterThanOrderById(Long id, Limit limit);
+
+	@Modifying
+	@Query(value = "delete from user_order_line where order_id in (:orderIds)", nativeQuery = true)
+	int deleteLinesByOrderIds(@Param("orderIds") Collection<Long> orderIds);
+
+	@Modifying
+	@Query(value = "delete from user_order where id in (:orderIds)", nativeQuery = true)
+	int deleteByIds(@Param("orderIds") Collection<Long> orderIds);
+
+	/**
+	 * Every order of a user, oldest first, read through a cursor rather than
+	 * materialised as a list. Must be consumed, and closed, inside a
+	 * transaction.
+	 */
+	@QueryHints({
+		@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "100"),
+		@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+	})
+	@Query("select o from UserOrder o where o.user = :user order by o.id")
+	Stream<UserOrder> streamByUser(@Param("user") User user);
+
+	/**
+	 * Creation time, total and units of every order in the tables, read
+	 * through a cursor, for backfilling the revenue roll-ups. Must be
+	 * consumed, and closed, inside a transaction.
+	 */
+	@QueryHints({
+		@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+		@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+	})
+	@Query("select o.createdAt as createdAt, o.total as total,"
+			+ " coalesce((select sum(l.quantity) from OrderLine l where l.order = o), 0) as units from UserOrder o")
+	Stream<RevenueSource> streamRevenueSources();
+
+	/**
+	 * An order as counted in the revenue roll-ups.
+	 */
+	interface RevenueSource {
+
+		Instant getCreatedAt();
+
+		long getTotal();
+
+		long getUnits();
+	}
+
+	/**
+	 * An order as read for archiving, without its user or lines.
+	 */
+	interface ArchivableOrder {
+
+		Long getId();
+
+		Long getUserId();
+
+		long getTotal();
+
+		Instant getCreatedAt();
+	}
 }
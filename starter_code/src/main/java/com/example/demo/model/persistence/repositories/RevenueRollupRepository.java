@@ -0,0 +1,21 @@
+package com.example.demo.model.persistence.repositories;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import com.example.demo.model.persistence.RevenueRollup;
+import com.example.demo.model.persistence.RevenueRollup.Granularity;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface RevenueRollupRepository extends JpaRepository<RevenueRollup, Long> {
+
+	/**
+	 * The buckets of one granularity starting in {@code [from, to)}, oldest
+	 * first. Served by the {@code (granularity, bucket_start)} unique index.
+	 */
+	List<RevenueRollup> findByGranularityAndBucketStartGreaterThanEqualAndBucketStartLessThanOrderByBucketStart(
+			Granularity granularity, Instant from, Instant to);
+}
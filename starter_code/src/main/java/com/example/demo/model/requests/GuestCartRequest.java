@@ -0,0 +1,31 @@
+package com.example.demo.model.requests;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class GuestCartRequest {
+
+	@JsonProperty
+	private String guestCart;
+
+	@JsonProperty
+	private List<CartOperation> operations;
+
+	public String getGuestCart() {
+		return guestCart;
+	}
+
+	public void setGuestCart(String guestCart) {
+		this.guestCart = guestCart;
+	}
+
+	public List<CartOperation> getOperations() {
+		return operations;
+	}
+
+	public void setOperations(List<CartOperation> operations) {
+		this.operations = operations;
+	}
+
+}
@@ -0,0 +1,29 @@
+package com.example.demo.model.requests;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class MergeCartRequest {
+
+	@JsonProperty
+	private String username;
+
+	@JsonProperty
+	private String guestCart;
+
+	public String getUsername() {
+		return username;
+	}
+
+	public void setUsername(String username) {
+		this.username = username;
+	}
+
+	public String getGuestCart() {
+		return guestCart;
+	}
+
+	public void setGuestCart(String guestCart) {
+		this.guestCart = guestCart;
+	}
+
+}
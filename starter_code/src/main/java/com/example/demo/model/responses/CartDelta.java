@@ -0,0 +1,56 @@
+package com.example.demo.model.responses;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.CartLine;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Cart mutation response for clients that asked for
+ * {@code Prefer: return=delta}: the summary plus only the lines touched by
+ * the request. Lines that no longer exist are listed by item id in
+ * {@code removed}.
+ */
+public class CartDelta extends CartSummary {
+
+	@JsonProperty
+	private List<CartLine> lines = new ArrayList<>();
+
+	@JsonProperty
+	private List<Long> removed = new ArrayList<>();
+
+	public CartDelta() {
+	}
+
+	public CartDelta(Cart cart, Collection<Long> itemIds) {
+		super(cart);
+		for(Long itemId : itemIds) {
+			CartLine line = cart.getLines() == null ? null : cart.getLines().get(itemId);
+			if(line == null) {
+				removed.add(itemId);
+			} else {
+				lines.add(line);
+			}
+		}
+	}
+
+	public List<CartLine> getLines() {
+		return lines;
+	}
+
+	public void setLines(List<CartLine> lines) {
+		this.lines = lines;
+	}
+
+	public List<Long> getRemoved() {
+		return removed;
+	}
+
+	public void setRemoved(List<Long> removed) {
+		this.removed = removed;
+	}
+
+}
@@ -0,0 +1,68 @@
+package com.example.demo.model.responses;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Money;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Cart mutation response for clients that asked for
+ * {@code Prefer: return=minimal}: the cart's version, number of lines and
+ * total, without the lines or the user.
+ */
+public class CartSummary {
+
+	@JsonProperty
+	private Long id;
+
+	@JsonProperty
+	private long version;
+
+	@JsonProperty
+	private int lineCount;
+
+	@JsonProperty
+	private Money total;
+
+	public CartSummary() {
+	}
+
+	public CartSummary(Cart cart) {
+		this.id = cart.getId();
+		this.version = cart.getVersion();
+		this.lineCount = cart.getItems().size();
+		this.total = cart.getTotal();
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public void setVersion(long version) {
+		this.version = version;
+	}
+
+	public int getLineCount() {
+		return lineCount;
+	}
+
+	public void setLineCount(int lineCount) {
+		this.lineCount = lineCount;
+	}
+
+	public Money getTotal() {
+		return total;
+	}
+
+	public void setTotal(Money total) {
+		this.total = total;
+	}
+
+}
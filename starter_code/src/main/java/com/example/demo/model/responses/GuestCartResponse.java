@@ -0,0 +1,43 @@
+package com.example.demo.model.responses;
+
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * State of a guest cart: the signed token the client sends back with its
+ * next request, and the quantity of each item keyed by item id.
+ */
+public class GuestCartResponse {
+
+	@JsonProperty
+	private String guestCart;
+
+	@JsonProperty
+	private Map<Long, Integer> items;
+
+	public GuestCartResponse() {
+	}
+
+	public GuestCartResponse(String guestCart, Map<Long, Integer> items) {
+		this.guestCart = guestCart;
+		this.items = items;
+	}
+
+	public String getGuestCart() {
+		return guestCart;
+	}
+
+	public void setGuestCart(String guestCart) {
+		this.guestCart = guestCart;
+	}
+
+	public Map<Long, Integer> getItems() {
+		return items;
+	}
+
+	public void setItems(Map<Long, Integer> items) {
+		this.items = items;
+	}
+
+}
@@ -0,0 +1,59 @@
+package com.example.demo.model.responses;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * State of an order submitted with {@code Prefer: respond-async}, as
+ * returned by the submit call and by {@code /api/order/status/{handle}}.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class OrderStatus {
+
+	public enum State {
+		PENDING, COMPLETED, FAILED
+	}
+
+	@JsonProperty
+	private String handle;
+
+	@JsonProperty
+	private State state;
+
+	@JsonProperty
+	private Long orderId;
+
+	public OrderStatus() {
+	}
+
+	public OrderStatus(String handle, State state, Long orderId) {
+		this.handle = handle;
+		this.state = state;
+		this.orderId = orderId;
+	}
+
+	public String getHandle() {
+		return handle;
+	}
+
+	public void setHandle(String handle) {
+		this.handle = handle;
+	}
+
+	public State getState() {
+		return state;
+	}
+
+	public void setState(State state) {
+		this.state = state;
+	}
+
+	public Long getOrderId() {
+		return orderId;
+	}
+
+	public void setOrderId(Long orderId) {
+		this.orderId = orderId;
+	}
+
+}
@@ -0,0 +1,71 @@
+package com.example.demo.model.responses;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.example.demo.model.persistence.Money;
+import com.example.demo.model.persistence.OrderLine;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * An order as listed in a user's history: its id, total, creation time and
+ * lines. The user is the one the history was asked for, so unlike
+ * {@code UserOrder} it is not repeated in every order.
+ */
+public class OrderSummary {
+
+	@JsonProperty
+	private Long id;
+
+	@JsonProperty
+	private Money total;
+
+	@JsonProperty
+	private Instant createdAt;
+
+	@JsonProperty
+	private List<OrderLine> lines = new ArrayList<>();
+
+	public OrderSummary() {
+	}
+
+	public OrderSummary(Long id, long totalMinorUnits, Instant createdAt) {
+		this.id = id;
+		this.total = Money.ofMinor(totalMinorUnits);
+		this.createdAt = createdAt;
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
+
+	public Money getTotal() {
+		return total;
+	}
+
+	public void setTotal(Money total) {
+		this.total = total;
+	}
+
+	public Instant getCreatedAt() {
+		return createdAt;
+	}
+
+	public void setCreatedAt(Instant createdAt) {
+		this.createdAt = createdAt;
+	}
+
+	public List<OrderLine> getLines() {
+		return lines;
+	}
+
+	public void setLines(List<OrderLine> lines) {
+		this.lines = lines;
+	}
+
+}
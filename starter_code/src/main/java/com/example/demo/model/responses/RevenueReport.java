@@ -0,0 +1,127 @@
+package com.example.demo.model.responses;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.example.demo.model.persistence.Money;
+import com.example.demo.model.persistence.RevenueRollup.Granularity;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Orders, revenue and units sold in {@code [from, to)}, in total and per
+ * bucket of the requested granularity. Buckets without orders are left out.
+ */
+public class RevenueReport {
+
+	@JsonProperty
+	private Granularity granularity;
+
+	@JsonProperty
+	private Instant from;
+
+	@JsonProperty
+	private Instant to;
+
+	@JsonProperty
+	private long orders;
+
+	@JsonProperty
+	private Money revenue = Money.ZERO;
+
+	@JsonProperty
+	private long units;
+
+	@JsonProperty
+	private List<Bucket> buckets = new ArrayList<>();
+
+	public RevenueReport() {
+	}
+
+	public RevenueReport(Granularity granularity, Instant from, Instant to) {
+		this.granularity = granularity;
+		this.from = from;
+		this.to = to;
+	}
+
+	/**
+	 * Appends a bucket, which must start after the last one, and adds it to
+	 * the totals.
+	 */
+	public void add(Instant start, long orders, long revenueMinorUnits, long units) {
+		Bucket bucket = new Bucket(start, orders, Money.ofMinor(revenueMinorUnits), units);
+		buckets.add(bucket);
+		this.orders += orders;
+		this.revenue = revenue.plus(bucket.getRevenue());
+		this.units += units;
+	}
+
+	public Granularity getGranularity() {
+		return granularity;
+	}
+
+	public Instant getFrom() {
+		return from;
+	}
+
+	public Instant getTo() {
+		return to;
+	}
+
+	public long getOrders() {
+		return orders;
+	}
+
+	public Money getRevenue() {
+		return revenue;
+	}
+
+	public long getUnits() {
+		return units;
+	}
+
+	public List<Bucket> getBuckets() {
+		return buckets;
+	}
+
+	public static class Bucket {
+
+		@JsonProperty
+		private Instant start;
+
+		@JsonProperty
+		private long orders;
+
+		@JsonProperty
+		private Money revenue;
+
+		@JsonProperty
+		private long units;
+
+		public Bucket() {
+		}
+
+		public Bucket(Instant start, long orders, Money revenue, long units) {
+			this.start = start;
+			this.orders = orders;
+			this.revenue = revenue;
+			this.units = units;
+		}
+
+		public Instant getStart() {
+			return start;
+		}
+
+		public long getOrders() {
+			return orders;
+		}
+
+		public Money getRevenue() {
+			return revenue;
+		}
+
+		public long getUnits() {
+			return units;
+		}
+	}
+}
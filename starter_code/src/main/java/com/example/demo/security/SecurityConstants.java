@@ -8,4 +8,6 @@ public class SecurityConstants {
     public static final String HEADER_STRING = "Authorization";
     public static final String SIGN_UP_URL = "/api/user/create";
     public static final String LOGIN_URL = "/login";
+    public static final String GUEST_CART_URL = "/api/guest-cart/**";
+    public static final String REPLICATION_URL = "/internal/crdt/**";
 }
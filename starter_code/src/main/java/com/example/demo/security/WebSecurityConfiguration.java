@@ -1,5 +1,7 @@
 package com.example.demo.security;
 
+import jakarta.servlet.DispatcherType;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -37,6 +39,11 @@ public class WebSecurityConfiguration {
                 .authorizeHttpRequests(registry ->{
                     registry.requestMatchers(HttpMethod.POST, SecurityConstants.SIGN_UP_URL).permitAll();
                     registry.requestMatchers(HttpMethod.POST, SecurityConstants.LOGIN_URL).permitAll();
+                    registry.requestMatchers(HttpMethod.POST, SecurityConstants.GUEST_CART_URL).permitAll();
+                    // peers authenticate with the replication key, checked by the controller
+                    registry.requestMatchers(SecurityConstants.REPLICATION_URL).permitAll();
+                    // completion of a streamed response, the request was authorised when it started
+                    registry.dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll();
                     registry.anyRequest().authenticated();
                 })
                 .authenticationProvider(daoAuthenticationProvider()) // ✅ Adicionar provider
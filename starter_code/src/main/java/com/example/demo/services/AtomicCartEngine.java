@@ -0,0 +1,121 @@
+package com.example.demo.services;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.Money;
+import com.example.demo.model.persistence.repositories.CartRepository;
+import com.example.demo.model.requests.CartOperation;
+
+/**
+ * Engine that never saves the cart entity. A request's operations become one
+ * transaction of in-place SQL updates on the cart lines and the cart total.
+ * The transaction first locks the cart row, so concurrent requests on the
+ * same cart cannot lose each other's updates, and a request that fails half
+ * way leaves the cart as it was.
+ */
+@Service
+@ConditionalOnProperty(name = "cart.engine", havingValue = "atomic")
+public class AtomicCartEngine implements CartEngine {
+
+	private static final int MAX_ATTEMPTS = 5;
+
+	@Autowired
+	private CartRepository cartRepository;
+
+	private final TransactionTemplate transactionTemplate;
+
+	public AtomicCartEngine(PlatformTransactionManager transactionManager) {
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+	}
+
+	/**
+	 * Applies the operations in one transaction and returns the caller's cart
+	 * with the touched lines, total and version as written. The total and
+	 * version are read back from the cart row alone, without loading the cart
+	 * again; lines the operations did not touch are as the caller loaded them.
+	 */
+	@Override
+	public Cart apply(Cart cart, List<CartOperation> operations, Map<Long, Item> items) {
+		Map<Long, Integer> quantities = new HashMap<>();
+		CartRepository.CartTotal written = applyAll(cart.getId(), operations, items, quantities);
+		Cart result = cart.copy();
+		quantities.forEach((itemId, quantity) -> result.setQuantity(items.get(itemId), quantity));
+		result.setTotal(Money.ofMinor(written.getTotal()));
+		result.setVersion(written.getVersion());
+		return result;
+	}
+
+	/**
+	 * Applies one operation in its own transaction.
+	 */
+	public void apply(Long cartId, CartOperation operation, Item item) {
+		applyAll(cartId, List.of(operation), Map.of(item.getId(), item), new HashMap<>());
+	}
+
+	/**
+	 * Applies the operations in one transaction, retrying it when a
+	 * concurrent request inserted one of the lines first.
+	 *
+	 * @param quantities filled with the quantity each touched item was left at
+	 */
+	private CartRepository.CartTotal applyAll(Long cartId, List<CartOperation> operations, Map<Long, Item> items,
+			Map<Long, Integer> quantities) {
+		for(int attempt = 1; ; attempt++) {
+			try {
+				return transactionTemplate.execute(status -> {
+					quantities.clear();
+					// the cart row first, so transactions on one cart take the line locks one at a time
+					cartRepository.lockVersions(List.of(cartId));
+					for(CartOperation operation : operations) {
+						Item item = items.get(operation.getItemId());
+						quantities.put(item.getId(), applyLocked(cartId, operation, item));
+					}
+					return cartRepository.findTotal(cartId);
+				});
+			} catch(DataIntegrityViolationException e) {
+				if(attempt == MAX_ATTEMPTS) {
+					throw e;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the quantity the line was left at
+	 */
+	private int applyLocked(Long cartId, CartOperation operation, Item item) {
+		boolean exists = cartRepository.lockLine(cartId, item.getId()) == 1;
+		int current = exists ? cartRepository.findLineQuantity(cartId, item.getId()) : 0;
+		int target = switch(operation.getType()) {
+			case ADD -> current + Math.max(operation.getQuantity(), 0);
+			case REMOVE -> Math.max(current - Math.max(operation.getQuantity(), 0), 0);
+			case SET -> Math.max(operation.getQuantity(), 0);
+		};
+		int delta = target - current;
+		if(delta == 0) {
+			return target;
+		}
+		BigDecimal amount = item.getPrice().times(delta).toBigDecimal();
+		if(!exists) {
+			cartRepository.insertLine(cartId, item.getId(), target, amount);
+		} else if(target == 0) {
+			cartRepository.deleteLine(cartId, item.getId());
+		} else {
+			cartRepository.incrementLine(cartId, item.getId(), delta, amount);
+		}
+		cartRepository.incrementTotal(cartId, amount);
+		return target;
+	}
+}
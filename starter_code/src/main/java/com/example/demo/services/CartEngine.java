@@ -0,0 +1,66 @@
+package com.example.demo.services;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.requests.CartOperation;
+
+/**
+ * Applies cart operations and persists the outcome.
+ * {@link com.example.demo.controllers.CartController} resolves the user and
+ * the items, then hands the mutation to the engine selected with the
+ * {@code cart.engine} property.
+ */
+public interface CartEngine {
+
+	/**
+	 * Applies {@code operations} in order to {@code cart}.
+	 *
+	 * @param cart the user's cart as loaded by the caller
+	 * @param operations the operations to apply
+	 * @param items every item referenced by {@code operations}, keyed by id
+	 * @return the cart after the operations have been applied
+	 */
+	Cart apply(Cart cart, List<CartOperation> operations, Map<Long, Item> items);
+
+	/**
+	 * Makes sure every change accepted for {@code cart} has reached the
+	 * database, for callers such as checkout that read the persisted cart.
+	 * Engines that write synchronously have nothing to do.
+	 *
+	 * @return the up to date cart
+	 */
+	default Cart flush(Cart cart) {
+		return cart;
+	}
+
+	/**
+	 * Returns a copy of the cart as the engine currently holds it when that
+	 * may be newer than the database, or {@code null} when the persisted
+	 * cart is current. Lets reads skip a flush.
+	 */
+	default Cart current(Long cartId) {
+		return null;
+	}
+
+	/**
+	 * Drops any state the engine keeps for these carts because they are
+	 * about to be emptied directly in the database.
+	 */
+	default void expire(Collection<Long> cartIds) {
+	}
+
+	/**
+	 * Applies a single operation to an in-memory cart.
+	 */
+	static void applyTo(Cart cart, CartOperation operation, Item item) {
+		switch(operation.getType()) {
+			case ADD -> cart.addItem(item, operation.getQuantity());
+			case REMOVE -> cart.removeItem(item, operation.getQuantity());
+			case SET -> cart.setQuantity(item, operation.getQuantity());
+		}
+	}
+}
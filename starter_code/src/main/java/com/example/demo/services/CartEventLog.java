@@ -0,0 +1,398 @@
+package com.example.demo.services;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.CartLine;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.Money;
+import com.example.demo.model.requests.CartOperation;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Append-only binary log of cart mutations on local disk, enabled with
+ * {@code cart.event-log.enabled=true}.
+ * <p>
+ * Every accepted operation is written as one fixed-size record to the
+ * current segment file {@code events-<n>.log}, together with the version the
+ * cart reached with it. Callers append while holding {@link #lock} for the
+ * cart, so each cart's records are in the order its changes were applied.
+ * Every {@code cart.event-log.snapshot-interval-ms} the materialised cart
+ * state, versions included, is written to {@code snapshot.bin}, a new
+ * segment is started and older segments are deleted. On startup the state
+ * is rebuilt from the snapshot plus the segments after it, without going
+ * through Hibernate, and every cart comes back at its logged version. A torn
+ * record at the end of the last segment is detected by its CRC and cut
+ * off.
+ */
+@Component
+@ConditionalOnProperty(name = "cart.event-log.enabled", havingValue = "true")
+public class CartEventLog {
+
+	private static final Logger logger = LoggerFactory.getLogger(CartEventLog.class);
+
+	// type(1) cartId(8) itemId(8) quantity(4) priceUnscaled(8) priceScale(1) version(8) crc(4)
+	static final int RECORD_SIZE = 42;
+
+	private static final int SNAPSHOT_MAGIC = 0x43525432;
+
+	private static final int LOCK_STRIPES = 256;
+
+	private static final byte ADD = 1;
+	private static final byte REMOVE = 2;
+	private static final byte SET = 3;
+	private static final byte CLEAR = 4;
+
+	private final Path directory;
+
+	private final boolean fsync;
+
+	private final Timer replayTimer;
+
+	private final Map<Long, Cart> carts = new HashMap<>();
+
+	private final Map<Long, Item> items = new HashMap<>();
+
+	private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+
+	private final CRC32 crc = new CRC32();
+
+	private final Object[] locks = new Object[LOCK_STRIPES];
+
+	private FileChannel channel;
+
+	private long segment;
+
+	private long replayedEvents;
+
+	public CartEventLog(MeterRegistry meterRegistry,
+			@Value("${cart.event-log.dir:data/cart-log}") String directory,
+			@Value("${cart.event-log.fsync:false}") boolean fsync) {
+		this.directory = Paths.get(directory);
+		this.fsync = fsync;
+		this.replayTimer = Timer.builder("cart.event_log.replay")
+			.description("Time to rebuild cart state from snapshot and log tail")
+			.register(meterRegistry);
+		for(int i = 0; i < locks.length; i++) {
+			locks[i] = new Object();
+		}
+	}
+
+	@PostConstruct
+	public synchronized void open() throws IOException {
+		Files.createDirectories(directory);
+		long start = System.nanoTime();
+		segment = readSnapshot();
+		List<Long> segments = segmentsFrom(segment);
+		replayedEvents = 0;
+		for(Long s : segments) {
+			replayedEvents += replay(segmentPath(s));
+			segment = s;
+		}
+		long elapsed = System.nanoTime() - start;
+		replayTimer.record(elapsed, TimeUnit.NANOSECONDS);
+		logger.info("Cart event log recovered {} carts from {} events in {} ms ({} events/s)",
+				carts.size(), replayedEvents, TimeUnit.NANOSECONDS.toMillis(elapsed),
+				elapsed == 0 ? replayedEvents : replayedEvents * 1_000_000_000L / elapsed);
+		channel = FileChannel.open(segmentPath(segment),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	/**
+	 * Number of events read from the log tail by the last {@link #open()}.
+	 */
+	public synchronized long getReplayedEvents() {
+		return replayedEvents;
+	}
+
+	/**
+	 * Monitor to hold across applying a change to the cart and appending it.
+	 * Appends are only ordered per cart if the change and its append happen
+	 * under the same lock; carts share a fixed set of stripes.
+	 */
+	public Object lock(Long cartId) {
+		return locks[Math.floorMod(cartId.hashCode(), locks.length)];
+	}
+
+	/**
+	 * Appends one operation of a change that left the cart at {@code version}.
+	 * Every operation of a batch carries the version reached after the whole
+	 * batch.
+	 */
+	public synchronized void append(Long cartId, CartOperation operation, Item item, long version) {
+		byte type = switch(operation.getType()) {
+			case ADD -> ADD;
+			case REMOVE -> REMOVE;
+			case SET -> SET;
+		};
+		write(type, cartId, item.getId(), operation.getQuantity(), item.getPriceMinorUnits(), version);
+		apply(type, cartId, item.getId(), operation.getQuantity(), item.getPriceMinorUnits(), version);
+	}
+
+	/**
+	 * Records that the cart was emptied, e.g. by checkout.
+	 */
+	public synchronized void appendClear(Long cartId) {
+		write(CLEAR, cartId, 0L, 0, 0L, 0L);
+		apply(CLEAR, cartId, 0L, 0, 0L, 0L);
+	}
+
+	/**
+	 * Returns a copy of the cart state rebuilt from the log, keyed by cart id.
+	 * Lines reference lightweight items carrying only id and price.
+	 */
+	public synchronized Map<Long, Cart> recover() {
+		Map<Long, Cart> copies = new HashMap<>();
+		carts.forEach((cartId, cart) -> copies.put(cartId, cart.copy()));
+		return copies;
+	}
+
+	/**
+	 * Writes the current state to {@code snapshot.bin}, rolls over to a new
+	 * segment and deletes the segments the snapshot now covers.
+	 */
+	@Scheduled(fixedDelayString = "${cart.event-log.snapshot-interval-ms:60000}")
+	public synchronized void snapshot() throws IOException {
+		long next = segment + 1;
+		Path temp = directory.resolve("snapshot.tmp");
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+			out.writeInt(SNAPSHOT_MAGIC);
+			out.writeLong(next);
+			out.writeInt(carts.size());
+			for(Map.Entry<Long, Cart> entry : carts.entrySet()) {
+				Cart cart = entry.getValue();
+				out.writeLong(entry.getKey());
+				out.writeLong(cart.getVersion());
+				writeAmount(out, cart.getTotalMinorUnits());
+				out.writeInt(cart.getItems().size());
+				for(CartLine line : cart.getItems()) {
+					out.writeLong(line.getItemId());
+					out.writeInt(line.getQuantity());
+					writeAmount(out, line.getItem().getPriceMinorUnits());
+				}
+			}
+		}
+		channel.force(true);
+		Files.move(temp, directory.resolve("snapshot.bin"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		channel.close();
+		for(Long s : segmentsFrom(0)) {
+			if(s < next) {
+				Files.deleteIfExists(segmentPath(s));
+			}
+		}
+		segment = next;
+		channel = FileChannel.open(segmentPath(segment),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	@PreDestroy
+	public synchronized void close() throws IOException {
+		if(channel != null && channel.isOpen()) {
+			channel.force(true);
+			channel.close();
+		}
+	}
+
+	private void write(byte type, long cartId, long itemId, int quantity, long price, long version) {
+		record.clear();
+		record.put(type).putLong(cartId).putLong(itemId).putInt(quantity)
+			.putLong(price).put((byte) Money.SCALE).putLong(version);
+		crc.reset();
+		crc.update(record.array(), 0, RECORD_SIZE - 4);
+		record.putInt((int) crc.getValue());
+		record.flip();
+		try {
+			while(record.hasRemaining()) {
+				channel.write(record);
+			}
+			if(fsync) {
+				channel.force(false);
+			}
+		} catch(IOException e) {
+			throw new UncheckedIOException("Failed to append to cart event log", e);
+		}
+	}
+
+	private void apply(byte type, long cartId, long itemId, int quantity, long price, long version) {
+		if(type == CLEAR) {
+			carts.remove(cartId);
+			return;
+		}
+		Cart cart = carts.computeIfAbsent(cartId, id -> {
+			Cart created = new Cart();
+			created.setId(id);
+			return created;
+		});
+		Item item = item(itemId, price);
+		switch(type) {
+			case ADD -> cart.addItem(item, quantity);
+			case REMOVE -> cart.removeItem(item, quantity);
+			case SET -> cart.setQuantity(item, quantity);
+			default -> throw new IllegalStateException("Unknown cart event type " + type);
+		}
+		cart.setVersion(version);
+	}
+
+	private Item item(long itemId, long price) {
+		Item item = items.get(itemId);
+		if(item == null || item.getPriceMinorUnits() != price) {
+			item = new Item();
+			item.setId(itemId);
+			item.setPrice(Money.ofMinor(price));
+			items.put(itemId, item);
+		}
+		return item;
+	}
+
+	private long replay(Path path) throws IOException {
+		long events = 0;
+		try(FileChannel in = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			long size = in.size();
+			long complete = size - size % RECORD_SIZE;
+			ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 4096);
+			long position = 0;
+			while(position < complete) {
+				buffer.clear();
+				buffer.limit((int) Math.min(buffer.capacity(), complete - position));
+				while(buffer.hasRemaining()) {
+					if(in.read(buffer, position + buffer.position()) < 0) {
+						break;
+					}
+				}
+				buffer.flip();
+				while(buffer.remaining() >= RECORD_SIZE) {
+					int offset = buffer.position();
+					crc.reset();
+					crc.update(buffer.array(), offset, RECORD_SIZE - 4);
+					if(buffer.getInt(offset + RECORD_SIZE - 4) != (int) crc.getValue()) {
+						return truncate(in, path, position + offset, events);
+					}
+					byte type = buffer.get();
+					long cartId = buffer.getLong();
+					long itemId = buffer.getLong();
+					int quantity = buffer.getInt();
+					long price = minorUnits(buffer.getLong(), buffer.get());
+					long version = buffer.getLong();
+					buffer.getInt();
+					apply(type, cartId, itemId, quantity, price, version);
+					events++;
+				}
+				position += buffer.limit();
+			}
+			if(complete < size) {
+				return truncate(in, path, complete, events);
+			}
+		}
+		return events;
+	}
+
+	private long truncate(FileChannel in, Path path, long valid, long events) throws IOException {
+		logger.warn("Cart event log {} has a torn record at offset {}, truncating", path, valid);
+		in.truncate(valid);
+		return events;
+	}
+
+	private long readSnapshot() throws IOException {
+		Path path = directory.resolve("snapshot.bin");
+		if(!Files.exists(path)) {
+			return 0;
+		}
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+			if(in.readInt() != SNAPSHOT_MAGIC) {
+				throw new IOException("Not a cart snapshot: " + path);
+			}
+			long firstSegment = in.readLong();
+			int cartCount = in.readInt();
+			for(int i = 0; i < cartCount; i++) {
+				Cart cart = new Cart();
+				cart.setId(in.readLong());
+				long version = in.readLong();
+				long total = readAmount(in);
+				int lineCount = in.readInt();
+				for(int j = 0; j < lineCount; j++) {
+					long itemId = in.readLong();
+					int quantity = in.readInt();
+					cart.addItem(item(itemId, readAmount(in)), quantity);
+				}
+				cart.setTotal(Money.ofMinor(total));
+				cart.setVersion(version);
+				carts.put(cart.getId(), cart);
+			}
+			return firstSegment;
+		}
+	}
+
+	private List<Long> segmentsFrom(long first) throws IOException {
+		List<Long> segments = new ArrayList<>();
+		try(Stream<Path> files = Files.list(directory)) {
+			files.map(p -> p.getFileName().toString())
+				.filter(name -> name.startsWith("events-") && name.endsWith(".log"))
+				.map(name -> Long.parseLong(name.substring("events-".length(), name.length() - ".log".length())))
+				.filter(s -> s >= first)
+				.sorted()
+				.forEach(segments::add);
+		}
+		return segments;
+	}
+
+	private Path segmentPath(long s) {
+		return directory.resolve("events-" + s + ".log");
+	}
+
+	/**
+	 * Amounts are stored as an unscaled long and a scale byte, which is
+	 * always {@link Money#SCALE} for minor units.
+	 */
+	private static void writeAmount(DataOutputStream out, long minorUnits) throws IOException {
+		out.writeLong(minorUnits);
+		out.writeByte(Money.SCALE);
+	}
+
+	private static long readAmount(DataInputStream in) throws IOException {
+		return minorUnits(in.readLong(), in.readByte());
+	}
+
+	/**
+	 * Reads an amount back as minor units. Logs written before amounts were
+	 * kept in minor units may carry other scales.
+	 */
+	private static long minorUnits(long unscaled, int scale) {
+		if(scale == Money.SCALE) {
+			return unscaled;
+		}
+		return Money.of(BigDecimal.valueOf(unscaled, scale), RoundingMode.HALF_EVEN).minorUnits();
+	}
+}
@@ -0,0 +1,171 @@
+package com.example.demo.services;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import jakarta.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.model.persistence.repositories.CartRepository;
+import com.example.demo.model.persistence.repositories.CartRepository.CartVersion;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Empties carts that have not been touched for {@code cart.expiry.ttl-ms},
+ * enabled with {@code cart.expiry.enabled=true}.
+ * <p>
+ * Last-touch times live in a {@link TimingWheel}, so recording a touch on
+ * every cart mutation is O(1). Every {@code cart.expiry.tick-ms} the wheel
+ * is advanced and the carts that fell due have their lines deleted and
+ * total reset, {@code cart.expiry.batch-size} carts per transaction. The
+ * cart row itself stays, since the user still references it.
+ * <p>
+ * Each touch also records the cart version it saw, and a cart is only
+ * emptied if it is still at the version recorded when it fell due. A cart
+ * changed in the meantime keeps its lines; the touch that follows the
+ * change has already scheduled it again.
+ */
+@Component
+@ConditionalOnProperty(name = "cart.expiry.enabled", havingValue = "true")
+public class CartExpirySweeper {
+
+	private static final Logger logger = LoggerFactory.getLogger(CartExpirySweeper.class);
+
+	private static final int WHEEL_SIZE = 64;
+
+	private static final int WHEEL_LEVELS = 4;
+
+	private static final String RESET_IF_VERSION = "update cart set total = 0, version = version + 1"
+			+ " where id = ? and version = ?";
+
+	@Autowired
+	private CartRepository cartRepository;
+
+	@Autowired
+	private CartEngine cartEngine;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired(required = false)
+	private CartEventLog cartEventLog;
+
+	@Autowired(required = false)
+	private CartJsonCache cartJsonCache;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final long ttlMillis;
+
+	private final int batchSize;
+
+	private final TimingWheel<Long> wheel;
+
+	// cart id -> highest version touched; updated together with the wheel, under its lock
+	private final ConcurrentMap<Long, Long> versions = new ConcurrentHashMap<>();
+
+	private final Counter expiredCarts;
+
+	private final Counter reclaimedRows;
+
+	public CartExpirySweeper(PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+			@Value("${cart.expiry.ttl-ms:86400000}") long ttlMillis,
+			@Value("${cart.expiry.tick-ms:1000}") long tickMillis,
+			@Value("${cart.expiry.batch-size:500}") int batchSize) {
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.ttlMillis = ttlMillis;
+		this.batchSize = batchSize;
+		this.wheel = new TimingWheel<>(tickMillis, WHEEL_SIZE, WHEEL_LEVELS, System.currentTimeMillis());
+		this.expiredCarts = Counter.builder("cart.expiry.expired")
+			.description("Carts emptied after being idle past the TTL")
+			.register(meterRegistry);
+		this.reclaimedRows = Counter.builder("cart.expiry.rows_reclaimed")
+			.description("Cart line rows deleted by the expiry sweeper")
+			.register(meterRegistry);
+		Gauge.builder("cart.expiry.tracked", wheel, TimingWheel::size)
+			.description("Carts with a pending expiry deadline")
+			.register(meterRegistry);
+	}
+
+	/**
+	 * Starts the clock for every cart that already has lines, so carts
+	 * abandoned before a restart expire too.
+	 */
+	@PostConstruct
+	public void trackExistingCarts() {
+		List<CartVersion> carts = cartRepository.findVersionsWithLines();
+		carts.forEach(cart -> touch(cart.getId(), cart.getVersion()));
+		logger.info("Cart expiry tracking {} existing carts with a TTL of {} ms", carts.size(), ttlMillis);
+	}
+
+	/**
+	 * Restarts the TTL of a cart just changed to {@code version}.
+	 */
+	public void touch(Long cartId, long version) {
+		synchronized(wheel) {
+			versions.merge(cartId, version, Math::max);
+			wheel.schedule(cartId, System.currentTimeMillis() + ttlMillis);
+		}
+	}
+
+	@Scheduled(fixedDelayString = "${cart.expiry.tick-ms:1000}")
+	public void sweep() {
+		Map<Long, Long> due = new HashMap<>();
+		synchronized(wheel) {
+			for(Long cartId : wheel.advance(System.currentTimeMillis())) {
+				due.put(cartId, versions.get(cartId));
+			}
+		}
+		List<Long> expired = new ArrayList<>(due.keySet());
+		for(int from = 0; from < expired.size(); from += batchSize) {
+			List<Long> batch = expired.subList(from, Math.min(from + batchSize, expired.size()));
+			List<Long> emptied = new ArrayList<>(batch.size());
+			Integer rows = transactionTemplate.execute(status -> {
+				int[] reset = jdbcTemplate.batchUpdate(RESET_IF_VERSION, batch, batch.size(), (statement, cartId) -> {
+					statement.setLong(1, cartId);
+					statement.setLong(2, due.get(cartId));
+				})[0];
+				for(int i = 0; i < reset.length; i++) {
+					if(reset[i] > 0) {
+						emptied.add(batch.get(i));
+					}
+				}
+				return emptied.isEmpty() ? 0 : cartRepository.deleteLines(emptied);
+			});
+			for(Long cartId : batch) {
+				versions.remove(cartId, due.get(cartId));
+			}
+			if(emptied.isEmpty()) {
+				continue;
+			}
+			cartEngine.expire(emptied);
+			if(cartEventLog != null) {
+				emptied.forEach(cartEventLog::appendClear);
+			}
+			if(cartJsonCache != null) {
+				emptied.forEach(cartJsonCache::invalidate);
+			}
+			expiredCarts.increment(emptied.size());
+			reclaimedRows.increment(rows);
+			logger.info("Cart expiry emptied {} idle carts, {} line rows deleted, {} changed since and kept",
+					emptied.size(), rows, batch.size() - emptied.size());
+		}
+	}
+}
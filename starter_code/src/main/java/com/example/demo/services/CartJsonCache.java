@@ -0,0 +1,144 @@
+package com.example.demo.services;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.model.persistence.Cart;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Keeps the JSON rendering of recently used carts so that reads, and
+ * requests that leave a cart unchanged, are answered without running
+ * Jackson over the cart, its lines and its user again.
+ * <p>
+ * There is one entry per cart, tagged with the cart version it was rendered
+ * from; a lookup for any other version misses. At most
+ * {@code cart.json-cache.max-entries} carts are kept, least recently used
+ * first out.
+ */
+@Component
+@ConditionalOnProperty(name = "cart.json-cache.enabled", havingValue = "true", matchIfMissing = true)
+public class CartJsonCache {
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	private final Map<Long, Entry> entries;
+
+	private long bytes;
+
+	private final Counter hits;
+
+	private final Counter misses;
+
+	private final Counter bytesSaved;
+
+	public CartJsonCache(MeterRegistry meterRegistry,
+			@Value("${cart.json-cache.max-entries:10000}") int maxEntries) {
+		this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+				if(size() > maxEntries) {
+					bytes -= eldest.getValue().json.length;
+					return true;
+				}
+				return false;
+			}
+		};
+		this.hits = Counter.builder("cart.json_cache.hits")
+			.description("Cart responses served from pre-rendered JSON")
+			.register(meterRegistry);
+		this.misses = Counter.builder("cart.json_cache.misses")
+			.description("Cart responses that had to be rendered")
+			.register(meterRegistry);
+		this.bytesSaved = Counter.builder("cart.json_cache.bytes_saved")
+			.description("JSON bytes served without serializing the cart")
+			.baseUnit("bytes")
+			.register(meterRegistry);
+		Gauge.builder("cart.json_cache.size", this, CartJsonCache::size)
+			.description("Carts with cached JSON")
+			.register(meterRegistry);
+		Gauge.builder("cart.json_cache.bytes", this, CartJsonCache::bytes)
+			.description("Bytes of cached cart JSON")
+			.baseUnit("bytes")
+			.register(meterRegistry);
+	}
+
+	/**
+	 * Returns the cached JSON of the cart at exactly {@code version}, or
+	 * {@code null}.
+	 */
+	public byte[] get(Long cartId, long version) {
+		byte[] json;
+		synchronized(this) {
+			Entry entry = entries.get(cartId);
+			json = entry != null && entry.version == version ? entry.json : null;
+		}
+		if(json == null) {
+			misses.increment();
+		} else {
+			hits.increment();
+			bytesSaved.increment(json.length);
+		}
+		return json;
+	}
+
+	/**
+	 * Returns the JSON of {@code cart}, rendering and caching it unless its
+	 * current version is already cached.
+	 */
+	public byte[] render(Cart cart) {
+		byte[] json = get(cart.getId(), cart.getVersion());
+		if(json != null) {
+			return json;
+		}
+		try {
+			json = objectMapper.writeValueAsBytes(cart);
+		} catch(JsonProcessingException e) {
+			throw new IllegalStateException("Could not serialize cart " + cart.getId(), e);
+		}
+		put(cart.getId(), cart.getVersion(), json);
+		return json;
+	}
+
+	public synchronized void invalidate(Long cartId) {
+		Entry removed = entries.remove(cartId);
+		if(removed != null) {
+			bytes -= removed.json.length;
+		}
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long bytes() {
+		return bytes;
+	}
+
+	private synchronized void put(Long cartId, long version, byte[] json) {
+		Entry previous = entries.put(cartId, new Entry(version, json));
+		if(previous != null) {
+			bytes -= previous.json.length;
+		}
+		bytes += json.length;
+	}
+
+	private record Entry(long version, byte[] json) {
+	}
+}
@@ -0,0 +1,96 @@
+package com.example.demo.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.requests.CartOperation;
+
+/**
+ * Entry point for every change to a persisted cart: hands the operations to
+ * the configured {@link CartEngine} and records them in the optional event
+ * log, then tells the expiry sweeper and drops the cart's cached JSON.
+ */
+@Service
+public class CartService {
+
+	@Autowired
+	private CartEngine cartEngine;
+
+	@Autowired
+	private ItemRepository itemRepository;
+
+	@Autowired(required = false)
+	private CartEventLog cartEventLog;
+
+	@Autowired(required = false)
+	private CartExpirySweeper cartExpirySweeper;
+
+	@Autowired(required = false)
+	private CartJsonCache cartJsonCache;
+
+	/**
+	 * Applies {@code operations} to {@code cart}.
+	 *
+	 * @param items every item referenced by {@code operations}, keyed by id
+	 * @return the cart after the operations have been applied
+	 */
+	public Cart apply(Cart cart, List<CartOperation> operations, Map<Long, Item> items) {
+		long version = cart.getVersion();
+		Cart result;
+		if(cartEventLog == null) {
+			result = cartEngine.apply(cart, operations, items);
+		} else {
+			// applied and appended under one lock, so the log holds the cart's
+			// changes in the order the engine made them
+			synchronized(cartEventLog.lock(cart.getId())) {
+				result = cartEngine.apply(cart, operations, items);
+				for(CartOperation operation : operations) {
+					cartEventLog.append(cart.getId(), operation, items.get(operation.getItemId()), result.getVersion());
+				}
+			}
+		}
+		if(cartExpirySweeper != null) {
+			cartExpirySweeper.touch(cart.getId(), result.getVersion());
+		}
+		if(cartJsonCache != null && result.getVersion() != version) {
+			cartJsonCache.invalidate(cart.getId());
+		}
+		return result;
+	}
+
+	/**
+	 * Merges the lines of a guest cart, as decoded by {@link GuestCartTokens},
+	 * into {@code cart}: each item the guest picked is set to the guest's
+	 * quantity. Setting rather than adding makes the merge idempotent, so a
+	 * token replayed or merged twice never multiplies the quantities. The
+	 * items are resolved with one query and the lines go to the engine as a
+	 * single batch, so the merge is one write whatever the number of lines.
+	 * Items that no longer exist are skipped.
+	 */
+	public Cart merge(Cart cart, Map<Long, Integer> quantities) {
+		if(quantities.isEmpty()) {
+			return cart;
+		}
+		Map<Long, Item> items = itemRepository.findAllById(quantities.keySet()).stream()
+			.collect(Collectors.toMap(Item::getId, Function.identity()));
+		List<CartOperation> operations = new ArrayList<>();
+		quantities.forEach((itemId, quantity) -> {
+			if(items.containsKey(itemId)) {
+				operations.add(new CartOperation(CartOperation.Type.SET, itemId, quantity));
+			}
+		});
+		if(operations.isEmpty()) {
+			return cart;
+		}
+		return apply(cart, operations, items);
+	}
+}
@@ -0,0 +1,200 @@
+package com.example.demo.services;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.PersistenceContext;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.OrderLine;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.model.persistence.repositories.CartRepository;
+import com.example.demo.model.persistence.repositories.OrderRepository;
+
+/**
+ * Turns a cart into an order. The order row, its lines and the emptying of
+ * the cart are written in one transaction, with a fixed number of
+ * statements whatever the size of the cart: the lines go to the database as
+ * a single JDBC batch rather than one insert per line through the
+ * {@code UserOrder.lines} mapping.
+ */
+@Service
+public class CheckoutService {
+
+	private static final Logger logger = LoggerFactory.getLogger(CheckoutService.class);
+
+	private static final int LEDGER_PAGE_SIZE = 500;
+
+	private static final String INSERT_LINE = "insert into user_order_line"
+			+ " (order_id, item_id, name, unit_price, quantity, line_total) values (?, ?, ?, ?, ?, ?)";
+
+	@Autowired
+	private CartRepository cartRepository;
+
+	@Autowired
+	private CartEngine cartEngine;
+
+	@Autowired
+	private OrderRepository orderRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired(required = false)
+	private CartEventLog cartEventLog;
+
+	@Autowired(required = false)
+	private CartJsonCache cartJsonCache;
+
+	@Autowired(required = false)
+	private RevenueRollups revenueRollups;
+
+	@Autowired(required = false)
+	private OrderLedger orderLedger;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	private final TransactionTemplate transactionTemplate;
+
+	public CheckoutService(PlatformTransactionManager transactionManager) {
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+	}
+
+	/**
+	 * Appends to the order ledger the orders committed after its last record,
+	 * whose after-commit append was lost when the application stopped.
+	 */
+	@PostConstruct
+	public void reconcileLedger() {
+		if(orderLedger == null) {
+			return;
+		}
+		long after = orderLedger.lastOrderId();
+		int appended = 0;
+		while(after >= 0) {
+			long from = after;
+			List<UserOrder> page = transactionTemplate.execute(status -> {
+				List<UserOrder> orders = orderRepository.findByIdGreaterThanOrderById(from, Limit.of(LEDGER_PAGE_SIZE));
+				orders.forEach(order -> order.getLines().size());
+				return orders;
+			});
+			appended += orderLedger.reconcile(page);
+			after = page.size() < LEDGER_PAGE_SIZE ? -1 : page.get(page.size() - 1).getId();
+		}
+		orderLedger.reconciled();
+		if(appended > 0) {
+			logger.info("Appended {} committed orders missing from the order ledger", appended);
+		}
+	}
+
+	/**
+	 * Places an order for everything in the cart and empties it. The cart row
+	 * is locked for the duration, so two concurrent checkouts of one cart
+	 * cannot both order its contents. The cart must already be flushed by the
+	 * {@link CartEngine}.
+	 *
+	 * @return the order, detached, or {@code null} if the cart is empty
+	 */
+	public UserOrder checkout(User user, Long cartId) {
+		UserOrder order = transactionTemplate.execute(status -> {
+			// the lines are read after the lock is granted, in a statement of their
+			// own: a locking read joining them returns them as they were before
+			// the wait, so a second checkout would order lines the first removed
+			Cart locked = entityManager.find(Cart.class, cartId, LockModeType.PESSIMISTIC_WRITE);
+			if(locked.getItems().isEmpty()) {
+				return null;
+			}
+			UserOrder created = UserOrder.createFromCart(locked);
+			created.setUser(user);
+			return place(created, cartId, locked.getVersion()) ? created : null;
+		});
+		if(order != null) {
+			cleared(List.of(cartId));
+			placed(order);
+		}
+		return order;
+	}
+
+	/**
+	 * Empties the cart an already built order was built from and inserts the
+	 * order and its lines, provided the cart is still at {@code cartVersion}.
+	 * A cart changed since is left alone and the order is not inserted, so it
+	 * never duplicates or contradicts the newer contents. Must run inside a
+	 * transaction, and be followed by {@link #cleared} and {@link #placed}
+	 * once that transaction has committed.
+	 *
+	 * @return whether the order was placed
+	 */
+	public boolean place(UserOrder order, Long cartId, long cartVersion) {
+		// the conditional update also locks the cart row until commit
+		if(cartRepository.resetTotalIfVersion(cartId, cartVersion) == 0) {
+			return false;
+		}
+		cartRepository.deleteLines(List.of(cartId));
+		List<OrderLine> lines = order.getLines();
+		order.setLines(new ArrayList<>());
+		try {
+			entityManager.persist(order);
+			entityManager.flush();
+			jdbcTemplate.batchUpdate(INSERT_LINE, lines, lines.size(), (statement, line) -> {
+				statement.setLong(1, order.getId());
+				statement.setLong(2, line.getItemId());
+				statement.setString(3, line.getName());
+				statement.setBigDecimal(4, line.getUnitPrice().toBigDecimal());
+				statement.setInt(5, line.getQuantity());
+				statement.setBigDecimal(6, line.getLineTotal().toBigDecimal());
+			});
+			entityManager.detach(order);
+		} finally {
+			order.setLines(lines);
+		}
+		return true;
+	}
+
+	/**
+	 * Counts an order in the revenue roll-ups and appends it to the order
+	 * ledger once its transaction has committed.
+	 */
+	public void placed(UserOrder order) {
+		if(revenueRollups != null) {
+			revenueRollups.record(order);
+		}
+		if(orderLedger != null) {
+			orderLedger.append(order);
+		}
+	}
+
+	/**
+	 * Drops what the cart engine, event log and JSON cache hold for carts
+	 * emptied by a committed checkout.
+	 */
+	public void cleared(Collection<Long> cartIds) {
+		if(cartIds.isEmpty()) {
+			return;
+		}
+		cartEngine.expire(cartIds);
+		for(Long cartId : cartIds) {
+			if(cartEventLog != null) {
+				cartEventLog.appendClear(cartId);
+			}
+			if(cartJsonCache != null) {
+				cartJsonCache.invalidate(cartId);
+			}
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package com.example.demo.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.PersistenceContext;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.repositories.CartRepository;
+import com.example.demo.model.requests.CartOperation;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Engine that group-commits concurrent mutations of the same cart. The
+ * first request for a cart opens a batch and waits up to
+ * {@code cart.coalescing.window-ms} (or until {@code cart.coalescing.max-batch}
+ * requests have joined); it then applies every queued mutation in arrival
+ * order to a single locked load of the cart, saves once and hands the
+ * resulting cart to every waiting request.
+ */
+@Service
+@ConditionalOnProperty(name = "cart.engine", havingValue = "coalescing")
+public class CoalescingCartEngine implements CartEngine {
+
+	@Autowired
+	private CartRepository cartRepository;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final long windowNanos;
+
+	private final int maxBatch;
+
+	private final ConcurrentMap<Long, Batch> openBatches = new ConcurrentHashMap<>();
+
+	private final Counter commits;
+
+	private final DistributionSummary batchSizes;
+
+	public CoalescingCartEngine(PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+			@Value("${cart.coalescing.window-ms:5}") long windowMs,
+			@Value("${cart.coalescing.max-batch:64}") int maxBatch) {
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+		this.maxBatch = maxBatch;
+		this.commits = Counter.builder("cart.coalescing.commits")
+			.description("Cart writes issued after coalescing")
+			.register(meterRegistry);
+		this.batchSizes = DistributionSummary.builder("cart.coalescing.batch.size")
+			.description("Requests merged into one cart write")
+			.baseUnit("requests")
+			.register(meterRegistry);
+	}
+
+	@Override
+	public Cart apply(Cart cart, List<CartOperation> operations, Map<Long, Item> items) {
+		Long cartId = cart.getId();
+		Mutation mutation = new Mutation(operations, items);
+		Batch batch;
+		boolean leader;
+		while(true) {
+			batch = openBatches.computeIfAbsent(cartId, id -> new Batch());
+			synchronized(batch) {
+				if(batch.closed) {
+					continue;
+				}
+				leader = batch.mutations.isEmpty();
+				batch.mutations.add(mutation);
+				if(batch.mutations.size() >= maxBatch) {
+					batch.notifyAll();
+				}
+				break;
+			}
+		}
+		if(leader) {
+			lead(cartId, batch);
+		}
+		try {
+			return batch.result.join();
+		} catch(CompletionException e) {
+			if(e.getCause() instanceof RuntimeException cause) {
+				throw cause;
+			}
+			throw e;
+		}
+	}
+
+	private void lead(Long cartId, Batch batch) {
+		List<Mutation> mutations;
+		synchronized(batch) {
+			long deadline = System.nanoTime() + windowNanos;
+			long remaining;
+			while(batch.mutations.size() < maxBatch && (remaining = deadline - System.nanoTime()) > 0) {
+				try {
+					TimeUnit.NANOSECONDS.timedWait(batch, remaining);
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+			openBatches.remove(cartId, batch);
+			batch.closed = true;
+			mutations = batch.mutations;
+		}
+		try {
+			batch.result.complete(commit(cartId, mutations));
+		} catch(RuntimeException e) {
+			batch.result.completeExceptionally(e);
+		}
+	}
+
+	private Cart commit(Long cartId, List<Mutation> mutations) {
+		Cart cart = transactionTemplate.execute(status -> {
+			Cart locked = entityManager.find(Cart.class, cartId);
+			entityManager.refresh(locked, LockModeType.PESSIMISTIC_WRITE);
+			for(Mutation mutation : mutations) {
+				for(CartOperation operation : mutation.operations) {
+					CartEngine.applyTo(locked, operation, mutation.items.get(operation.getItemId()));
+				}
+			}
+			return cartRepository.save(locked).copy();
+		});
+		commits.increment();
+		batchSizes.record(mutations.size());
+		return cart;
+	}
+
+	private record Mutation(List<CartOperation> operations, Map<Long, Item> items) {
+	}
+
+	private static final class Batch {
+
+		private final List<Mutation> mutations = new ArrayList<>();
+
+		private final CompletableFuture<Cart> result = new CompletableFuture<>();
+
+		private boolean closed;
+	}
+}
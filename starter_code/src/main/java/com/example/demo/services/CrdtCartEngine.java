@@ -0,0 +1,379 @@
+package com.example.demo.services;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.CartLine;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.repositories.CartRepository;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.requests.CartOperation;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Engine for active-active deployments where edits to one cart may land on
+ * different nodes. Each node keeps carts as {@link ReplicatedCart}s, applies
+ * edits locally without coordinating, and pushes the carts it changed to the
+ * nodes listed in {@code cart.crdt.peers} every
+ * {@code cart.crdt.gossip-interval-ms}. Checkout pulls the cart from every
+ * reachable peer before writing the merged contents to the {@code cart}
+ * table, so the table is only written when an order is placed.
+ * <p>
+ * Flushing stores the per-replica counters next to the merged lines. A cart
+ * seen for the first time is taken from every peer that knows it, merged
+ * with those stored counters. Only a row the engine never flushed, or one
+ * emptied since, is loaded as lines under {@link ReplicatedCart#BASE_REPLICA}.
+ * Loading a flushed row that way would count every node's edits a second
+ * time.
+ */
+@Service
+@ConditionalOnProperty(name = "cart.engine", havingValue = "crdt")
+public class CrdtCartEngine implements CartEngine {
+
+	public static final String REPLICATION_PATH = "/internal/crdt/carts";
+
+	public static final String REPLICATION_KEY_HEADER = "X-Replication-Key";
+
+	private static final Logger logger = LoggerFactory.getLogger(CrdtCartEngine.class);
+
+	@Autowired
+	private CartRepository cartRepository;
+
+	@Autowired
+	private ItemRepository itemRepository;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	private final String nodeId;
+
+	private final List<URI> peers = new ArrayList<>();
+
+	private final String replicationKey;
+
+	private final Duration peerTimeout;
+
+	private final HttpClient httpClient;
+
+	private final ConcurrentMap<Long, ReplicatedCart> carts = new ConcurrentHashMap<>();
+
+	private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+
+	private final ConcurrentMap<Long, Item> items = new ConcurrentHashMap<>();
+
+	private final Counter merges;
+
+	private final Counter gossipFailures;
+
+	public CrdtCartEngine(MeterRegistry meterRegistry,
+			@Value("${cart.crdt.node-id:}") String nodeId,
+			@Value("${cart.crdt.peers:}") List<String> peers,
+			@Value("${cart.crdt.replication-key:}") String replicationKey,
+			@Value("${cart.crdt.peer-timeout-ms:500}") long peerTimeoutMs) {
+		// the replication endpoints are open to anyone holding the key, so there is no default
+		if(replicationKey.isBlank()) {
+			throw new IllegalStateException("cart.crdt.replication-key must be set when cart.engine=crdt");
+		}
+		this.nodeId = nodeId.isBlank() ? UUID.randomUUID().toString() : nodeId;
+		for(String peer : peers) {
+			if(!peer.isBlank()) {
+				this.peers.add(URI.create(peer.trim()));
+			}
+		}
+		this.replicationKey = replicationKey;
+		this.peerTimeout = Duration.ofMillis(peerTimeoutMs);
+		this.httpClient = HttpClient.newBuilder().connectTimeout(peerTimeout).build();
+		Gauge.builder("cart.crdt.dirty", dirty, Set::size)
+			.description("Carts changed locally and not yet pushed to the peers")
+			.register(meterRegistry);
+		this.merges = Counter.builder("cart.crdt.merges")
+			.description("Remote cart states that changed the local replica")
+			.register(meterRegistry);
+		this.gossipFailures = Counter.builder("cart.crdt.gossip.failures")
+			.description("Pushes to a peer that failed and will be retried")
+			.register(meterRegistry);
+		logger.info("CRDT cart engine started as node {} with peers {}", this.nodeId, this.peers);
+	}
+
+	public String getNodeId() {
+		return nodeId;
+	}
+
+	@Override
+	public Cart apply(Cart cart, List<CartOperation> operations, Map<Long, Item> items) {
+		this.items.putAll(items);
+		ReplicatedCart state = stateFor(cart);
+		synchronized(state) {
+			for(CartOperation operation : operations) {
+				state.apply(nodeId, operation);
+			}
+			dirty.add(cart.getId());
+			return view(cart.getId(), cart, state);
+		}
+	}
+
+	@Override
+	public Cart current(Long cartId) {
+		ReplicatedCart state = carts.get(cartId);
+		if(state == null) {
+			return null;
+		}
+		synchronized(state) {
+			return view(cartId, null, state);
+		}
+	}
+
+	/**
+	 * Merges the cart from every reachable peer and writes the result, with
+	 * the counters it came from, to the {@code cart} table.
+	 */
+	@Override
+	public Cart flush(Cart cart) {
+		ReplicatedCart state = stateFor(cart);
+		List<ReplicatedCart> remotes = fetchFromPeers(cart.getId());
+		Cart merged;
+		ReplicatedCart counters;
+		synchronized(state) {
+			for(ReplicatedCart remote : remotes) {
+				if(state.merge(remote)) {
+					merges.increment();
+				}
+			}
+			merged = view(cart.getId(), cart, state);
+			counters = state.copy();
+		}
+		cart.copyFrom(merged);
+		try {
+			cart.setReplicaState(objectMapper.writeValueAsString(counters));
+		} catch(IOException e) {
+			throw new IllegalStateException("Could not serialise cart state", e);
+		}
+		cart.setReplicaStateVersion(cart.getVersion());
+		cartRepository.save(cart);
+		return cart;
+	}
+
+	/**
+	 * Expiring a cart is a local removal of every line, which then replicates
+	 * like any other edit; dropping the state would let the peers gossip the
+	 * lines back.
+	 */
+	@Override
+	public void expire(Collection<Long> cartIds) {
+		for(Long cartId : cartIds) {
+			ReplicatedCart state = carts.get(cartId);
+			if(state == null) {
+				continue;
+			}
+			synchronized(state) {
+				for(Long itemId : state.quantities().keySet()) {
+					state.setQuantity(nodeId, itemId, 0);
+				}
+			}
+			dirty.add(cartId);
+		}
+	}
+
+	/**
+	 * Folds cart states pushed by a peer into the local replicas.
+	 */
+	public void receive(Map<Long, ReplicatedCart> remote) {
+		remote.forEach((cartId, state) -> {
+			ReplicatedCart local = carts.putIfAbsent(cartId, state);
+			if(local == null) {
+				merges.increment();
+				return;
+			}
+			synchronized(local) {
+				if(local.merge(state)) {
+					merges.increment();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Returns a copy of the local replica of a cart, or {@code null} if this
+	 * node has not seen it.
+	 */
+	public ReplicatedCart snapshot(Long cartId) {
+		ReplicatedCart state = carts.get(cartId);
+		if(state == null) {
+			return null;
+		}
+		synchronized(state) {
+			return state.copy();
+		}
+	}
+
+	public boolean isReplicationKey(String key) {
+		return key != null && MessageDigest.isEqual(replicationKey.getBytes(StandardCharsets.UTF_8),
+				key.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Pushes every cart changed since the last round to all peers, in one
+	 * request per peer. Carts whose push failed stay dirty for the next round.
+	 */
+	@Scheduled(fixedDelayString = "${cart.crdt.gossip-interval-ms:200}")
+	public void gossip() {
+		if(peers.isEmpty() || dirty.isEmpty()) {
+			return;
+		}
+		Map<Long, ReplicatedCart> changed = new HashMap<>();
+		for(Long cartId : new ArrayList<>(dirty)) {
+			dirty.remove(cartId);
+			ReplicatedCart snapshot = snapshot(cartId);
+			if(snapshot != null) {
+				changed.put(cartId, snapshot);
+			}
+		}
+		byte[] body;
+		try {
+			body = objectMapper.writeValueAsBytes(changed);
+		} catch(IOException e) {
+			throw new IllegalStateException("Could not serialise cart states", e);
+		}
+		for(URI peer : peers) {
+			HttpRequest request = HttpRequest.newBuilder(peer.resolve(REPLICATION_PATH))
+				.timeout(peerTimeout)
+				.header("Content-Type", "application/json")
+				.header(REPLICATION_KEY_HEADER, replicationKey)
+				.POST(HttpRequest.BodyPublishers.ofByteArray(body))
+				.build();
+			try {
+				HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+				if(response.statusCode() / 100 != 2) {
+					throw new IOException("HTTP " + response.statusCode());
+				}
+			} catch(IOException e) {
+				gossipFailures.increment();
+				dirty.addAll(changed.keySet());
+				logger.debug("Could not push {} carts to {}: {}", changed.size(), peer, e.getMessage());
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				dirty.addAll(changed.keySet());
+				return;
+			}
+		}
+	}
+
+	private ReplicatedCart stateFor(Cart cart) {
+		ReplicatedCart state = carts.get(cart.getId());
+		if(state != null) {
+			return state;
+		}
+		ReplicatedCart seeded = new ReplicatedCart();
+		List<ReplicatedCart> remotes = fetchFromPeers(cart.getId());
+		ReplicatedCart stored = storedState(cart);
+		if(stored != null) {
+			seeded.merge(stored);
+		} else if(remotes.isEmpty()) {
+			for(CartLine line : cart.getItems()) {
+				items.putIfAbsent(line.getItemId(), line.getItem());
+				seeded.setQuantity(ReplicatedCart.BASE_REPLICA, line.getItemId(), line.getQuantity());
+			}
+		}
+		remotes.forEach(seeded::merge);
+		state = carts.putIfAbsent(cart.getId(), seeded);
+		return state == null ? seeded : state;
+	}
+
+	/**
+	 * Returns the counters the last flush stored with the cart, or
+	 * {@code null} if there are none or the cart has changed since.
+	 */
+	private ReplicatedCart storedState(Cart cart) {
+		if(cart.getReplicaState() == null || cart.getReplicaStateVersion() == null
+				|| cart.getReplicaStateVersion() != cart.getVersion()) {
+			return null;
+		}
+		try {
+			return objectMapper.readValue(cart.getReplicaState(), ReplicatedCart.class);
+		} catch(IOException e) {
+			logger.warn("Ignoring unreadable replica state of cart {}: {}", cart.getId(), e.getMessage());
+			return null;
+		}
+	}
+
+	private List<ReplicatedCart> fetchFromPeers(Long cartId) {
+		List<ReplicatedCart> remotes = new ArrayList<>();
+		for(URI peer : peers) {
+			HttpRequest request = HttpRequest.newBuilder(peer.resolve(REPLICATION_PATH + "/" + cartId))
+				.timeout(peerTimeout)
+				.header(REPLICATION_KEY_HEADER, replicationKey)
+				.GET()
+				.build();
+			try {
+				HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+				if(response.statusCode() == 200) {
+					remotes.add(objectMapper.readValue(response.body(), ReplicatedCart.class));
+				}
+			} catch(IOException e) {
+				logger.debug("Could not fetch cart {} from {}: {}", cartId, peer, e.getMessage());
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		return remotes;
+	}
+
+	/**
+	 * Materialises a replica as a detached {@link Cart}, loading the items
+	 * this node has not seen yet in one query.
+	 */
+	private Cart view(Long cartId, Cart template, ReplicatedCart state) {
+		Map<Long, Integer> quantities = state.quantities();
+		List<Long> missing = new ArrayList<>();
+		for(Long itemId : quantities.keySet()) {
+			if(!items.containsKey(itemId)) {
+				missing.add(itemId);
+			}
+		}
+		if(!missing.isEmpty()) {
+			itemRepository.findAllById(missing).forEach(item -> items.put(item.getId(), item));
+		}
+		Cart view = new Cart();
+		view.setId(cartId);
+		if(template != null) {
+			view.setUser(template.getUser());
+		}
+		quantities.forEach((itemId, quantity) -> {
+			Item item = items.get(itemId);
+			if(item != null) {
+				view.addItem(item, quantity);
+			}
+		});
+		view.setVersion(state.getVersion());
+		return view;
+	}
+}
@@ -0,0 +1,37 @@
+package com.example.demo.services;
+
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.repositories.CartRepository;
+import com.example.demo.model.requests.CartOperation;
+
+/**
+ * Default engine: mutates the loaded cart entity and saves it back. Requests
+ * that leave the cart unchanged, such as a zero-quantity add, are not saved.
+ */
+@Service
+@ConditionalOnProperty(name = "cart.engine", havingValue = "entity", matchIfMissing = true)
+public class EntityCartEngine implements CartEngine {
+
+	@Autowired
+	private CartRepository cartRepository;
+
+	@Override
+	public Cart apply(Cart cart, List<CartOperation> operations, Map<Long, Item> items) {
+		long version = cart.getVersion();
+		for(CartOperation operation : operations) {
+			CartEngine.applyTo(cart, operation, items.get(operation.getItemId()));
+		}
+		if(cart.getVersion() != version) {
+			cartRepository.save(cart);
+		}
+		return cart;
+	}
+}
@@ -0,0 +1,172 @@
+package com.example.demo.services;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Encodes a guest cart (item id to quantity) as a signed token the client
+ * keeps, so browsing without an account never touches the database.
+ * <p>
+ * A token is {@code payload.signature}, both base64url without padding. The
+ * payload is a format byte, the issue time in seconds and the lines as
+ * varints; the signature is the HMAC-SHA256 of the payload, keyed with
+ * {@code cart.guest.secret}, which has no default. Tokens older than
+ * {@code cart.guest.ttl-ms} are rejected.
+ */
+@Component
+public class GuestCartTokens {
+
+	private static final String ALGORITHM = "HmacSHA256";
+
+	private static final int FORMAT = 1;
+
+	private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+	private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+	private final SecretKeySpec key;
+
+	private final long ttlMillis;
+
+	private final int maxLines;
+
+	public GuestCartTokens(@Value("${cart.guest.secret:}") String secret,
+			@Value("${cart.guest.ttl-ms:604800000}") long ttlMillis,
+			@Value("${cart.guest.max-lines:200}") int maxLines) {
+		// anyone holding the secret can mint carts, so there is no default
+		if(secret.isBlank()) {
+			throw new IllegalStateException("cart.guest.secret must be set");
+		}
+		this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+		this.ttlMillis = ttlMillis;
+		this.maxLines = maxLines;
+	}
+
+	public int getMaxLines() {
+		return maxLines;
+	}
+
+	/**
+	 * Signs the given lines. Lines with a quantity of zero or less are
+	 * dropped.
+	 *
+	 * @throws IllegalArgumentException if a line has no valid item id or there
+	 *         are more than {@code cart.guest.max-lines} lines
+	 */
+	public String encode(Map<Long, Integer> quantities) {
+		Map<Long, Integer> lines = new TreeMap<>();
+		quantities.forEach((itemId, quantity) -> {
+			if(itemId == null || itemId <= 0) {
+				throw new IllegalArgumentException("Invalid guest cart item id");
+			}
+			if(quantity != null && quantity > 0) {
+				lines.put(itemId, quantity);
+			}
+		});
+		if(lines.size() > maxLines) {
+			throw new IllegalArgumentException("Guest cart holds more than " + maxLines + " lines");
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream(16 + lines.size() * 4);
+		out.write(FORMAT);
+		writeVarint(out, System.currentTimeMillis() / 1000);
+		writeVarint(out, lines.size());
+		lines.forEach((itemId, quantity) -> {
+			writeVarint(out, itemId);
+			writeVarint(out, quantity);
+		});
+		byte[] payload = out.toByteArray();
+		return ENCODER.encodeToString(payload) + "." + ENCODER.encodeToString(sign(payload));
+	}
+
+	/**
+	 * Verifies and decodes a token. A {@code null} or empty token is an empty
+	 * cart.
+	 *
+	 * @return the lines, ordered by item id
+	 * @throws IllegalArgumentException if the token is malformed, forged or
+	 *         expired
+	 */
+	public Map<Long, Integer> decode(String token) {
+		Map<Long, Integer> lines = new TreeMap<>();
+		if(token == null || token.isEmpty()) {
+			return lines;
+		}
+		int dot = token.indexOf('.');
+		if(dot < 0) {
+			throw new IllegalArgumentException("Malformed guest cart token");
+		}
+		byte[] payload = DECODER.decode(token.substring(0, dot));
+		byte[] signature = DECODER.decode(token.substring(dot + 1));
+		if(!MessageDigest.isEqual(sign(payload), signature)) {
+			throw new IllegalArgumentException("Invalid guest cart signature");
+		}
+		int[] position = {0};
+		if(payload.length == 0 || payload[position[0]++] != FORMAT) {
+			throw new IllegalArgumentException("Unsupported guest cart token");
+		}
+		long issuedAt = readVarint(payload, position) * 1000;
+		if(System.currentTimeMillis() - issuedAt > ttlMillis) {
+			throw new IllegalArgumentException("Expired guest cart token");
+		}
+		long count = readVarint(payload, position);
+		if(count > maxLines) {
+			throw new IllegalArgumentException("Guest cart holds more than " + maxLines + " lines");
+		}
+		for(long i = 0; i < count; i++) {
+			long itemId = readVarint(payload, position);
+			long quantity = readVarint(payload, position);
+			if(itemId <= 0) {
+				throw new IllegalArgumentException("Invalid guest cart item id");
+			}
+			if(quantity <= 0 || quantity > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("Invalid guest cart quantity");
+			}
+			lines.put(itemId, (int) quantity);
+		}
+		return lines;
+	}
+
+	private byte[] sign(byte[] payload) {
+		try {
+			Mac mac = Mac.getInstance(ALGORITHM);
+			mac.init(key);
+			return mac.doFinal(payload);
+		} catch(GeneralSecurityException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void writeVarint(ByteArrayOutputStream out, long value) {
+		while((value & ~0x7FL) != 0) {
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	private static long readVarint(byte[] bytes, int[] position) {
+		long value = 0;
+		for(int shift = 0; shift < 64; shift += 7) {
+			if(position[0] >= bytes.length) {
+				throw new IllegalArgumentException("Truncated guest cart token");
+			}
+			byte b = bytes[position[0]++];
+			value |= (long) (b & 0x7F) << shift;
+			if((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Malformed guest cart token");
+	}
+}
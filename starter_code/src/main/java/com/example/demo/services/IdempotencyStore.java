@@ -0,0 +1,294 @@
+package com.example.demo.services;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Makes mutating endpoints safe to retry. A request carrying an
+ * {@value #HEADER} header is executed once per key and scope; its response
+ * is kept, already serialised, for {@code idempotency.ttl-ms} and replayed
+ * to any retry with the same key, marked with {@value #REPLAYED_HEADER}.
+ * A retry that arrives while the first request is still running waits for
+ * it, up to {@code idempotency.in-flight-wait-ms}, instead of running again.
+ * <p>
+ * Reusing a key for a different request body is answered with {@code 422}.
+ * Server errors are not kept, so the request can be retried with the same
+ * key. Stored responses are held within {@code idempotency.max-bytes},
+ * oldest out first, as estimated from their keys, headers and bodies. A key
+ * whose request is still running is never dropped, however old or large
+ * the store, or a retry would run the request again.
+ */
+@Component
+public class IdempotencyStore {
+
+	public static final String HEADER = "Idempotency-Key";
+
+	public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+	private static final Logger logger = LoggerFactory.getLogger(IdempotencyStore.class);
+
+	// map node, entry, future and array headers around the key and the stored bytes
+	private static final int ENTRY_OVERHEAD = 256;
+
+	private final ObjectMapper objectMapper;
+
+	// insertion ordered, so with a single TTL the eldest entry expires first
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+
+	private final long maxBytes;
+
+	private final long ttlMillis;
+
+	private final long inFlightWaitMillis;
+
+	private final Counter replays;
+
+	private final Counter coalesced;
+
+	private long bytes;
+
+	public IdempotencyStore(ObjectMapper objectMapper, MeterRegistry meterRegistry,
+			@Value("${idempotency.max-bytes:67108864}") long maxBytes,
+			@Value("${idempotency.ttl-ms:86400000}") long ttlMillis,
+			@Value("${idempotency.in-flight-wait-ms:10000}") long inFlightWaitMillis) {
+		this.objectMapper = objectMapper;
+		this.maxBytes = maxBytes;
+		this.ttlMillis = ttlMillis;
+		this.inFlightWaitMillis = inFlightWaitMillis;
+		this.replays = Counter.builder("idempotency.replays")
+			.description("Retries answered with a stored response")
+			.register(meterRegistry);
+		this.coalesced = Counter.builder("idempotency.coalesced")
+			.description("Retries that waited for the in-flight original")
+			.register(meterRegistry);
+		Gauge.builder("idempotency.keys", this, IdempotencyStore::size)
+			.description("Idempotency keys held")
+			.register(meterRegistry);
+		Gauge.builder("idempotency.bytes", this, IdempotencyStore::bytes)
+			.description("Estimated memory held by idempotency keys and stored responses")
+			.baseUnit("bytes")
+			.register(meterRegistry);
+	}
+
+	/**
+	 * Runs {@code action} unless {@code key} was already used in
+	 * {@code scope}, in which case the stored response is returned.
+	 *
+	 * @param scope   the operation and the resource it acts on, so that the
+	 *                same key sent to different endpoints does not collide
+	 * @param key     the client's {@value #HEADER}, or {@code null} to just
+	 *                run {@code action}
+	 * @param request the request body, compared with the one the key was
+	 *                first used with
+	 */
+	public ResponseEntity<Object> execute(String scope, String key, Object request,
+			Supplier<? extends ResponseEntity<?>> action) {
+		if(key == null || key.isBlank()) {
+			@SuppressWarnings("unchecked")
+			ResponseEntity<Object> response = (ResponseEntity<Object>) action.get();
+			return response;
+		}
+		String storeKey = scope + "\n" + key;
+		byte[] fingerprint = fingerprint(request);
+		Entry entry = new Entry(fingerprint, System.currentTimeMillis(),
+				ENTRY_OVERHEAD + 2L * storeKey.length() + fingerprint.length);
+		Entry existing;
+		synchronized(this) {
+			expire(entry.createdAt);
+			existing = entries.get(storeKey);
+			if(existing == null) {
+				entries.put(storeKey, entry);
+				bytes += entry.bytes;
+			}
+		}
+		if(existing != null) {
+			return replay(existing, fingerprint);
+		}
+
+		StoredResponse stored;
+		try {
+			stored = store(action.get());
+		} catch(RuntimeException | Error e) {
+			forget(storeKey, entry);
+			entry.response.completeExceptionally(e);
+			throw e;
+		}
+		if(stored.status.is5xxServerError()) {
+			forget(storeKey, entry);
+		} else {
+			stored(storeKey, entry, stored.size());
+		}
+		entry.response.complete(stored);
+		return stored.toResponse(false);
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Estimated bytes held by the keys and stored responses.
+	 */
+	public synchronized long bytes() {
+		return bytes;
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+	}
+
+	private ResponseEntity<Object> replay(Entry existing, byte[] fingerprint) {
+		if(!MessageDigest.isEqual(existing.fingerprint, fingerprint)) {
+			return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).build();
+		}
+		if(!existing.response.isDone()) {
+			coalesced.increment();
+		}
+		try {
+			StoredResponse stored = existing.response.get(inFlightWaitMillis, TimeUnit.MILLISECONDS);
+			replays.increment();
+			return stored.toResponse(true);
+		} catch(TimeoutException e) {
+			return ResponseEntity.status(HttpStatus.CONFLICT).build();
+		} catch(ExecutionException e) {
+			// the original failed; the client should retry
+			return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+		}
+	}
+
+	private StoredResponse store(ResponseEntity<?> response) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.addAll(response.getHeaders());
+		Object body = response.getBody();
+		byte[] bytes = null;
+		if(body instanceof byte[] rendered) {
+			bytes = rendered;
+		} else if(body != null) {
+			try {
+				bytes = objectMapper.writeValueAsBytes(body);
+			} catch(JsonProcessingException e) {
+				throw new IllegalStateException("Could not serialise response", e);
+			}
+			if(headers.getContentType() == null) {
+				headers.setContentType(MediaType.APPLICATION_JSON);
+			}
+		}
+		return new StoredResponse(response.getStatusCode(), headers, bytes);
+	}
+
+	private synchronized void forget(String storeKey, Entry entry) {
+		if(entries.remove(storeKey, entry)) {
+			bytes -= entry.bytes;
+		}
+	}
+
+	/**
+	 * Counts the response now held for {@code entry} and makes room for it.
+	 */
+	private synchronized void stored(String storeKey, Entry entry, long responseBytes) {
+		if(entries.get(storeKey) != entry) {
+			return;
+		}
+		entry.bytes += responseBytes;
+		bytes += responseBytes;
+		entry.done = true;
+		expire(System.currentTimeMillis());
+	}
+
+	private void expire(long now) {
+		Iterator<Entry> eldest = entries.values().iterator();
+		while(eldest.hasNext()) {
+			Entry entry = eldest.next();
+			if(bytes <= maxBytes && now - entry.createdAt < ttlMillis) {
+				break;
+			}
+			if(!entry.done) {
+				continue;
+			}
+			eldest.remove();
+			bytes -= entry.bytes;
+		}
+	}
+
+	private byte[] fingerprint(Object request) {
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(objectMapper.writeValueAsBytes(request));
+		} catch(JsonProcessingException | NoSuchAlgorithmException e) {
+			logger.warn("Could not fingerprint request: {}", e.getMessage());
+			return new byte[0];
+		}
+	}
+
+	private static final class Entry {
+
+		private final byte[] fingerprint;
+
+		private final long createdAt;
+
+		private final CompletableFuture<StoredResponse> response = new CompletableFuture<>();
+
+		// guarded by the store
+		private long bytes;
+
+		// guarded by the store; false while the request runs
+		private boolean done;
+
+		private Entry(byte[] fingerprint, long createdAt, long bytes) {
+			this.fingerprint = fingerprint;
+			this.createdAt = createdAt;
+			this.bytes = bytes;
+		}
+	}
+
+	private record StoredResponse(HttpStatusCode status, HttpHeaders headers, byte[] body) {
+
+		private long size() {
+			long size = body == null ? 0 : body.length;
+			for(Map.Entry<String, List<String>> header : headers.entrySet()) {
+				size += 2L * header.getKey().length();
+				for(String value : header.getValue()) {
+					size += 2L * value.length();
+				}
+			}
+			return size;
+		}
+
+		private ResponseEntity<Object> toResponse(boolean replayed) {
+			ResponseEntity.BodyBuilder builder = ResponseEntity.status(status).headers(headers);
+			if(replayed) {
+				builder.header(REPLAYED_HEADER, "true");
+			}
+			return body == null ? builder.build() : builder.body(body);
+		}
+	}
+}
@@ -0,0 +1,524 @@
+package com.example.demo.services;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.channels.FileChannel;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.model.persistence.OrderLine;
+import com.example.demo.model.persistence.repositories.OrderRepository;
+import com.example.demo.model.persistence.repositories.OrderRepository.ArchivableOrder;
+import com.example.demo.model.responses.OrderSummary;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Cold storage for old orders, enabled with {@code order.archive.enabled=true}.
+ * <p>
+ * Every {@code order.archive.interval-ms} the orders created more than
+ * {@code order.archive.min-age-ms} ago are moved out of {@code user_order}
+ * and {@code user_order_line} into segment files on local disk. Users are
+ * split into ranges of {@code order.archive.users-per-segment} ids, each
+ * with an append-only segment {@code orders-<first user id>.seg} and its
+ * index {@code orders-<first user id>.idx}. A segment holds one deflated
+ * block per user and archiving run; the index holds one fixed-size entry per
+ * block with the user, the id and creation time span of its orders, where
+ * it lies in the segment and its CRC. The index is kept in memory, so
+ * reading a user's archived orders only touches that user's blocks.
+ * <p>
+ * Blocks are forced to disk before the rows are deleted. After a crash in
+ * between, an order can be both in the tables and in the archive, or
+ * archived twice; {@link #merge} and {@link #oldestFirst} drop the
+ * duplicates. A block written without its index entry is cut off on
+ * startup.
+ */
+@Component
+@ConditionalOnProperty(name = "order.archive.enabled", havingValue = "true")
+public class OrderArchive {
+
+	private static final Logger logger = LoggerFactory.getLogger(OrderArchive.class);
+
+	// userId(8) firstOrderId(8) lastOrderId(8) firstCreatedAt(8) lastCreatedAt(8)
+	// offset(8) length(4) count(4) blockCrc(4) crc(4)
+	static final int INDEX_ENTRY_SIZE = 64;
+
+	@Autowired
+	private OrderRepository orderRepository;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final Path directory;
+
+	private final long minAgeMillis;
+
+	private final int batchSize;
+
+	private final long usersPerSegment;
+
+	private final Map<Long, Segment> segments = new HashMap<>();
+
+	private final Map<Long, List<IndexEntry>> index = new HashMap<>();
+
+	private final Counter archived;
+
+	private final Timer runs;
+
+	public OrderArchive(PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+			@Value("${order.archive.dir:data/order-archive}") String directory,
+			@Value("${order.archive.min-age-ms:31536000000}") long minAgeMillis,
+			@Value("${order.archive.batch-size:500}") int batchSize,
+			@Value("${order.archive.users-per-segment:1024}") long usersPerSegment) {
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.directory = Paths.get(directory);
+		this.minAgeMillis = minAgeMillis;
+		this.batchSize = batchSize;
+		this.usersPerSegment = usersPerSegment;
+		this.archived = Counter.builder("order.archive.orders")
+			.description("Orders moved from the tables to the archive")
+			.register(meterRegistry);
+		this.runs = Timer.builder("order.archive.run")
+			.description("Time to archive the orders past the minimum age")
+			.register(meterRegistry);
+	}
+
+	@PostConstruct
+	public synchronized void open() throws IOException {
+		Files.createDirectories(directory);
+		List<Long> ranges = new ArrayList<>();
+		try(Stream<Path> files = Files.list(directory)) {
+			files.map(p -> p.getFileName().toString())
+				.filter(name -> name.startsWith("orders-") && name.endsWith(".idx"))
+				.map(name -> Long.parseLong(name.substring("orders-".length(), name.length() - ".idx".length())))
+				.forEach(ranges::add);
+		}
+		int blocks = 0;
+		for(Long range : ranges) {
+			blocks += segment(range).recover();
+		}
+		logger.info("Order archive opened {} segments with {} blocks for {} users", ranges.size(), blocks, index.size());
+	}
+
+	@PreDestroy
+	public synchronized void close() throws IOException {
+		for(Segment segment : segments.values()) {
+			segment.close();
+		}
+		segments.clear();
+	}
+
+	/**
+	 * Moves every order older than the minimum age to the archive, a batch at
+	 * a time.
+	 *
+	 * @return the number of orders archived
+	 */
+	@Scheduled(fixedDelayString = "${order.archive.interval-ms:3600000}")
+	public int archive() {
+		Instant cutoff = Instant.now().minusMillis(minAgeMillis);
+		long start = System.nanoTime();
+		int total = 0;
+		while(true) {
+			List<ArchivableOrder> batch = orderRepository.findArchivable(cutoff, Limit.of(batchSize));
+			if(batch.isEmpty()) {
+				break;
+			}
+			total += archive(batch);
+			if(batch.size() < batchSize) {
+				break;
+			}
+		}
+		runs.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		if(total > 0) {
+			logger.info("Archived {} orders created before {}", total, cutoff);
+		}
+		return total;
+	}
+
+	/**
+	 * Merges a user's archived orders into a page of orders read from the
+	 * tables: the result holds the newest {@code limit} orders of both with an
+	 * id below {@code before}, created in {@code [from, to)}, newest first.
+	 *
+	 * @param hot    orders read from the tables, newest first
+	 * @param before exclusive upper bound on order ids, or {@code null}
+	 * @param from   inclusive lower bound on creation time, or {@code null}
+	 * @param to     exclusive upper bound on creation time, or {@code null}
+	 */
+	public List<OrderSummary> merge(Long userId, List<OrderSummary> hot, Long before, Instant from, Instant to,
+			int limit) {
+		List<IndexEntry> blocks = blocks(userId, before, from, to);
+		if(blocks.isEmpty()) {
+			return hot;
+		}
+		List<OrderSummary> cold = new ArrayList<>();
+		Set<Long> seen = new HashSet<>();
+		for(OrderSummary order : hot) {
+			seen.add(order.getId());
+		}
+		for(IndexEntry block : blocks) {
+			// blocks come newest first; once enough older orders are found the rest cannot make the page
+			if(cold.size() >= limit) {
+				break;
+			}
+			for(OrderSummary order : read(block)) {
+				if((before == null || order.getId() < before)
+						&& (from == null || !order.getCreatedAt().isBefore(from))
+						&& (to == null || order.getCreatedAt().isBefore(to))
+						&& seen.add(order.getId())) {
+					cold.add(order);
+				}
+			}
+		}
+		List<OrderSummary> page = new ArrayList<>(hot);
+		page.addAll(cold);
+		page.sort(Comparator.comparing(OrderSummary::getId).reversed());
+		return page.size() > limit ? new ArrayList<>(page.subList(0, limit)) : page;
+	}
+
+	/**
+	 * Every archived order of a user, oldest first and without duplicates.
+	 * Blocks are read only once the iteration reaches the ids they start
+	 * at, so a long archive is never held in memory at once.
+	 */
+	public Iterator<OrderSummary> oldestFirst(Long userId) {
+		List<IndexEntry> blocks = new ArrayList<>(blocks(userId, null, null, null));
+		blocks.sort(Comparator.comparingLong(IndexEntry::firstOrderId));
+		return new Iterator<>() {
+
+			private final PriorityQueue<OrderSummary> pending = new PriorityQueue<>(
+					Comparator.comparing(OrderSummary::getId));
+
+			private int nextBlock;
+
+			private long last = Long.MIN_VALUE;
+
+			private OrderSummary next;
+
+			@Override
+			public boolean hasNext() {
+				while(next == null) {
+					// a block starting at or below the oldest pending order may hold an older one
+					while(nextBlock < blocks.size()
+							&& (pending.isEmpty() || blocks.get(nextBlock).firstOrderId() <= pending.peek().getId())) {
+						pending.addAll(read(blocks.get(nextBlock++)));
+					}
+					OrderSummary order = pending.poll();
+					if(order == null) {
+						return false;
+					}
+					// copies archived twice come out next to each other
+					if(order.getId() > last) {
+						last = order.getId();
+						next = order;
+					}
+				}
+				return true;
+			}
+
+			@Override
+			public OrderSummary next() {
+				if(!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				OrderSummary order = next;
+				next = null;
+				return order;
+			}
+		};
+	}
+
+	/**
+	 * Number of orders held in the archive, duplicates included.
+	 */
+	public synchronized long size() {
+		long count = 0;
+		for(List<IndexEntry> entries : index.values()) {
+			for(IndexEntry entry : entries) {
+				count += entry.count;
+			}
+		}
+		return count;
+	}
+
+	private int archive(List<ArchivableOrder> batch) {
+		List<Long> ids = batch.stream().map(ArchivableOrder::getId).toList();
+		Map<Long, List<OrderLine>> lines = new HashMap<>();
+		for(OrderLine line : orderRepository.findLinesByOrderIds(ids)) {
+			lines.computeIfAbsent(line.getOrder().getId(), id -> new ArrayList<>()).add(line);
+		}
+		Map<Long, List<ArchivableOrder>> byUser = new LinkedHashMap<>();
+		for(ArchivableOrder order : batch) {
+			byUser.computeIfAbsent(order.getUserId(), id -> new ArrayList<>()).add(order);
+		}
+		synchronized(this) {
+			Set<Segment> written = new HashSet<>();
+			for(Map.Entry<Long, List<ArchivableOrder>> user : byUser.entrySet()) {
+				Segment segment = segment(user.getKey() / usersPerSegment * usersPerSegment);
+				segment.append(user.getKey(), user.getValue(), lines);
+				written.add(segment);
+			}
+			for(Segment segment : written) {
+				segment.force();
+			}
+		}
+		transactionTemplate.executeWithoutResult(status -> {
+			orderRepository.deleteLinesByOrderIds(ids);
+			orderRepository.deleteByIds(ids);
+		});
+		archived.increment(batch.size());
+		return batch.size();
+	}
+
+	/**
+	 * The user's blocks that may hold orders in the requested span, newest
+	 * first.
+	 */
+	private synchronized List<IndexEntry> blocks(Long userId, Long before, Instant from, Instant to) {
+		List<IndexEntry> entries = index.get(userId);
+		if(entries == null) {
+			return List.of();
+		}
+		List<IndexEntry> matching = new ArrayList<>();
+		for(int i = entries.size() - 1; i >= 0; i--) {
+			IndexEntry entry = entries.get(i);
+			if((before == null || entry.firstOrderId < before)
+					&& (from == null || entry.lastCreatedAt >= from.toEpochMilli())
+					&& (to == null || entry.firstCreatedAt < to.toEpochMilli())) {
+				matching.add(entry);
+			}
+		}
+		return matching;
+	}
+
+	private List<OrderSummary> read(IndexEntry entry) {
+		ByteBuffer block = ByteBuffer.allocate(entry.length);
+		try {
+			while(block.hasRemaining()) {
+				if(entry.segment.data.read(block, entry.offset + block.position()) < 0) {
+					throw new IOException("Segment ends before block at " + entry.offset);
+				}
+			}
+			CRC32 crc = new CRC32();
+			crc.update(block.array());
+			if((int) crc.getValue() != entry.blockCrc) {
+				logger.error("Archived block for user {} at offset {} is corrupt, skipping", entry.userId, entry.offset);
+				return List.of();
+			}
+			return decode(block.array(), entry.count);
+		} catch(IOException e) {
+			throw new UncheckedIOException("Failed to read order archive", e);
+		}
+	}
+
+	private static byte[] encode(List<ArchivableOrder> orders, Map<Long, List<OrderLine>> lines) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+			for(ArchivableOrder order : orders) {
+				out.writeLong(order.getId());
+				out.writeLong(order.getTotal());
+				out.writeLong(order.getCreatedAt().getEpochSecond());
+				out.writeInt(order.getCreatedAt().getNano());
+				List<OrderLine> orderLines = lines.getOrDefault(order.getId(), List.of());
+				out.writeInt(orderLines.size());
+				for(OrderLine line : orderLines) {
+					out.writeLong(line.getItemId());
+					out.writeUTF(line.getName());
+					out.writeLong(line.getUnitPrice().minorUnits());
+					out.writeInt(line.getQuantity());
+					out.writeLong(line.getLineTotal().minorUnits());
+				}
+			}
+		}
+		return bytes.toByteArray();
+	}
+
+	private static List<OrderSummary> decode(byte[] block, int count) throws IOException {
+		List<OrderSummary> orders = new ArrayList<>(count);
+		try(DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(block)))) {
+			for(int i = 0; i < count; i++) {
+				long id = in.readLong();
+				long total = in.readLong();
+				Instant createdAt = Instant.ofEpochSecond(in.readLong(), in.readInt());
+				OrderSummary order = new OrderSummary(id, total, createdAt);
+				int lineCount = in.readInt();
+				for(int j = 0; j < lineCount; j++) {
+					order.getLines().add(new OrderLine(in.readLong(), in.readUTF(), in.readLong(), in.readInt(),
+							in.readLong()));
+				}
+				orders.add(order);
+			}
+		}
+		return orders;
+	}
+
+	private Segment segment(long range) {
+		return segments.computeIfAbsent(range, r -> {
+			try {
+				return new Segment(directory.resolve("orders-" + r + ".seg"), directory.resolve("orders-" + r + ".idx"));
+			} catch(IOException e) {
+				throw new UncheckedIOException("Failed to open order archive segment " + r, e);
+			}
+		});
+	}
+
+	/**
+	 * One user range: the segment with the blocks and its index.
+	 */
+	private final class Segment {
+
+		private final Path dataPath;
+
+		private final Path indexPath;
+
+		private final FileChannel data;
+
+		private final FileChannel entries;
+
+		private final ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+
+		private final CRC32 crc = new CRC32();
+
+		private Segment(Path dataPath, Path indexPath) throws IOException {
+			this.dataPath = dataPath;
+			this.indexPath = indexPath;
+			this.data = FileChannel.open(dataPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+			this.entries = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+		}
+
+		/**
+		 * Loads the index into memory, cutting off a torn index entry and any
+		 * block written after the last complete one.
+		 */
+		private int recover() throws IOException {
+			long size = entries.size();
+			long complete = size - size % INDEX_ENTRY_SIZE;
+			long end = 0;
+			int blocks = 0;
+			for(long position = 0; position < complete; position += INDEX_ENTRY_SIZE) {
+				entry.clear();
+				while(entry.hasRemaining()) {
+					entries.read(entry, position + entry.position());
+				}
+				crc.reset();
+				crc.update(entry.array(), 0, INDEX_ENTRY_SIZE - 4);
+				if(entry.getInt(INDEX_ENTRY_SIZE - 4) != (int) crc.getValue()) {
+					complete = position;
+					break;
+				}
+				entry.flip();
+				IndexEntry read = new IndexEntry(this, entry.getLong(), entry.getLong(), entry.getLong(),
+						entry.getLong(), entry.getLong(), entry.getLong(), entry.getInt(), entry.getInt(), entry.getInt());
+				index.computeIfAbsent(read.userId, id -> new ArrayList<>()).add(read);
+				end = Math.max(end, read.offset + read.length);
+				blocks++;
+			}
+			if(complete < size) {
+				logger.warn("Order archive index {} has a torn entry at offset {}, truncating", indexPath, complete);
+				entries.truncate(complete);
+			}
+			if(data.size() > end) {
+				logger.warn("Order archive segment {} has {} unindexed bytes, truncating", dataPath, data.size() - end);
+				data.truncate(end);
+			}
+			return blocks;
+		}
+
+		private void append(long userId, List<ArchivableOrder> orders, Map<Long, List<OrderLine>> lines) {
+			try {
+				byte[] block = encode(orders, lines);
+				long offset = data.size();
+				ByteBuffer buffer = ByteBuffer.wrap(block);
+				while(buffer.hasRemaining()) {
+					data.write(buffer, offset + buffer.position());
+				}
+				crc.reset();
+				crc.update(block);
+				ArchivableOrder first = orders.get(0);
+				ArchivableOrder last = orders.get(orders.size() - 1);
+				IndexEntry written = new IndexEntry(this, userId, first.getId(), last.getId(),
+						orders.stream().mapToLong(o -> o.getCreatedAt().toEpochMilli()).min().getAsLong(),
+						orders.stream().mapToLong(o -> o.getCreatedAt().toEpochMilli()).max().getAsLong(),
+						offset, block.length, orders.size(), (int) crc.getValue());
+				entry.clear();
+				entry.putLong(written.userId).putLong(written.firstOrderId).putLong(written.lastOrderId)
+					.putLong(written.firstCreatedAt).putLong(written.lastCreatedAt).putLong(written.offset)
+					.putInt(written.length).putInt(written.count).putInt(written.blockCrc);
+				crc.reset();
+				crc.update(entry.array(), 0, INDEX_ENTRY_SIZE - 4);
+				entry.putInt((int) crc.getValue());
+				entry.flip();
+				// the block must be durable before an index entry points at it
+				data.force(false);
+				long position = entries.size();
+				while(entry.hasRemaining()) {
+					entries.write(entry, position + entry.position());
+				}
+				index.computeIfAbsent(userId, id -> new ArrayList<>()).add(written);
+			} catch(IOException e) {
+				throw new UncheckedIOException("Failed to append to order archive", e);
+			}
+		}
+
+		private void force() {
+			try {
+				entries.force(false);
+			} catch(IOException e) {
+				throw new UncheckedIOException("Failed to sync order archive index", e);
+			}
+		}
+
+		private void close() throws IOException {
+			data.force(true);
+			data.close();
+			entries.force(true);
+			entries.close();
+		}
+	}
+
+	private record IndexEntry(Segment segment, long userId, long firstOrderId, long lastOrderId, long firstCreatedAt,
+			long lastCreatedAt, long offset, int length, int count, int blockCrc) {
+	}
+}
@@ -0,0 +1,138 @@
+package com.example.demo.services;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.model.persistence.repositories.OrderRepository;
+import com.example.demo.model.responses.OrderSummary;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * Writes a user's whole order history as newline-delimited JSON, one order
+ * per line, oldest first. With the {@link OrderArchive} enabled, archived
+ * orders are merged in by id, each written once and in the same shape as
+ * orders still in the tables. Orders are read from a database cursor in chunks;
+ * the lines of a chunk are loaded with one query, and the persistence
+ * context is cleared once the chunk is written, so neither the number of
+ * queries per order nor memory use grows with the length of the history.
+ */
+@Service
+public class OrderHistoryExporter {
+
+	public static final String MEDIA_TYPE = "application/x-ndjson";
+
+	@Autowired
+	private OrderRepository orderRepository;
+
+	@Autowired(required = false)
+	private OrderArchive orderArchive;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final ObjectWriter writer;
+
+	public OrderHistoryExporter(PlatformTransactionManager transactionManager, ObjectMapper objectMapper) {
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.transactionTemplate.setReadOnly(true);
+		this.writer = objectMapper.writerFor(UserOrder.class).without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+	}
+
+	/**
+	 * Streams every order of {@code user} to {@code out}. The stream is
+	 * flushed but not closed.
+	 *
+	 * @return the number of orders written
+	 */
+	public long export(User user, OutputStream out) throws IOException {
+		try {
+			Long count = transactionTemplate.execute(status -> {
+				long written = 0;
+				Iterator<OrderSummary> archived = orderArchive == null
+						? Collections.emptyIterator()
+						: orderArchive.oldestFirst(user.getId());
+				OrderSummary cold = archived.hasNext() ? archived.next() : null;
+				try(Stream<UserOrder> orders = orderRepository.streamByUser(user)) {
+					Iterator<UserOrder> iterator = orders.iterator();
+					List<UserOrder> chunk = new ArrayList<>(UserOrder.LINE_BATCH_SIZE);
+					int managed = 0;
+					while(iterator.hasNext() || cold != null) {
+						UserOrder hot = iterator.hasNext() ? iterator.next() : null;
+						// archived orders older than the next order in the tables go first
+						while(cold != null && (hot == null || cold.getId() <= hot.getId())) {
+							// an order both archived and still in the tables is written once, from the tables
+							if(hot == null || cold.getId() < hot.getId()) {
+								chunk.add(fromArchive(user, cold));
+								if(chunk.size() == UserOrder.LINE_BATCH_SIZE) {
+									written += write(chunk, out);
+								}
+							}
+							cold = archived.hasNext() ? archived.next() : null;
+						}
+						if(hot != null) {
+							chunk.add(hot);
+							if(chunk.size() == UserOrder.LINE_BATCH_SIZE || ++managed == UserOrder.LINE_BATCH_SIZE) {
+								written += write(chunk, out);
+								// only between two reads from the cursor, so no order still to be written is detached
+								entityManager.clear();
+								managed = 0;
+							}
+						}
+					}
+					written += write(chunk, out);
+				} catch(IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				return written;
+			});
+			out.flush();
+			return count;
+		} catch(UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	private static UserOrder fromArchive(User user, OrderSummary archived) {
+		UserOrder order = new UserOrder();
+		order.setId(archived.getId());
+		order.setUser(user);
+		order.setTotal(archived.getTotal());
+		order.setCreatedAt(archived.getCreatedAt());
+		order.setLines(archived.getLines());
+		return order;
+	}
+
+	/**
+	 * Writes a chunk of orders and empties it.
+	 */
+	private int write(List<UserOrder> chunk, OutputStream out) throws IOException {
+		int written = chunk.size();
+		// the first order's lines are loaded along with those of every order read since
+		for(UserOrder order : chunk) {
+			writer.writeValue(out, order);
+			out.write('\n');
+		}
+		chunk.clear();
+		return written;
+	}
+}
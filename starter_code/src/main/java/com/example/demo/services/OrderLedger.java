@@ -0,0 +1,552 @@
+package com.example.demo.services;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.model.persistence.OrderLine;
+import com.example.demo.model.persistence.UserOrder;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Append-only ledger of placed orders in memory-mapped files, enabled with
+ * {@code order.ledger.enabled=true}, for audit and for consumers that replay
+ * orders without going through Hibernate.
+ * <p>
+ * Each order is one record of fixed layout: a 48 byte header followed by 32
+ * bytes per line. Line names are not kept; the item id identifies them.
+ * Records are written to segment files {@code ledger-<base>.dat} of
+ * {@code order.ledger.segment-bytes}, where {@code base} is the ledger
+ * position of the segment's first byte. A record that does not fit in what
+ * is left of a segment is preceded by an end-of-segment marker and goes to
+ * the next one.
+ * <p>
+ * The length of a record is written last, with release semantics, so a
+ * {@link Reader} that sees a non-zero length sees the whole record. Readers
+ * map the files themselves and follow the tail by polling {@link Reader#next},
+ * in this process or another one. The mapped pages are forced to disk every
+ * {@code order.ledger.force-interval-ms}. On startup the write position is
+ * found again by scanning the last segment up to the first record that is
+ * missing or fails its CRC; a torn record is zeroed before writing resumes.
+ * <p>
+ * Orders are appended after their transaction commits, so a crash in
+ * between leaves committed orders out of the ledger. {@link #lastOrderId}
+ * is the highest order id found at the end of the ledger on startup, and
+ * {@link #reconcile} appends the orders placed after it that are still
+ * missing; {@code CheckoutService} calls it once the ledger is open.
+ */
+@Component
+@ConditionalOnProperty(name = "order.ledger.enabled", havingValue = "true")
+public class OrderLedger {
+
+	private static final Logger logger = LoggerFactory.getLogger(OrderLedger.class);
+
+	// length(4) crc(4) orderId(8) userId(8) createdAtSeconds(8) createdAtNanos(4) lineCount(4) total(8)
+	static final int HEADER_SIZE = 48;
+
+	// itemId(8) unitPrice(8) lineTotal(8) quantity(4) reserved(4)
+	static final int LINE_SIZE = 32;
+
+	/** Length written in place of a record when the rest of the segment is skipped. */
+	static final int END_OF_SEGMENT = -1;
+
+	private static final VarHandle LENGTH = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+	private final Path directory;
+
+	private final int segmentBytes;
+
+	private final Counter records;
+
+	private final Counter failures;
+
+	private final CRC32C crc = new CRC32C();
+
+	private FileChannel channel;
+
+	private MappedByteBuffer segment;
+
+	private long base;
+
+	private volatile long position;
+
+	private long lastOrderId = -1;
+
+	/** Orders appended since opening, until the ledger is reconciled. */
+	private Set<Long> appendedBeforeReconcile = new HashSet<>();
+
+	/** Orders appended by {@link #reconcile} whose after-commit append has not come yet. */
+	private final Set<Long> reconciled = new HashSet<>();
+
+	public OrderLedger(MeterRegistry meterRegistry,
+			@Value("${order.ledger.dir:data/order-ledger}") String directory,
+			@Value("${order.ledger.segment-bytes:67108864}") int segmentBytes) {
+		if(segmentBytes < HEADER_SIZE + LINE_SIZE || segmentBytes % 8 != 0) {
+			throw new IllegalArgumentException("order.ledger.segment-bytes must be a multiple of 8 of at least "
+					+ (HEADER_SIZE + LINE_SIZE) + ", got " + segmentBytes);
+		}
+		this.directory = Paths.get(directory);
+		this.segmentBytes = segmentBytes;
+		this.records = Counter.builder("order.ledger.records")
+			.description("Orders appended to the ledger")
+			.register(meterRegistry);
+		this.failures = Counter.builder("order.ledger.failures")
+			.description("Orders that could not be appended to the ledger")
+			.register(meterRegistry);
+	}
+
+	@PostConstruct
+	public synchronized void open() throws IOException {
+		Files.createDirectories(directory);
+		List<Long> bases = bases(directory);
+		if(bases.isEmpty()) {
+			map(0);
+			logger.info("Order ledger created in {}", directory);
+			return;
+		}
+		long last = bases.get(bases.size() - 1);
+		map(last);
+		int end = recover(segment, last);
+		lastOrderId = lastOrderId(segment, end);
+		if(end == 0 && bases.size() > 1) {
+			// a crash right after starting this segment can leave the previous one without its end marker
+			long previous = bases.get(bases.size() - 2);
+			try(FileChannel file = FileChannel.open(segmentPath(directory, previous), StandardOpenOption.READ,
+					StandardOpenOption.WRITE)) {
+				MappedByteBuffer buffer = file.map(FileChannel.MapMode.READ_WRITE, 0, file.size());
+				int previousEnd = recover(buffer, previous);
+				lastOrderId = lastOrderId(buffer, previousEnd);
+				if(previousEnd + 4 <= buffer.capacity() && buffer.getInt(previousEnd) != END_OF_SEGMENT) {
+					LENGTH.setRelease(buffer, previousEnd, END_OF_SEGMENT);
+					buffer.force();
+				}
+			}
+		}
+		// a segment already closed by its end marker is not written to again
+		position = end + 4 <= segment.capacity() && segment.getInt(end) == END_OF_SEGMENT
+				? last + segment.capacity() : last + end;
+		logger.info("Order ledger opened {} segments in {}, writing at position {}", bases.size(), directory, position);
+	}
+
+	@PreDestroy
+	public synchronized void close() throws IOException {
+		if(channel != null) {
+			segment.force();
+			channel.close();
+			channel = null;
+			segment = null;
+		}
+	}
+
+	/**
+	 * Appends a placed order. Failures are logged and counted rather than
+	 * thrown, since the order is already committed. An order already
+	 * appended by {@link #reconcile} is not appended again.
+	 *
+	 * @return the position of the record, or {@code -1} if it was not written
+	 */
+	public synchronized long append(UserOrder order) {
+		if(reconciled.remove(order.getId())) {
+			return -1;
+		}
+		if(appendedBeforeReconcile != null) {
+			appendedBeforeReconcile.add(order.getId());
+		}
+		return write(order);
+	}
+
+	/**
+	 * Highest order id at the end of the ledger when it was opened, or
+	 * {@code -1} if it was empty, in which case there is nothing to
+	 * reconcile: a new ledger starts with the orders placed after it.
+	 */
+	public synchronized long lastOrderId() {
+		return lastOrderId;
+	}
+
+	/**
+	 * Appends the committed orders placed after {@link #lastOrderId} that
+	 * were lost with the after-commit appends of the last run, leaving out
+	 * those appended since the ledger was opened. May be called several
+	 * times with successive pages of orders; {@link #reconciled()} ends it.
+	 *
+	 * @return how many orders were appended
+	 */
+	public synchronized int reconcile(List<UserOrder> committed) {
+		int appended = 0;
+		for(UserOrder order : committed) {
+			if(appendedBeforeReconcile != null && appendedBeforeReconcile.contains(order.getId())) {
+				continue;
+			}
+			if(write(order) >= 0) {
+				reconciled.add(order.getId());
+				appended++;
+			}
+		}
+		return appended;
+	}
+
+	/**
+	 * Marks the end of reconciliation.
+	 */
+	public synchronized void reconciled() {
+		appendedBeforeReconcile = null;
+	}
+
+	private long write(UserOrder order) {
+		List<OrderLine> lines = order.getLines() == null ? List.of() : order.getLines();
+		int length = HEADER_SIZE + lines.size() * LINE_SIZE;
+		try {
+			if(length > segmentBytes) {
+				throw new IOException("Order " + order.getId() + " with " + lines.size()
+						+ " lines does not fit in a ledger segment");
+			}
+			int offset = (int) (position - base);
+			if(offset + length > segment.capacity()) {
+				roll(offset);
+				offset = 0;
+			}
+			Instant createdAt = order.getCreatedAt() == null ? Instant.now() : order.getCreatedAt();
+			segment.putLong(offset + 8, order.getId());
+			segment.putLong(offset + 16, order.getUser() == null ? 0 : order.getUser().getId());
+			segment.putLong(offset + 24, createdAt.getEpochSecond());
+			segment.putInt(offset + 32, createdAt.getNano());
+			segment.putInt(offset + 36, lines.size());
+			segment.putLong(offset + 40, order.getTotal().minorUnits());
+			int at = offset + HEADER_SIZE;
+			for(OrderLine line : lines) {
+				segment.putLong(at, line.getItemId());
+				segment.putLong(at + 8, line.getUnitPrice().minorUnits());
+				segment.putLong(at + 16, line.getLineTotal().minorUnits());
+				segment.putInt(at + 24, line.getQuantity());
+				segment.putInt(at + 28, 0);
+				at += LINE_SIZE;
+			}
+			segment.putInt(offset + 4, checksum(segment, offset, length));
+			LENGTH.setRelease(segment, offset, length);
+			long written = base + offset;
+			position = written + length;
+			records.increment();
+			return written;
+		} catch(IOException | RuntimeException e) {
+			failures.increment();
+			logger.error("Failed to append order {} to the ledger", order.getId(), e);
+			return -1;
+		}
+	}
+
+	/**
+	 * Forces the current segment's mapped pages to disk.
+	 */
+	@Scheduled(fixedDelayString = "${order.ledger.force-interval-ms:1000}")
+	public synchronized void force() {
+		if(segment != null) {
+			segment.force();
+		}
+	}
+
+	/**
+	 * Position the next record will be written at.
+	 */
+	public long position() {
+		return position;
+	}
+
+	/**
+	 * A reader of this ledger starting at {@code position}, which must be
+	 * {@code 0} or a position returned by {@link #append} or
+	 * {@link Reader#position}.
+	 */
+	public Reader reader(long position) {
+		return new Reader(directory, position);
+	}
+
+	private void roll(int offset) throws IOException {
+		MappedByteBuffer full = segment;
+		FileChannel fullChannel = channel;
+		long next = base + full.capacity();
+		// the next segment exists before the marker, so a reader past the marker always finds it
+		map(next);
+		if(offset + 4 <= full.capacity()) {
+			LENGTH.setRelease(full, offset, END_OF_SEGMENT);
+		}
+		full.force();
+		fullChannel.close();
+		position = next;
+	}
+
+	private void map(long segmentBase) throws IOException {
+		FileChannel file = FileChannel.open(segmentPath(directory, segmentBase), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		long size = file.size();
+		// a segment keeps the size it was created with, whatever the current setting
+		channel = file;
+		segment = file.map(FileChannel.MapMode.READ_WRITE, 0, size > 0 ? size : segmentBytes);
+		base = segmentBase;
+	}
+
+	/**
+	 * Highest order id among the records before {@code end}, or {@code -1}.
+	 */
+	private static long lastOrderId(MappedByteBuffer buffer, int end) {
+		long last = -1;
+		for(int offset = 0; offset < end; offset += buffer.getInt(offset)) {
+			last = Math.max(last, buffer.getLong(offset + 8));
+		}
+		return last;
+	}
+
+	/**
+	 * Finds the end of the complete records in a segment, zeroing whatever
+	 * follows a torn one.
+	 */
+	private int recover(MappedByteBuffer buffer, long segmentBase) {
+		int offset = 0;
+		while(offset + 4 <= buffer.capacity()) {
+			int length = buffer.getInt(offset);
+			if(length == 0 || length == END_OF_SEGMENT) {
+				break;
+			}
+			if(length < HEADER_SIZE || (length - HEADER_SIZE) % LINE_SIZE != 0 || offset + length > buffer.capacity()
+					|| buffer.getInt(offset + 4) != checksum(buffer, offset, length)) {
+				logger.warn("Order ledger has a torn record at position {}, cutting it off", segmentBase + offset);
+				for(int i = offset; i < buffer.capacity(); i++) {
+					buffer.put(i, (byte) 0);
+				}
+				buffer.force();
+				break;
+			}
+			offset += length;
+		}
+		return offset;
+	}
+
+	private int checksum(ByteBuffer buffer, int offset, int length) {
+		crc.reset();
+		crc.update(buffer.slice(offset + 8, length - 8));
+		return (int) crc.getValue();
+	}
+
+	private static List<Long> bases(Path directory) throws IOException {
+		try(Stream<Path> files = Files.list(directory)) {
+			return files.map(p -> p.getFileName().toString())
+				.filter(name -> name.startsWith("ledger-") && name.endsWith(".dat"))
+				.map(name -> Long.parseLong(name.substring("ledger-".length(), name.length() - ".dat".length())))
+				.sorted()
+				.toList();
+		}
+	}
+
+	private static Path segmentPath(Path directory, long base) {
+		return directory.resolve(String.format("ledger-%020d.dat", base));
+	}
+
+	/**
+	 * Sequential reader of the ledger, which can be opened from any process
+	 * given the ledger directory. {@link #next} moves to the following record
+	 * and returns {@code false} when the reader has caught up with the
+	 * writer; calling it again later follows the tail. The accessors read the
+	 * current record in place, without copying it. Not thread-safe.
+	 */
+	public static final class Reader implements Closeable {
+
+		private final Path directory;
+
+		private final CRC32C crc = new CRC32C();
+
+		private FileChannel channel;
+
+		private MappedByteBuffer segment;
+
+		private long base;
+
+		private long position;
+
+		private int current = -1;
+
+		public Reader(Path directory, long position) {
+			this.directory = directory;
+			this.position = position;
+		}
+
+		/**
+		 * Moves to the next record.
+		 *
+		 * @return whether there was one
+		 * @throws IllegalStateException if the record fails its CRC
+		 */
+		public boolean next() {
+			try {
+				while(true) {
+					if(segment == null && !open()) {
+						return false;
+					}
+					int offset = (int) (position - base);
+					int length = offset + 4 <= segment.capacity() ? (int) LENGTH.getAcquire(segment, offset)
+							: END_OF_SEGMENT;
+					if(length == 0) {
+						return false;
+					}
+					if(length == END_OF_SEGMENT) {
+						long following = following();
+						if(following < 0) {
+							return false;
+						}
+						position = following;
+						release();
+						continue;
+					}
+					if(length < HEADER_SIZE || offset + length > segment.capacity()) {
+						throw new IllegalStateException("Invalid ledger record length " + length + " at position "
+								+ position);
+					}
+					crc.reset();
+					crc.update(segment.slice(offset + 8, length - 8));
+					if(segment.getInt(offset + 4) != (int) crc.getValue()) {
+						throw new IllegalStateException("Ledger record at position " + position + " is corrupt");
+					}
+					current = offset;
+					position += length;
+					return true;
+				}
+			} catch(IOException e) {
+				throw new UncheckedIOException("Failed to read order ledger", e);
+			}
+		}
+
+		/**
+		 * Position of the record after the current one, where a new reader
+		 * resumes.
+		 */
+		public long position() {
+			return position;
+		}
+
+		public long orderId() {
+			return segment.getLong(current + 8);
+		}
+
+		public long userId() {
+			return segment.getLong(current + 16);
+		}
+
+		public Instant createdAt() {
+			return Instant.ofEpochSecond(segment.getLong(current + 24), segment.getInt(current + 32));
+		}
+
+		public long totalMinorUnits() {
+			return segment.getLong(current + 40);
+		}
+
+		public int lineCount() {
+			return segment.getInt(current + 36);
+		}
+
+		public long itemId(int line) {
+			return segment.getLong(line(line));
+		}
+
+		public long unitPriceMinorUnits(int line) {
+			return segment.getLong(line(line) + 8);
+		}
+
+		public long lineTotalMinorUnits(int line) {
+			return segment.getLong(line(line) + 16);
+		}
+
+		public int quantity(int line) {
+			return segment.getInt(line(line) + 24);
+		}
+
+		@Override
+		public void close() throws IOException {
+			release();
+		}
+
+		private int line(int line) {
+			return current + HEADER_SIZE + line * LINE_SIZE;
+		}
+
+		/**
+		 * Maps the segment holding {@code position}, if it exists yet.
+		 */
+		private boolean open() throws IOException {
+			long found = -1;
+			for(long segmentBase : bases(directory)) {
+				if(segmentBase <= position) {
+					found = segmentBase;
+				}
+			}
+			if(found < 0) {
+				return false;
+			}
+			FileChannel file;
+			try {
+				file = FileChannel.open(segmentPath(directory, found), StandardOpenOption.READ);
+			} catch(NoSuchFileException e) {
+				return false;
+			}
+			long size = file.size();
+			if(position - found >= size) {
+				// the writer has not sized the next segment yet
+				file.close();
+				return false;
+			}
+			channel = file;
+			segment = file.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			base = found;
+			return true;
+		}
+
+		/**
+		 * Base of the segment after the current one, or {@code -1} if the
+		 * writer has not started it yet.
+		 */
+		private long following() throws IOException {
+			for(long segmentBase : bases(directory)) {
+				if(segmentBase > base) {
+					return segmentBase;
+				}
+			}
+			return -1;
+		}
+
+		private void release() throws IOException {
+			if(channel != null) {
+				channel.close();
+			}
+			channel = null;
+			segment = null;
+			current = -1;
+		}
+	}
+}
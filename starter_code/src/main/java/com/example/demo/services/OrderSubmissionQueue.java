@@ -0,0 +1,399 @@
+package com.example.demo.services;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.model.responses.OrderStatus;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Persists orders off the request thread. {@link #submit} puts an order
+ * built by the controller on a queue bounded by
+ * {@code order.async.queue-capacity} and returns a handle right away;
+ * {@code order.async.workers} threads take up to
+ * {@code order.async.batch-size} orders at a time and place them through
+ * {@link CheckoutService} in one transaction, emptying each cart. An order
+ * whose cart changed after it was built is not inserted and fails. If a
+ * batch transaction fails its orders are retried one by one, so a bad order
+ * only fails itself.
+ * <p>
+ * Every submission is recorded in the {@code order_submission} table
+ * before {@link #submit} returns, and the worker transaction that places
+ * the order also finishes that record. A submission still pending when the
+ * application stops is not lost: on startup its order is built again from
+ * the cart, which must still be at the recorded version, and queued. If
+ * the cart changed in between, the submission fails as it would have had
+ * it been placed late.
+ * <p>
+ * The state of each handle can be read with {@link #status(String)} until
+ * {@code order.async.status-ttl-ms} after it completed, across restarts.
+ */
+@Service
+public class OrderSubmissionQueue {
+
+	private static final Logger logger = LoggerFactory.getLogger(OrderSubmissionQueue.class);
+
+	private static final String INSERT = "insert into order_submission"
+			+ " (handle, user_id, cart_id, cart_version, state, accepted_at) values (?, ?, ?, ?, 'PENDING', ?)";
+
+	private static final String FINISH = "update order_submission set state = ?, order_id = ?, finished_at = ?"
+			+ " where handle = ?";
+
+	private static final String SELECT_PENDING = "select handle, cart_id, cart_version from order_submission"
+			+ " where state = 'PENDING' order by accepted_at";
+
+	@Autowired
+	private CheckoutService checkoutService;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final BlockingQueue<Submission> queue;
+
+	private final ConcurrentMap<String, Submission> submissions = new ConcurrentHashMap<>();
+
+	private final int workers;
+
+	private final int batchSize;
+
+	private final long statusTtlMillis;
+
+	private final ExecutorService executor;
+
+	private volatile boolean running = true;
+
+	private final DistributionSummary batchSizes;
+
+	private final Timer latency;
+
+	private final Counter failures;
+
+	public OrderSubmissionQueue(PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+			@Value("${order.async.queue-capacity:1000}") int queueCapacity,
+			@Value("${order.async.workers:2}") int workers,
+			@Value("${order.async.batch-size:50}") int batchSize,
+			@Value("${order.async.status-ttl-ms:3600000}") long statusTtlMillis) {
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.queue = new ArrayBlockingQueue<>(queueCapacity);
+		this.workers = workers;
+		this.batchSize = batchSize;
+		this.statusTtlMillis = statusTtlMillis;
+		AtomicInteger threads = new AtomicInteger();
+		this.executor = Executors.newFixedThreadPool(workers, runnable -> {
+			Thread thread = new Thread(runnable, "order-writer-" + threads.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		Gauge.builder("order.async.queue.depth", queue, BlockingQueue::size)
+			.description("Orders accepted and not yet picked up by a writer")
+			.register(meterRegistry);
+		this.batchSizes = DistributionSummary.builder("order.async.batch.size")
+			.description("Orders inserted per transaction")
+			.baseUnit("orders")
+			.register(meterRegistry);
+		this.latency = Timer.builder("order.async.latency")
+			.description("Time from an order being accepted until it is persisted")
+			.register(meterRegistry);
+		this.failures = Counter.builder("order.async.failures")
+			.description("Accepted orders that could not be persisted")
+			.register(meterRegistry);
+	}
+
+	@PostConstruct
+	public void start() throws InterruptedException {
+		for(int i = 0; i < workers; i++) {
+			executor.execute(this::work);
+		}
+		resume();
+	}
+
+	/**
+	 * Queues again the submissions left pending by the last shutdown.
+	 */
+	public void resume() throws InterruptedException {
+		int recovered = 0;
+		for(Submission submission : recover()) {
+			submissions.put(submission.handle, submission);
+			queue.put(submission);
+			recovered++;
+		}
+		if(recovered > 0) {
+			logger.info("Requeued {} order submissions left pending by the last shutdown", recovered);
+		}
+	}
+
+	/**
+	 * Stops taking new orders and waits for the writers to persist the ones
+	 * already queued.
+	 */
+	@PreDestroy
+	public void stop() throws InterruptedException {
+		running = false;
+		executor.shutdown();
+		if(!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+			logger.warn("Order writers did not finish, {} queued orders stay pending until the next start", queue.size());
+		}
+	}
+
+	/**
+	 * Queues {@code order}, built from the cart {@code cartId} at
+	 * {@code cartVersion}, for insertion.
+	 *
+	 * @return the pending status with the order's handle, or {@code null} if
+	 *         the queue is full
+	 */
+	public OrderStatus submit(UserOrder order, Long cartId, long cartVersion) {
+		if(!running) {
+			return null;
+		}
+		Submission submission = new Submission(UUID.randomUUID().toString(), order, cartId, cartVersion);
+		jdbcTemplate.update(INSERT, submission.handle, order.getUser().getId(), cartId, cartVersion,
+				Timestamp.from(Instant.now()));
+		submissions.put(submission.handle, submission);
+		if(!queue.offer(submission)) {
+			submissions.remove(submission.handle);
+			jdbcTemplate.update("delete from order_submission where handle = ?", submission.handle);
+			return null;
+		}
+		return submission.status();
+	}
+
+	/**
+	 * Returns the state of a submission, or {@code null} for an unknown or
+	 * expired handle. Submissions made before a restart are read from the
+	 * {@code order_submission} table.
+	 */
+	public OrderStatus status(String handle) {
+		Submission submission = submissions.get(handle);
+		if(submission != null) {
+			return submission.status();
+		}
+		List<OrderStatus> stored = jdbcTemplate.query("select state, order_id from order_submission where handle = ?",
+				(row, i) -> new OrderStatus(handle, OrderStatus.State.valueOf(row.getString("state")),
+						row.getObject("order_id", Long.class)),
+				handle);
+		return stored.isEmpty() ? null : stored.get(0);
+	}
+
+	@Scheduled(fixedDelay = 60000)
+	public void pruneStatuses() {
+		long cutoff = System.currentTimeMillis() - statusTtlMillis;
+		submissions.values().removeIf(submission -> submission.finishedAt != 0 && submission.finishedAt < cutoff);
+		jdbcTemplate.update("delete from order_submission where finished_at < ?", Timestamp.from(Instant.ofEpochMilli(cutoff)));
+	}
+
+	private void work() {
+		List<Submission> batch = new ArrayList<>(batchSize);
+		while(running || !queue.isEmpty()) {
+			try {
+				Submission first = queue.poll(100, TimeUnit.MILLISECONDS);
+				if(first == null) {
+					continue;
+				}
+				batch.add(first);
+				queue.drainTo(batch, batchSize - 1);
+				persist(batch);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch(RuntimeException e) {
+				logger.error("Order writer failed: {}", e.getMessage(), e);
+			} finally {
+				batch.clear();
+			}
+		}
+	}
+
+	private void persist(List<Submission> batch) {
+		List<Submission> placed;
+		try {
+			placed = insert(batch);
+		} catch(RuntimeException e) {
+			logger.warn("Inserting {} orders failed, retrying one by one: {}", batch.size(), e.getMessage());
+			placed = new ArrayList<>();
+			for(Submission submission : batch) {
+				// assigned by the transaction that rolled back
+				submission.order.setId(null);
+				try {
+					placed.addAll(insert(List.of(submission)));
+				} catch(RuntimeException single) {
+					logger.error("Order {} for user {} could not be persisted: {}", submission.handle,
+							submission.username, single.getMessage(), single);
+					failures.increment();
+					submission.finish(OrderStatus.State.FAILED);
+					jdbcTemplate.update(FINISH, OrderStatus.State.FAILED.name(), null,
+							Timestamp.from(Instant.now()), submission.handle);
+				}
+			}
+		}
+		committed(batch, placed);
+	}
+
+	/**
+	 * Inserts the orders in one transaction, finishing their submission
+	 * records in the same transaction.
+	 *
+	 * @return the submissions placed, leaving out those whose cart changed
+	 *         since the order was built
+	 */
+	private List<Submission> insert(List<Submission> batch) {
+		return transactionTemplate.execute(status -> {
+			List<Submission> placed = new ArrayList<>();
+			for(Submission submission : batch) {
+				UserOrder order = submission.order;
+				// the user was loaded by the request that built the order
+				order.setUser(entityManager.getReference(User.class, order.getUser().getId()));
+				if(checkoutService.place(order, submission.cartId, submission.cartVersion)) {
+					placed.add(submission);
+				}
+			}
+			Timestamp now = Timestamp.from(Instant.now());
+			jdbcTemplate.batchUpdate(FINISH, batch, batch.size(), (statement, submission) -> {
+				boolean done = placed.contains(submission);
+				statement.setString(1, (done ? OrderStatus.State.COMPLETED : OrderStatus.State.FAILED).name());
+				statement.setObject(2, done ? submission.order.getId() : null, Types.BIGINT);
+				statement.setTimestamp(3, now);
+				statement.setString(4, submission.handle);
+			});
+			return placed;
+		});
+	}
+
+	/**
+	 * Builds the orders of submissions left pending by the last shutdown
+	 * from their carts. A cart no longer at the recorded version, or empty,
+	 * fails its submission.
+	 */
+	private List<Submission> recover() {
+		List<Submission> recovered = new ArrayList<>();
+		jdbcTemplate.query(SELECT_PENDING, row -> {
+			String handle = row.getString("handle");
+			Long cartId = row.getLong("cart_id");
+			long cartVersion = row.getLong("cart_version");
+			Submission submission = transactionTemplate.execute(status -> {
+				Cart cart = entityManager.find(Cart.class, cartId);
+				if(cart == null || cart.getVersion() != cartVersion || cart.getItems().isEmpty()) {
+					return null;
+				}
+				return new Submission(handle, UserOrder.createFromCart(cart), cartId, cartVersion);
+			});
+			if(submission == null) {
+				logger.warn("Order {} was not placed: cart {} changed while the application was down", handle, cartId);
+				failures.increment();
+				jdbcTemplate.update(FINISH, OrderStatus.State.FAILED.name(), null, Timestamp.from(Instant.now()), handle);
+			} else {
+				recovered.add(submission);
+			}
+		});
+		return recovered;
+	}
+
+	/**
+	 * Finishes the submissions of a batch once its transactions have
+	 * committed. The placed orders are in the database whatever happens here,
+	 * so nothing is retried and they complete even if the bookkeeping fails.
+	 */
+	private void committed(List<Submission> batch, List<Submission> placed) {
+		for(Submission submission : batch) {
+			if(submission.state == OrderStatus.State.PENDING && !placed.contains(submission)) {
+				logger.warn("Order {} for user {} was not placed: cart {} changed after the order was built",
+						submission.handle, submission.username, submission.cartId);
+				failures.increment();
+				submission.finish(OrderStatus.State.FAILED);
+			}
+		}
+		if(placed.isEmpty()) {
+			return;
+		}
+		batchSizes.record(placed.size());
+		long now = System.nanoTime();
+		try {
+			checkoutService.cleared(placed.stream().map(submission -> submission.cartId).toList());
+			for(Submission submission : placed) {
+				checkoutService.placed(submission.order);
+			}
+		} finally {
+			for(Submission submission : placed) {
+				latency.record(now - submission.acceptedAt, TimeUnit.NANOSECONDS);
+				submission.finish(OrderStatus.State.COMPLETED);
+			}
+		}
+	}
+
+	private static final class Submission {
+
+		private final String handle;
+
+		private final UserOrder order;
+
+		private final String username;
+
+		private final Long cartId;
+
+		private final long cartVersion;
+
+		private final long acceptedAt = System.nanoTime();
+
+		private volatile OrderStatus.State state = OrderStatus.State.PENDING;
+
+		private volatile long finishedAt;
+
+		private Submission(String handle, UserOrder order, Long cartId, long cartVersion) {
+			this.handle = handle;
+			this.order = order;
+			this.username = order.getUser().getUsername();
+			this.cartId = cartId;
+			this.cartVersion = cartVersion;
+		}
+
+		private void finish(OrderStatus.State state) {
+			this.state = state;
+			this.finishedAt = System.currentTimeMillis();
+		}
+
+		private OrderStatus status() {
+			OrderStatus.State current = state;
+			return new OrderStatus(handle, current, current == OrderStatus.State.COMPLETED ? order.getId() : null);
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package com.example.demo.services;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Positive-negative counter CRDT. Every replica only ever grows its own
+ * entries in {@code increments} and {@code decrements}; merging takes the
+ * per-replica maximum, so replicas converge whatever the order or number of
+ * times they exchange state.
+ */
+public class PNCounter {
+
+	@JsonProperty
+	private Map<String, Long> increments = new HashMap<>();
+
+	@JsonProperty
+	private Map<String, Long> decrements = new HashMap<>();
+
+	public long value() {
+		long value = 0;
+		for(long amount : increments.values()) {
+			value += amount;
+		}
+		for(long amount : decrements.values()) {
+			value -= amount;
+		}
+		return value;
+	}
+
+	/**
+	 * Sum of all increments and decrements, whatever their sign: how much
+	 * change this counter has seen across every replica.
+	 */
+	public long total() {
+		long total = 0;
+		for(long amount : increments.values()) {
+			total += amount;
+		}
+		for(long amount : decrements.values()) {
+			total += amount;
+		}
+		return total;
+	}
+
+	/**
+	 * Records a change of {@code delta} made by {@code replica}.
+	 */
+	public void add(String replica, long delta) {
+		if(delta > 0) {
+			increments.merge(replica, delta, Long::sum);
+		} else if(delta < 0) {
+			decrements.merge(replica, -delta, Long::sum);
+		}
+	}
+
+	/**
+	 * Folds {@code other} into this counter.
+	 *
+	 * @return whether this counter changed
+	 */
+	public boolean merge(PNCounter other) {
+		return mergeMax(increments, other.increments) | mergeMax(decrements, other.decrements);
+	}
+
+	public PNCounter copy() {
+		PNCounter copy = new PNCounter();
+		copy.increments.putAll(increments);
+		copy.decrements.putAll(decrements);
+		return copy;
+	}
+
+	public Map<String, Long> getIncrements() {
+		return increments;
+	}
+
+	public void setIncrements(Map<String, Long> increments) {
+		this.increments = increments;
+	}
+
+	public Map<String, Long> getDecrements() {
+		return decrements;
+	}
+
+	public void setDecrements(Map<String, Long> decrements) {
+		this.decrements = decrements;
+	}
+
+	private static boolean mergeMax(Map<String, Long> target, Map<String, Long> source) {
+		boolean changed = false;
+		for(Map.Entry<String, Long> entry : source.entrySet()) {
+			Long current = target.get(entry.getKey());
+			if(current == null || current < entry.getValue()) {
+				target.put(entry.getKey(), entry.getValue());
+				changed = true;
+			}
+		}
+		return changed;
+	}
+}
@@ -0,0 +1,130 @@
+package com.example.demo.services;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.example.demo.model.requests.CartOperation;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Cart contents as one {@link PNCounter} per item, so that several nodes can
+ * accept edits to the same cart without coordinating and still agree once
+ * they have exchanged state.
+ * <p>
+ * The quantity shown for an item is its counter clamped at zero. Concurrent
+ * removals on different nodes can drive a counter below zero; the next local
+ * operation on that item first brings it back to the clamped value, so a
+ * later add never disappears into that debt. Not thread-safe: callers
+ * synchronise on the instance.
+ */
+public class ReplicatedCart {
+
+	/**
+	 * Replica id under which a cart's persisted lines are loaded. It is the
+	 * same on every node, so nodes that seed the same cart from the database
+	 * agree instead of adding their copies up.
+	 */
+	public static final String BASE_REPLICA = "base";
+
+	@JsonProperty
+	private Map<Long, PNCounter> items = new HashMap<>();
+
+	public int getQuantity(Long itemId) {
+		PNCounter counter = items.get(itemId);
+		return counter == null ? 0 : (int) Math.min(Math.max(counter.value(), 0), Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Quantities of the items currently in the cart, ordered by item id.
+	 */
+	public Map<Long, Integer> quantities() {
+		Map<Long, Integer> quantities = new TreeMap<>();
+		for(Long itemId : items.keySet()) {
+			int quantity = getQuantity(itemId);
+			if(quantity > 0) {
+				quantities.put(itemId, quantity);
+			}
+		}
+		return quantities;
+	}
+
+	/**
+	 * Applies a cart operation made on {@code replica}.
+	 */
+	public void apply(String replica, CartOperation operation) {
+		int current = getQuantity(operation.getItemId());
+		int quantity = Math.max(operation.getQuantity(), 0);
+		long target = switch(operation.getType()) {
+			case ADD -> Math.min((long) current + quantity, Integer.MAX_VALUE);
+			case REMOVE -> Math.max(current - quantity, 0);
+			case SET -> quantity;
+		};
+		setQuantity(replica, operation.getItemId(), target);
+	}
+
+	/**
+	 * Moves the counter of {@code itemId} to exactly {@code target}.
+	 */
+	public void setQuantity(String replica, Long itemId, long target) {
+		PNCounter counter = items.get(itemId);
+		long value = counter == null ? 0 : counter.value();
+		if(target == value) {
+			return;
+		}
+		if(counter == null) {
+			counter = new PNCounter();
+			items.put(itemId, counter);
+		}
+		counter.add(replica, target - value);
+	}
+
+	/**
+	 * Folds the state of another replica of this cart into this one.
+	 *
+	 * @return whether this replica changed
+	 */
+	public boolean merge(ReplicatedCart other) {
+		boolean changed = false;
+		for(Map.Entry<Long, PNCounter> entry : other.items.entrySet()) {
+			PNCounter counter = items.get(entry.getKey());
+			if(counter == null) {
+				items.put(entry.getKey(), entry.getValue().copy());
+				changed = true;
+			} else {
+				changed |= counter.merge(entry.getValue());
+			}
+		}
+		return changed;
+	}
+
+	public ReplicatedCart copy() {
+		ReplicatedCart copy = new ReplicatedCart();
+		items.forEach((itemId, counter) -> copy.items.put(itemId, counter.copy()));
+		return copy;
+	}
+
+	public Map<Long, PNCounter> getItems() {
+		return items;
+	}
+
+	public void setItems(Map<Long, PNCounter> items) {
+		this.items = items;
+	}
+
+	/**
+	 * Sum of every increment and decrement recorded by every replica. Each
+	 * change grows it and merging never shrinks it, and it is a function of
+	 * the counters alone, so replicas holding the same state report the same
+	 * version whichever node answers.
+	 */
+	@JsonIgnore
+	public long getVersion() {
+		long version = 0;
+		for(PNCounter counter : items.values()) {
+			version += counter.total();
+		}
+		return version;
+	}
+}
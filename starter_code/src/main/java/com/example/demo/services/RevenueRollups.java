@@ -0,0 +1,390 @@
+package com.example.demo.services;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.model.persistence.Money;
+import com.example.demo.model.persistence.OrderLine;
+import com.example.demo.model.persistence.RevenueRollup;
+import com.example.demo.model.persistence.RevenueRollup.Granularity;
+import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.model.persistence.repositories.OrderRepository;
+import com.example.demo.model.persistence.repositories.OrderRepository.RevenueSource;
+import com.example.demo.model.persistence.repositories.RevenueRollupRepository;
+import com.example.demo.model.responses.RevenueReport;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Order count, revenue and units sold per minute, hour and day, kept up to
+ * date as orders are placed instead of summing {@code user_order} for every
+ * report.
+ * <p>
+ * {@link #record} only adds to {@link LongAdder}s in the in-memory bucket of
+ * each granularity, without taking a lock, so placing orders never waits on
+ * the database or on another order. Every
+ * {@code order.rollup.flush-interval-ms} what was added since the last flush
+ * is added to the {@code revenue_rollup} rows in one transaction. Buckets
+ * whose time range ended more than {@code order.rollup.grace-ms} ago are
+ * sealed, flushed one last time and dropped from memory. An order recorded
+ * for a sealed bucket starts a new one, whose counts are added to the same
+ * row at the next flush.
+ * <p>
+ * {@link #report} reads one row per bucket and adds what is not flushed yet.
+ * It retries if a flush ran meanwhile, so a delta is never counted both in
+ * the table and in memory.
+ * <p>
+ * The first time the roll-ups start against an empty {@code revenue_rollup}
+ * table, {@link #backfill} counts the orders already in {@code user_order}.
+ * Orders moved to the {@link OrderArchive} before that are not counted.
+ */
+@Component
+@ConditionalOnProperty(name = "order.rollup.enabled", havingValue = "true", matchIfMissing = true)
+public class RevenueRollups {
+
+	private static final Logger logger = LoggerFactory.getLogger(RevenueRollups.class);
+
+	private static final String COUNT = "select count(*) from revenue_rollup";
+
+	private static final String UPDATE = "update revenue_rollup set orders = orders + ?, revenue = revenue + ?,"
+			+ " units = units + ? where granularity = ? and bucket_start = ?";
+
+	private static final String INSERT = "insert into revenue_rollup (orders, revenue, units, granularity, bucket_start)"
+			+ " values (?, ?, ?, ?, ?)";
+
+	@Autowired
+	private RevenueRollupRepository revenueRollupRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private OrderRepository orderRepository;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final ConcurrentMap<Key, Bucket> buckets = new ConcurrentHashMap<>();
+
+	// held by the one flush running; close() waits for it
+	private final AtomicBoolean flushing = new AtomicBoolean();
+
+	// odd while a flush is writing, read by report() to detect one
+	private final AtomicLong flushGeneration = new AtomicLong();
+
+	private final long graceMillis;
+
+	private final Timer flushes;
+
+	public RevenueRollups(PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+			@Value("${order.rollup.grace-ms:60000}") long graceMillis) {
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.graceMillis = graceMillis;
+		this.flushes = Timer.builder("order.rollup.flush")
+			.description("Time to add the pending roll-up deltas to revenue_rollup")
+			.register(meterRegistry);
+	}
+
+	/**
+	 * Counts the orders already in {@code user_order} if the roll-up table is
+	 * empty, i.e. on the first start with roll-ups enabled. Runs while the
+	 * context starts, before this node accepts orders, so no order is both
+	 * backfilled and recorded. The rows are only inserted: a second node
+	 * backfilling at the same time fails on the unique bucket key and rolls
+	 * back instead of counting the orders twice.
+	 */
+	@PostConstruct
+	public void backfill() {
+		long start = System.nanoTime();
+		Integer rows = transactionTemplate.execute(status -> {
+			if(jdbcTemplate.queryForObject(COUNT, Long.class) > 0) {
+				return null;
+			}
+			Map<Key, long[]> sums = new HashMap<>();
+			try(Stream<RevenueSource> orders = orderRepository.streamRevenueSources()) {
+				orders.forEach(order -> {
+					long at = order.getCreatedAt().toEpochMilli();
+					for(Granularity granularity : Granularity.values()) {
+						long[] sum = sums.computeIfAbsent(new Key(granularity, granularity.bucketStart(at)),
+								key -> new long[3]);
+						sum[0]++;
+						sum[1] += order.getTotal();
+						sum[2] += order.getUnits();
+					}
+				});
+			}
+			List<Object[]> inserts = new ArrayList<>(sums.size());
+			sums.forEach((key, sum) -> inserts.add(row(key, sum[0], sum[1], sum[2])));
+			jdbcTemplate.batchUpdate(INSERT, inserts);
+			return inserts.size();
+		});
+		if(rows != null && rows > 0) {
+			logger.info("Backfilled {} revenue roll-up rows from existing orders in {} ms", rows,
+					TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		}
+	}
+
+	/**
+	 * Counts a placed order in the buckets holding its creation time.
+	 */
+	public void record(UserOrder order) {
+		long at = order.getCreatedAt() == null ? System.currentTimeMillis() : order.getCreatedAt().toEpochMilli();
+		long units = 0;
+		if(order.getLines() != null) {
+			for(OrderLine line : order.getLines()) {
+				units += line.getQuantity();
+			}
+		}
+		long revenue = order.getTotal().minorUnits();
+		for(Granularity granularity : Granularity.values()) {
+			Key key = new Key(granularity, granularity.bucketStart(at));
+			while(true) {
+				Bucket bucket = buckets.computeIfAbsent(key, k -> new Bucket());
+				if(bucket.add(revenue, units)) {
+					break;
+				}
+				// sealed by a flush that has not dropped it yet
+				buckets.remove(key, bucket);
+			}
+		}
+	}
+
+	/**
+	 * Adds what was recorded since the last flush to the table. Does nothing
+	 * if another flush is running.
+	 */
+	@Scheduled(fixedDelayString = "${order.rollup.flush-interval-ms:10000}")
+	public void flush() {
+		if(!flushing.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			flushExclusively();
+		} finally {
+			flushing.set(false);
+		}
+	}
+
+	@PreDestroy
+	public void close() {
+		while(!flushing.compareAndSet(false, true)) {
+			Thread.onSpinWait();
+		}
+		try {
+			flushExclusively();
+		} finally {
+			flushing.set(false);
+		}
+	}
+
+	/**
+	 * Aggregates the buckets of {@code granularity} overlapping
+	 * {@code [from, to)}. The range is widened to whole buckets.
+	 */
+	public RevenueReport report(Granularity granularity, Instant from, Instant to) {
+		long start = granularity.bucketStart(from.toEpochMilli());
+		long end = -granularity.bucketStart(-to.toEpochMilli());
+		while(true) {
+			long generation = flushGeneration.get();
+			if((generation & 1) != 0) {
+				Thread.onSpinWait();
+				continue;
+			}
+			TreeMap<Long, long[]> sums = new TreeMap<>();
+			for(RevenueRollup row : revenueRollupRepository
+					.findByGranularityAndBucketStartGreaterThanEqualAndBucketStartLessThanOrderByBucketStart(
+							granularity, Instant.ofEpochMilli(start), Instant.ofEpochMilli(end))) {
+				add(sums, row.getBucketStart().toEpochMilli(), row.getOrders(), row.getRevenueMinorUnits(),
+						row.getUnits());
+			}
+			for(Map.Entry<Key, Bucket> entry : buckets.entrySet()) {
+				Key key = entry.getKey();
+				if(key.granularity == granularity && key.start >= start && key.start < end) {
+					Delta delta = entry.getValue().delta(key);
+					if(delta != null) {
+						add(sums, key.start, delta.orders, delta.revenue, delta.units);
+					}
+				}
+			}
+			// a flush in between may have moved a delta from memory to the table while it was read
+			if(flushGeneration.get() != generation) {
+				continue;
+			}
+			RevenueReport report = new RevenueReport(granularity, Instant.ofEpochMilli(start), Instant.ofEpochMilli(end));
+			sums.forEach((bucketStart, sum) -> report.add(Instant.ofEpochMilli(bucketStart), sum[0], sum[1], sum[2]));
+			return report;
+		}
+	}
+
+	private void flushExclusively() {
+		long start = System.nanoTime();
+		long now = System.currentTimeMillis();
+		flushGeneration.incrementAndGet();
+		try {
+			// a snapshot, so a sealed bucket is flushed even once a writer has dropped it from the map
+			List<Map.Entry<Key, Bucket>> snapshot = new ArrayList<>(buckets.entrySet());
+			List<Map.Entry<Key, Bucket>> sealed = new ArrayList<>();
+			for(Map.Entry<Key, Bucket> entry : snapshot) {
+				if(entry.getKey().end() + graceMillis < now && entry.getValue().seal()) {
+					sealed.add(entry);
+				}
+			}
+			List<Delta> deltas = new ArrayList<>();
+			for(Map.Entry<Key, Bucket> entry : snapshot) {
+				Delta delta = entry.getValue().delta(entry.getKey());
+				if(delta != null) {
+					deltas.add(delta);
+				}
+			}
+			if(!deltas.isEmpty()) {
+				transactionTemplate.executeWithoutResult(status -> write(deltas));
+				for(Delta delta : deltas) {
+					delta.bucket.flushed(delta);
+				}
+			}
+			for(Map.Entry<Key, Bucket> entry : sealed) {
+				buckets.remove(entry.getKey(), entry.getValue());
+			}
+		} finally {
+			flushGeneration.incrementAndGet();
+		}
+		flushes.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+	}
+
+	private void write(List<Delta> deltas) {
+		List<Object[]> rows = new ArrayList<>(deltas.size());
+		for(Delta delta : deltas) {
+			rows.add(row(delta.key, delta.orders, delta.revenue, delta.units));
+		}
+		int[] updated = jdbcTemplate.batchUpdate(UPDATE, rows);
+		List<Object[]> missing = new ArrayList<>();
+		for(int i = 0; i < updated.length; i++) {
+			if(updated[i] == 0) {
+				missing.add(rows.get(i));
+			}
+		}
+		if(!missing.isEmpty()) {
+			jdbcTemplate.batchUpdate(INSERT, missing);
+		}
+	}
+
+	private static Object[] row(Key key, long orders, long revenue, long units) {
+		return new Object[] {orders, BigDecimal.valueOf(revenue, Money.SCALE), units, key.granularity.name(),
+				OffsetDateTime.ofInstant(Instant.ofEpochMilli(key.start), ZoneOffset.UTC)};
+	}
+
+	private static void add(TreeMap<Long, long[]> sums, long bucketStart, long orders, long revenue, long units) {
+		long[] sum = sums.computeIfAbsent(bucketStart, key -> new long[3]);
+		sum[0] += orders;
+		sum[1] += revenue;
+		sum[2] += units;
+	}
+
+	private record Key(Granularity granularity, long start) {
+
+		private long end() {
+			return start + granularity.millis();
+		}
+	}
+
+	private record Delta(Key key, Bucket bucket, long orders, long revenue, long units) {
+	}
+
+	private static final class Bucket {
+
+		private static final int SEALED = Integer.MIN_VALUE;
+
+		private final LongAdder orders = new LongAdder();
+
+		private final LongAdder revenue = new LongAdder();
+
+		private final LongAdder units = new LongAdder();
+
+		// writers adding right now, plus SEALED once the last flush is due
+		private final AtomicInteger state = new AtomicInteger();
+
+		// written by the flush only, read by report()
+		private volatile long flushedOrders;
+
+		private volatile long flushedRevenue;
+
+		private volatile long flushedUnits;
+
+		/**
+		 * Adds one order, unless the bucket is sealed.
+		 *
+		 * @return {@code false} if the bucket is sealed and the order must go
+		 *         to a new bucket
+		 */
+		private boolean add(long orderRevenue, long orderUnits) {
+			// registering before checking the seal means a flush can never seal mid-add
+			if(state.getAndIncrement() < 0) {
+				state.getAndDecrement();
+				return false;
+			}
+			try {
+				orders.increment();
+				revenue.add(orderRevenue);
+				units.add(orderUnits);
+			} finally {
+				state.getAndDecrement();
+			}
+			return true;
+		}
+
+		/**
+		 * Seals the bucket if no order is being added to it, so that the
+		 * next delta is its last.
+		 *
+		 * @return whether the bucket is now sealed
+		 */
+		private boolean seal() {
+			return state.compareAndSet(0, SEALED);
+		}
+
+		/**
+		 * What was added since the last flush, or {@code null} if nothing.
+		 */
+		private Delta delta(Key key) {
+			long o = orders.sum() - flushedOrders;
+			long r = revenue.sum() - flushedRevenue;
+			long u = units.sum() - flushedUnits;
+			return o == 0 && r == 0 && u == 0 ? null : new Delta(key, this, o, r, u);
+		}
+
+		private void flushed(Delta delta) {
+			flushedOrders += delta.orders;
+			flushedRevenue += delta.revenue;
+			flushedUnits += delta.units;
+		}
+	}
+}
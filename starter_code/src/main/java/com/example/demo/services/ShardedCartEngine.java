@@ -0,0 +1,203 @@
+package com.example.demo.services;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.repositories.CartRepository;
+import com.example.demo.model.requests.CartOperation;
+
+/**
+ * Engine that routes every cart to one of {@code cart.sharded.shards}
+ * single-threaded shards by cart id (one cart per user, so this is the same
+ * partitioning as by username). A shard is the only writer of its carts:
+ * it keeps their state in a private cache and applies operations in queue
+ * order without locks. Whatever has queued up while a shard was busy is
+ * applied as one batch and each touched cart is saved once.
+ * <p>
+ * Checkout and expiry empty carts in the database without going through the
+ * shard. A batch therefore starts by locking its carts' rows and reading
+ * their versions, and a cached cart is used only if its version still
+ * matches; otherwise it is reloaded. Saving a stale cached copy would bring
+ * the emptied lines back.
+ */
+@Service
+@ConditionalOnProperty(name = "cart.engine", havingValue = "sharded")
+public class ShardedCartEngine implements CartEngine {
+
+	private static final Logger logger = LoggerFactory.getLogger(ShardedCartEngine.class);
+
+	@Autowired
+	private CartRepository cartRepository;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final Shard[] shards;
+
+	public ShardedCartEngine(PlatformTransactionManager transactionManager,
+			@Value("${cart.sharded.shards:0}") int shardCount,
+			@Value("${cart.sharded.queue-capacity:1024}") int queueCapacity,
+			@Value("${cart.sharded.cache-size:10000}") int cacheSize) {
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		int count = shardCount > 0 ? shardCount : Runtime.getRuntime().availableProcessors();
+		this.shards = new Shard[count];
+		for(int i = 0; i < count; i++) {
+			shards[i] = new Shard(i, queueCapacity, cacheSize);
+			shards[i].start();
+		}
+	}
+
+	public int getShardCount() {
+		return shards.length;
+	}
+
+	@Override
+	public Cart apply(Cart cart, List<CartOperation> operations, Map<Long, Item> items) {
+		Task task = new Task(cart.getId(), operations, items, new CompletableFuture<>());
+		try {
+			shardFor(cart.getId()).queue.put(task);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while queueing cart operation", e);
+		}
+		try {
+			return task.result.join();
+		} catch(CompletionException e) {
+			if(e.getCause() instanceof RuntimeException cause) {
+				throw cause;
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Evictions are picked up by the owning shard before its next batch, so
+	 * the shard thread stays the only one touching its cache.
+	 */
+	@Override
+	public void expire(Collection<Long> cartIds) {
+		for(Long cartId : cartIds) {
+			shardFor(cartId).evictions.add(cartId);
+		}
+	}
+
+	private Shard shardFor(Long cartId) {
+		return shards[Math.floorMod(Long.hashCode(cartId), shards.length)];
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		for(Shard shard : shards) {
+			shard.interrupt();
+		}
+	}
+
+	private record Task(Long cartId, List<CartOperation> operations, Map<Long, Item> items,
+			CompletableFuture<Cart> result) {
+	}
+
+	private final class Shard extends Thread {
+
+		private final BlockingQueue<Task> queue;
+
+		private final Map<Long, Cart> carts;
+
+		private final Queue<Long> evictions = new ConcurrentLinkedQueue<>();
+
+		Shard(int index, int queueCapacity, int cacheSize) {
+			super("cart-shard-" + index);
+			setDaemon(true);
+			this.queue = new ArrayBlockingQueue<>(queueCapacity);
+			this.carts = new LinkedHashMap<>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Long, Cart> eldest) {
+					return size() > cacheSize;
+				}
+			};
+		}
+
+		@Override
+		public void run() {
+			List<Task> batch = new ArrayList<>();
+			while(!isInterrupted()) {
+				try {
+					batch.add(queue.take());
+				} catch(InterruptedException e) {
+					return;
+				}
+				queue.drainTo(batch);
+				for(Long cartId; (cartId = evictions.poll()) != null; ) {
+					carts.remove(cartId);
+				}
+				process(batch);
+				batch.clear();
+			}
+		}
+
+		private void process(List<Task> batch) {
+			Map<Long, Cart> touched = new LinkedHashMap<>();
+			try {
+				transactionTemplate.executeWithoutResult(status -> {
+					Map<Long, Long> versions = new HashMap<>();
+					for(CartRepository.CartVersion locked : cartRepository.lockVersions(
+							batch.stream().map(Task::cartId).collect(Collectors.toSet()))) {
+						versions.put(locked.getId(), locked.getVersion());
+					}
+					for(Task task : batch) {
+						Cart cart = touched.computeIfAbsent(task.cartId(), cartId -> load(cartId, versions.get(cartId)));
+						for(CartOperation operation : task.operations()) {
+							CartEngine.applyTo(cart, operation, task.items().get(operation.getItemId()));
+						}
+					}
+					touched.replaceAll((cartId, cart) -> cartRepository.save(cart));
+				});
+			} catch(RuntimeException e) {
+				logger.error("Cart shard {} failed to apply {} operations: {}", getName(), batch.size(), e.getMessage(), e);
+				touched.keySet().forEach(carts::remove);
+				batch.forEach(task -> task.result().completeExceptionally(e));
+				return;
+			}
+			Map<Long, Cart> results = new LinkedHashMap<>();
+			touched.forEach((cartId, cart) -> {
+				carts.put(cartId, cart);
+				results.put(cartId, cart.copy());
+			});
+			batch.forEach(task -> task.result().complete(results.get(task.cartId())));
+		}
+
+		/**
+		 * Returns the cached cart if it is still at the version the database
+		 * holds, else the cart as persisted.
+		 */
+		private Cart load(Long cartId, Long version) {
+			Cart cart = carts.get(cartId);
+			if(cart != null && version != null && cart.getVersion() == version) {
+				return cart;
+			}
+			return cartRepository.findById(cartId).orElseThrow();
+		}
+	}
+}
@@ -0,0 +1,175 @@
+package com.example.demo.services;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hierarchical timing wheel tracking one deadline per key.
+ * <p>
+ * Level 0 has {@code wheelSize} slots of one tick each; every level above
+ * covers {@code wheelSize} times the span of the one below. A key lives in
+ * the lowest level whose span reaches its deadline and is moved down a
+ * level when the wheel turns past its slot. {@link #schedule} and
+ * {@link #cancel} are O(1) whatever the number of keys, and
+ * {@link #advance} only visits the slots that come due.
+ */
+public class TimingWheel<K> {
+
+	private final long tickMillis;
+
+	private final int wheelSize;
+
+	private final long[] spans;
+
+	private final Node<K>[][] slots;
+
+	private final Map<K, Node<K>> nodes = new HashMap<>();
+
+	private long currentTick;
+
+	@SuppressWarnings("unchecked")
+	public TimingWheel(long tickMillis, int wheelSize, int levels, long startMillis) {
+		this.tickMillis = tickMillis;
+		this.wheelSize = wheelSize;
+		this.spans = new long[levels];
+		this.slots = new Node[levels][wheelSize];
+		long span = 1;
+		for(int level = 0; level < levels; level++) {
+			spans[level] = span;
+			for(int slot = 0; slot < wheelSize; slot++) {
+				Node<K> sentinel = new Node<>(null, 0);
+				sentinel.prev = sentinel;
+				sentinel.next = sentinel;
+				slots[level][slot] = sentinel;
+			}
+			span *= wheelSize;
+		}
+		this.currentTick = startMillis / tickMillis;
+	}
+
+	/**
+	 * Sets (or moves) the deadline of {@code key}.
+	 */
+	public synchronized void schedule(K key, long deadlineMillis) {
+		long deadlineTick = Math.floorDiv(deadlineMillis + tickMillis - 1, tickMillis);
+		Node<K> node = nodes.get(key);
+		if(node == null) {
+			node = new Node<>(key, deadlineTick);
+			nodes.put(key, node);
+		} else {
+			node.unlink();
+			node.deadlineTick = deadlineTick;
+		}
+		place(node, currentTick + 1);
+	}
+
+	public synchronized boolean cancel(K key) {
+		Node<K> node = nodes.remove(key);
+		if(node == null) {
+			return false;
+		}
+		node.unlink();
+		return true;
+	}
+
+	public synchronized int size() {
+		return nodes.size();
+	}
+
+	/**
+	 * Turns the wheel up to {@code nowMillis} and removes every key whose
+	 * deadline has passed.
+	 *
+	 * @return the expired keys, earliest first
+	 */
+	public synchronized List<K> advance(long nowMillis) {
+		List<K> expired = new ArrayList<>();
+		long nowTick = nowMillis / tickMillis;
+		while(currentTick < nowTick) {
+			currentTick++;
+			for(int level = spans.length - 1; level > 0; level--) {
+				if(currentTick % spans[level] == 0) {
+					cascade(slots[level][slotIndex(level, currentTick)]);
+				}
+			}
+			Node<K> sentinel = slots[0][slotIndex(0, currentTick)];
+			for(Node<K> node = sentinel.next; node != sentinel; ) {
+				Node<K> next = node.next;
+				if(node.deadlineTick <= currentTick) {
+					node.unlink();
+					nodes.remove(node.key);
+					expired.add(node.key);
+				}
+				node = next;
+			}
+		}
+		return expired;
+	}
+
+	private void cascade(Node<K> sentinel) {
+		Node<K> node = sentinel.next;
+		while(node != sentinel) {
+			Node<K> next = node.next;
+			node.unlink();
+			place(node, currentTick);
+			node = next;
+		}
+	}
+
+	/**
+	 * Links {@code node} into the slot for its deadline, never earlier than
+	 * {@code earliestTick}: the next tick for new deadlines, the current tick
+	 * while cascading so that due keys expire in the same turn.
+	 */
+	private void place(Node<K> node, long earliestTick) {
+		long delta = Math.max(node.deadlineTick - currentTick, 0);
+		int level = 0;
+		while(level < spans.length - 1 && delta >= spans[level] * wheelSize) {
+			level++;
+		}
+		// beyond the top level: park in the furthest slot and cascade again later
+		long tick = Math.min(node.deadlineTick, currentTick + spans[level] * (wheelSize - 1));
+		if(level == 0) {
+			tick = Math.max(tick, earliestTick);
+		}
+		node.linkBefore(slots[level][slotIndex(level, tick)]);
+	}
+
+	private int slotIndex(int level, long tick) {
+		return (int) Math.floorMod(tick / spans[level], (long) wheelSize);
+	}
+
+	private static final class Node<K> {
+
+		private final K key;
+
+		private long deadlineTick;
+
+		private Node<K> prev;
+
+		private Node<K> next;
+
+		Node(K key, long deadlineTick) {
+			this.key = key;
+			this.deadlineTick = deadlineTick;
+		}
+
+		void linkBefore(Node<K> sentinel) {
+			prev = sentinel.prev;
+			next = sentinel;
+			sentinel.prev.next = this;
+			sentinel.prev = this;
+		}
+
+		void unlink() {
+			if(prev != null) {
+				prev.next = next;
+				next.prev = prev;
+				prev = null;
+				next = null;
+			}
+		}
+	}
+}
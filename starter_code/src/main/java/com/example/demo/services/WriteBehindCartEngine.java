@@ -0,0 +1,313 @@
+package com.example.demo.services;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.repositories.CartRepository;
+import com.example.demo.model.requests.CartOperation;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Engine that keeps an in-memory copy of the carts it has touched and
+ * treats it as the source of truth. Mutations only mark the cart dirty;
+ * dirty carts are written to the {@code cart} table in batches every
+ * {@code cart.write-behind.flush-interval-ms}, or immediately through
+ * {@link #flush(Cart)} when a caller such as checkout needs the persisted
+ * state.
+ * <p>
+ * After each scheduled flush, the least recently used clean carts are
+ * dropped until at most {@code cart.write-behind.max-carts} remain. Dirty
+ * carts are never dropped, so the cap can be exceeded while flushes fail.
+ * A dropped cart is loaded again from the database by its next change.
+ */
+@Service
+@ConditionalOnProperty(name = "cart.engine", havingValue = "write-behind")
+public class WriteBehindCartEngine implements CartEngine {
+
+	private static final Logger logger = LoggerFactory.getLogger(WriteBehindCartEngine.class);
+
+	@Autowired
+	private CartRepository cartRepository;
+
+	@Autowired(required = false)
+	private CartEventLog cartEventLog;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final int batchSize;
+
+	private final int maxCarts;
+
+	private final ConcurrentMap<Long, Cart> carts = new ConcurrentHashMap<>();
+
+	// cart id -> System.nanoTime() of the first change not yet flushed
+	private final ConcurrentMap<Long, Long> dirty = new ConcurrentHashMap<>();
+
+	// cart id -> System.nanoTime() of its last change or read, to pick the carts to drop
+	private final ConcurrentMap<Long, Long> lastUsed = new ConcurrentHashMap<>();
+
+	private final Object flushLock = new Object();
+
+	private final Timer flushLag;
+
+	private final DistributionSummary batchSizes;
+
+	private final Counter evictions;
+
+	public WriteBehindCartEngine(PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+			@Value("${cart.write-behind.batch-size:100}") int batchSize,
+			@Value("${cart.write-behind.max-carts:10000}") int maxCarts) {
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.batchSize = batchSize;
+		this.maxCarts = maxCarts;
+		Gauge.builder("cart.write_behind.queue.depth", dirty, Map::size)
+			.description("Carts with changes not yet written to the database")
+			.register(meterRegistry);
+		Gauge.builder("cart.write_behind.carts", carts, Map::size)
+			.description("Carts held in memory, dirty or not")
+			.register(meterRegistry);
+		this.evictions = Counter.builder("cart.write_behind.evictions")
+			.description("Clean carts dropped from memory to stay within max-carts")
+			.register(meterRegistry);
+		this.flushLag = Timer.builder("cart.write_behind.flush.lag")
+			.description("Time from a cart's first unflushed change until it is persisted")
+			.register(meterRegistry);
+		this.batchSizes = DistributionSummary.builder("cart.write_behind.batch.size")
+			.description("Carts written per flush transaction")
+			.baseUnit("carts")
+			.register(meterRegistry);
+	}
+
+	/**
+	 * Seeds the in-memory carts from the cart event log, if enabled. Changes
+	 * that were accepted but not flushed before a restart are recovered and
+	 * marked dirty so the next flush writes them.
+	 */
+	@PostConstruct
+	public void recover() {
+		if(cartEventLog == null) {
+			return;
+		}
+		Map<Long, Cart> recovered = cartEventLog.recover();
+		carts.putAll(recovered);
+		long now = System.nanoTime();
+		recovered.keySet().forEach(cartId -> {
+			dirty.put(cartId, now);
+			lastUsed.put(cartId, now);
+		});
+		logger.info("Write-behind engine recovered {} carts from the event log", recovered.size());
+	}
+
+	@Override
+	public Cart apply(Cart cart, List<CartOperation> operations, Map<Long, Item> items) {
+		while(true) {
+			Cart state = carts.get(cart.getId());
+			if(state == null) {
+				Cart loaded = load(cart);
+				state = carts.putIfAbsent(cart.getId(), loaded);
+				if(state == null) {
+					state = loaded;
+				}
+			}
+			synchronized(state) {
+				// expired or evicted since it was looked up: load it again
+				if(carts.get(cart.getId()) != state) {
+					continue;
+				}
+				if(state.getUser() == null) {
+					state.setUser(cart.getUser());
+				}
+				for(CartOperation operation : operations) {
+					CartEngine.applyTo(state, operation, items.get(operation.getItemId()));
+				}
+				long now = System.nanoTime();
+				dirty.putIfAbsent(cart.getId(), now);
+				lastUsed.put(cart.getId(), now);
+				return state.copy();
+			}
+		}
+	}
+
+	/**
+	 * Reads a cart that is not in memory from the database. The copy the
+	 * caller holds may predate a flush that wrote newer changes and then
+	 * evicted the cart.
+	 */
+	private Cart load(Cart cart) {
+		return transactionTemplate.execute(status -> cartRepository.findById(cart.getId())
+			.map(Cart::copy)
+			.orElseGet(cart::copy));
+	}
+
+	@Override
+	public Cart flush(Cart cart) {
+		Cart flushed = flushBatch(List.of(cart.getId())).get(cart.getId());
+		return flushed == null ? cart : flushed;
+	}
+
+	@Override
+	public Cart current(Long cartId) {
+		Cart state = carts.get(cartId);
+		if(state == null) {
+			return null;
+		}
+		lastUsed.put(cartId, System.nanoTime());
+		synchronized(state) {
+			return state.copy();
+		}
+	}
+
+	@Override
+	public void expire(Collection<Long> cartIds) {
+		synchronized(flushLock) {
+			for(Long cartId : cartIds) {
+				Cart state = carts.get(cartId);
+				if(state == null) {
+					continue;
+				}
+				// under the cart's lock, so an apply either lands before the removal or sees it
+				synchronized(state) {
+					carts.remove(cartId, state);
+					dirty.remove(cartId);
+					lastUsed.remove(cartId);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes every dirty cart, {@code cart.write-behind.batch-size} carts per
+	 * transaction, then drops clean carts beyond
+	 * {@code cart.write-behind.max-carts}.
+	 */
+	@Scheduled(fixedDelayString = "${cart.write-behind.flush-interval-ms:1000}")
+	@PreDestroy
+	public void flushDirty() {
+		List<Long> batch = new ArrayList<>(batchSize);
+		for(Long cartId : dirty.keySet()) {
+			batch.add(cartId);
+			if(batch.size() == batchSize) {
+				flushBatch(batch);
+				batch.clear();
+			}
+		}
+		if(!batch.isEmpty()) {
+			flushBatch(batch);
+		}
+		evictClean();
+	}
+
+	/**
+	 * Drops the least recently used clean carts while more than
+	 * {@code maxCarts} are held. Runs under the flush lock, since a flush
+	 * marks a cart clean before its write commits, and under each cart's
+	 * lock, so a cart changed meanwhile is dirty again and kept.
+	 */
+	private void evictClean() {
+		synchronized(flushLock) {
+			int excess = carts.size() - maxCarts;
+			if(excess <= 0) {
+				return;
+			}
+			List<Map.Entry<Long, Long>> clean = new ArrayList<>();
+			for(Long cartId : carts.keySet()) {
+				if(!dirty.containsKey(cartId)) {
+					clean.add(Map.entry(cartId, lastUsed.getOrDefault(cartId, 0L)));
+				}
+			}
+			clean.sort(Map.Entry.comparingByValue());
+			int evicted = 0;
+			for(Map.Entry<Long, Long> candidate : clean) {
+				if(evicted == excess) {
+					break;
+				}
+				Long cartId = candidate.getKey();
+				Cart state = carts.get(cartId);
+				if(state == null) {
+					continue;
+				}
+				synchronized(state) {
+					if(dirty.containsKey(cartId)) {
+						continue;
+					}
+					carts.remove(cartId, state);
+					lastUsed.remove(cartId);
+				}
+				evicted++;
+			}
+			evictions.increment(evicted);
+		}
+	}
+
+	private Map<Long, Cart> flushBatch(List<Long> cartIds) {
+		synchronized(flushLock) {
+			Map<Long, Cart> snapshots = new HashMap<>();
+			Map<Long, Long> dirtySince = new HashMap<>();
+			for(Long cartId : cartIds) {
+				Long since = dirty.remove(cartId);
+				if(since == null) {
+					continue;
+				}
+				Cart state = carts.get(cartId);
+				if(state == null) {
+					continue;
+				}
+				synchronized(state) {
+					snapshots.put(cartId, state.copy());
+				}
+				dirtySince.put(cartId, since);
+			}
+			if(snapshots.isEmpty()) {
+				return Map.of();
+			}
+
+			Map<Long, Cart> flushed = new HashMap<>();
+			try {
+				transactionTemplate.executeWithoutResult(status -> {
+					for(Cart cart : cartRepository.findAllById(snapshots.keySet())) {
+						cart.copyFrom(snapshots.get(cart.getId()));
+						flushed.put(cart.getId(), cart);
+					}
+					cartRepository.saveAll(flushed.values());
+				});
+			} catch(RuntimeException e) {
+				logger.error("Write-behind flush failed for {} carts, will retry: {}", snapshots.size(), e.getMessage(), e);
+				dirtySince.forEach((cartId, since) -> dirty.merge(cartId, since, Math::min));
+				return Map.of();
+			}
+
+			batchSizes.record(snapshots.size());
+			long now = System.nanoTime();
+			for(Long since : dirtySince.values()) {
+				flushLag.record(now - since, TimeUnit.NANOSECONDS);
+			}
+			return flushed;
+		}
+	}
+}
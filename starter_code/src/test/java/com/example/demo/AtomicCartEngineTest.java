@@ -0,0 +1,167 @@
+package com.example.demo;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.Money;
+import com.example.demo.model.persistence.repositories.CartRepository;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.requests.CartOperation;
+import com.example.demo.services.AtomicCartEngine;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "cart.engine=atomic")
+class AtomicCartEngineTest {
+
+    private static final int THREADS = 16;
+    private static final int ITERATIONS = 50;
+
+    @Autowired
+    private AtomicCartEngine cartEngine;
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private Cart cart;
+    private Item roundWidget;
+    private Item squareWidget;
+
+    @BeforeEach
+    void setUp() {
+        cart = TestUsers.createWithCart(userRepository, "atomic").getCart();
+
+        roundWidget = itemRepository.findById(1L).orElseThrow();
+        squareWidget = itemRepository.findById(2L).orElseThrow();
+    }
+
+    @Test
+    @DisplayName("Mutações concorrentes no mesmo carrinho não perdem atualizações")
+    void concurrentMutations_KeepExactTotal() throws Exception {
+        // Given
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        // When - cada iteração adiciona 2 e remove 1 de cada item
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    cartEngine.apply(cart.getId(), new CartOperation(CartOperation.Type.ADD, 1L, 2), roundWidget);
+                    cartEngine.apply(cart.getId(), new CartOperation(CartOperation.Type.ADD, 2L, 2), squareWidget);
+                    cartEngine.apply(cart.getId(), new CartOperation(CartOperation.Type.REMOVE, 1L, 1), roundWidget);
+                    cartEngine.apply(cart.getId(), new CartOperation(CartOperation.Type.REMOVE, 2L, 1), squareWidget);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        // Then
+        int units = THREADS * ITERATIONS;
+        Cart result = cartRepository.findById(cart.getId()).orElseThrow();
+        assertEquals(units, cartRepository.findLineQuantity(cart.getId(), 1L));
+        assertEquals(units, cartRepository.findLineQuantity(cart.getId(), 2L));
+        Money expected = roundWidget.getPrice().plus(squareWidget.getPrice())
+                .times(units);
+        assertEquals(0, expected.compareTo(result.getTotal()));
+    }
+
+    @Test
+    @DisplayName("Remover mais unidades do que existem esvazia a linha sem total negativo")
+    void removeMoreThanPresent_DeletesLine() {
+        // Given
+        cartEngine.apply(cart.getId(), new CartOperation(CartOperation.Type.ADD, 1L, 3), roundWidget);
+
+        // When
+        cartEngine.apply(cart.getId(), new CartOperation(CartOperation.Type.REMOVE, 1L, 10), roundWidget);
+
+        // Then
+        assertNull(cartRepository.findLineQuantity(cart.getId(), 1L));
+        Cart result = cartRepository.findById(cart.getId()).orElseThrow();
+        assertEquals(0, Money.ZERO.compareTo(result.getTotal()));
+    }
+
+    @Test
+    @DisplayName("Lote aplica todas as operações ou nenhuma")
+    void batch_RollsBackAsAWhole() {
+        // Given - o segundo item não existe, então a inserção da linha falha
+        Item missing = new Item();
+        missing.setId(999L);
+        missing.setPrice(Money.of("1.00"));
+        List<CartOperation> operations = List.of(
+                new CartOperation(CartOperation.Type.ADD, 1L, 2),
+                new CartOperation(CartOperation.Type.ADD, 999L, 1));
+
+        // When
+        assertThrows(DataIntegrityViolationException.class,
+                () -> cartEngine.apply(cart, operations, Map.of(1L, roundWidget, 999L, missing)));
+
+        // Then
+        assertNull(cartRepository.findLineQuantity(cart.getId(), 1L));
+        Cart persisted = cartRepository.findById(cart.getId()).orElseThrow();
+        assertEquals(0, Money.ZERO.compareTo(persisted.getTotal()));
+        assertEquals(0, persisted.getVersion());
+    }
+
+    @Test
+    @DisplayName("Lote devolve linhas, total e versão como gravados")
+    void batch_ReturnsWrittenState() {
+        // Given
+        List<CartOperation> operations = List.of(
+                new CartOperation(CartOperation.Type.ADD, 1L, 2),
+                new CartOperation(CartOperation.Type.ADD, 2L, 3),
+                new CartOperation(CartOperation.Type.REMOVE, 1L, 1));
+
+        // When
+        Cart result = cartEngine.apply(cart, operations, Map.of(1L, roundWidget, 2L, squareWidget));
+
+        // Then
+        Cart persisted = cartRepository.findById(cart.getId()).orElseThrow();
+        assertEquals(1, result.getQuantity(roundWidget));
+        assertEquals(3, result.getQuantity(squareWidget));
+        assertEquals(0, persisted.getTotal().compareTo(result.getTotal()));
+        assertEquals(0, Money.of("8.96").compareTo(result.getTotal()));
+        assertEquals(persisted.getVersion(), result.getVersion());
+    }
+
+    @Test
+    @DisplayName("SET define a quantidade exata e ajusta o total pela diferença")
+    void setQuantity_AdjustsTotalByDelta() {
+        // Given
+        cartEngine.apply(cart.getId(), new CartOperation(CartOperation.Type.ADD, 2L, 5), squareWidget);
+
+        // When
+        cartEngine.apply(cart.getId(), new CartOperation(CartOperation.Type.SET, 2L, 2), squareWidget);
+
+        // Then
+        assertEquals(2, cartRepository.findLineQuantity(cart.getId(), 2L));
+        Cart result = cartRepository.findById(cart.getId()).orElseThrow();
+        assertEquals(0, Money.of("3.98").compareTo(result.getTotal()));
+    }
+}
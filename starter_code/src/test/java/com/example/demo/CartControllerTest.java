@@ -2,11 +2,18 @@ package com.example.demo;
 
 import com.example.demo.model.persistence.Cart;
 import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.Money;
 import com.example.demo.model.persistence.User;
 import com.example.demo.model.persistence.repositories.CartRepository;
 import com.example.demo.model.persistence.repositories.ItemRepository;
 import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.requests.BatchCartRequest;
+import com.example.demo.model.requests.CartOperation;
+import com.example.demo.model.requests.MergeCartRequest;
 import com.example.demo.model.requests.ModifyCartRequest;
+import com.example.demo.services.CartJsonCache;
+import com.example.demo.services.GuestCartTokens;
+import com.example.demo.services.IdempotencyStore;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -21,13 +28,15 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 
-import java.math.BigDecimal;
-import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -38,6 +47,15 @@ class CartControllerTest {
     @Autowired
     private WebApplicationContext webApplicationContext;
 
+    @Autowired
+    private GuestCartTokens guestCartTokens;
+
+    @Autowired
+    private CartJsonCache cartJsonCache;
+
+    @Autowired
+    private IdempotencyStore idempotencyStore;
+
     @MockBean
     private UserRepository userRepository;
 
@@ -53,9 +71,111 @@ class CartControllerTest {
     @BeforeEach
     void setUp() {
         mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+        cartJsonCache.clear();
+        idempotencyStore.clear();
         objectMapper = new ObjectMapper();
     }
 
+    // ==================== TESTES PARA getCart() ====================
+
+    @Test
+    @WithMockUser
+    @DisplayName("Consultar carrinho - retorna ETag com a versão")
+    void getCart_Success() throws Exception {
+        // Given
+        Cart cart = createTestUser().getCart();
+        cart.addItem(createTestItem());
+
+        when(cartRepository.findVersionByUsername("testuser")).thenReturn(cartVersion(1L, 1L));
+        when(cartRepository.findById(1L)).thenReturn(Optional.of(cart));
+
+        // When & Then
+        mockMvc.perform(get("/api/cart/testuser"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"1.1\""))
+                .andExpect(jsonPath("$.version").value(1))
+                .andExpect(jsonPath("$.items[0].quantity").value(1));
+    }
+
+    @Test
+    @WithMockUser
+    @DisplayName("Consultar carrinho na mesma versão - serve o JSON em cache sem carregar o carrinho")
+    void getCart_ServedFromJsonCache() throws Exception {
+        // Given
+        Cart cart = createTestUser().getCart();
+        cart.addItem(createTestItem());
+
+        when(cartRepository.findVersionByUsername("testuser")).thenReturn(cartVersion(1L, 1L));
+        when(cartRepository.findById(1L)).thenReturn(Optional.of(cart));
+
+        String first = mockMvc.perform(get("/api/cart/testuser"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        // When & Then
+        mockMvc.perform(get("/api/cart/testuser"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"1.1\""))
+                .andExpect(content().json(first, true));
+
+        verify(cartRepository, times(1)).findById(1L);
+        assertEquals(1, cartJsonCache.size());
+    }
+
+    @Test
+    @WithMockUser
+    @DisplayName("Consultar carrinho em nova versão - não serve o JSON da versão anterior")
+    void getCart_JsonCacheMissesOnNewVersion() throws Exception {
+        // Given
+        Cart cart = createTestUser().getCart();
+        cart.addItem(createTestItem());
+
+        when(cartRepository.findVersionByUsername("testuser")).thenReturn(cartVersion(1L, 1L));
+        when(cartRepository.findById(1L)).thenReturn(Optional.of(cart));
+        mockMvc.perform(get("/api/cart/testuser")).andExpect(status().isOk());
+
+        cart.addItem(createTestItem());
+        when(cartRepository.findVersionByUsername("testuser")).thenReturn(cartVersion(1L, 2L));
+
+        // When & Then
+        mockMvc.perform(get("/api/cart/testuser"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"1.2\""))
+                .andExpect(jsonPath("$.version").value(2))
+                .andExpect(jsonPath("$.items[0].quantity").value(2));
+
+        verify(cartRepository, times(2)).findById(1L);
+    }
+
+    @Test
+    @WithMockUser
+    @DisplayName("Consultar carrinho inalterado - retorna 304 sem carregar o carrinho")
+    void getCart_NotModified() throws Exception {
+        // Given
+        when(cartRepository.findVersionByUsername("testuser")).thenReturn(cartVersion(1L, 7L));
+
+        // When & Then
+        mockMvc.perform(get("/api/cart/testuser")
+                        .header("If-None-Match", "\"1.7\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "\"1.7\""))
+                .andExpect(content().string(""));
+
+        verify(cartRepository, never()).findById(anyLong());
+    }
+
+    @Test
+    @WithMockUser
+    @DisplayName("Consultar carrinho - usuário não encontrado")
+    void getCart_UserNotFound() throws Exception {
+        // Given
+        when(cartRepository.findVersionByUsername("nonexistent")).thenReturn(null);
+
+        // When & Then
+        mockMvc.perform(get("/api/cart/nonexistent"))
+                .andExpect(status().isNotFound());
+    }
+
     // ==================== TESTES PARA addToCart() ====================
 
     @Test
@@ -157,6 +277,70 @@ class CartControllerTest {
         verify(cartRepository).save(any(Cart.class));
     }
 
+    @Test
+    @WithMockUser
+    @DisplayName("Adicionar item repetido com a mesma Idempotency-Key - aplica uma vez")
+    void addToCart_IdempotentRetry() throws Exception {
+        // Given
+        ModifyCartRequest request = createValidAddCartRequest();
+        request.setQuantity(2);
+        User user = createTestUser();
+        Item item = createTestItem();
+
+        when(userRepository.findByUsername("testuser")).thenReturn(user);
+        when(itemRepository.findById(1L)).thenReturn(Optional.of(item));
+        when(cartRepository.save(any(Cart.class))).thenReturn(user.getCart());
+
+        mockMvc.perform(post("/api/cart/addToCart")
+                        .header("Idempotency-Key", "add-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[0].quantity").value(2));
+
+        // When & Then
+        mockMvc.perform(post("/api/cart/addToCart")
+                        .header("Idempotency-Key", "add-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Idempotent-Replayed", "true"))
+                .andExpect(jsonPath("$.items[0].quantity").value(2));
+
+        verify(userRepository, times(1)).findByUsername("testuser");
+        assertEquals(2, user.getCart().getQuantity(item));
+    }
+
+    @Test
+    @WithMockUser
+    @DisplayName("Adicionar item com Idempotency-Key reutilizada em outro pedido - retorna 422")
+    void addToCart_IdempotencyKeyReused() throws Exception {
+        // Given
+        ModifyCartRequest first = createValidAddCartRequest();
+        ModifyCartRequest second = createValidAddCartRequest();
+        second.setQuantity(5);
+        User user = createTestUser();
+
+        when(userRepository.findByUsername("testuser")).thenReturn(user);
+        when(itemRepository.findById(1L)).thenReturn(Optional.of(createTestItem()));
+        when(cartRepository.save(any(Cart.class))).thenReturn(user.getCart());
+
+        mockMvc.perform(post("/api/cart/addToCart")
+                        .header("Idempotency-Key", "add-2")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(first)))
+                .andExpect(status().isOk());
+
+        // When & Then
+        mockMvc.perform(post("/api/cart/addToCart")
+                        .header("Idempotency-Key", "add-2")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(second)))
+                .andExpect(status().isUnprocessableEntity());
+
+        verify(userRepository, times(1)).findByUsername("testuser");
+    }
+
     // ==================== TESTES PARA removeFromCart() ====================
 
     @Test
@@ -168,6 +352,7 @@ class CartControllerTest {
         User user = createTestUser();
         Item item = createTestItem();
         Cart cart = user.getCart();
+        cart.setQuantity(item, 2);
 
         when(userRepository.findByUsername("testuser")).thenReturn(user);
         when(itemRepository.findById(1L)).thenReturn(Optional.of(item));
@@ -241,6 +426,7 @@ class CartControllerTest {
         User user = createTestUser();
         Item item = createTestItem();
         Cart cart = user.getCart();
+        cart.setQuantity(item, 3);
 
         when(userRepository.findByUsername("testuser")).thenReturn(user);
         when(itemRepository.findById(1L)).thenReturn(Optional.of(item));
@@ -255,6 +441,250 @@ class CartControllerTest {
         verify(userRepository).findByUsername("testuser");
         verify(itemRepository).findById(1L);
         verify(cartRepository).save(any(Cart.class));
+        assertEquals(1, cart.getQuantity(item));
+    }
+
+    @Test
+    @WithMockUser
+    @DisplayName("Remover item que não está no carrinho - nada é gravado")
+    void removeFromCart_ItemNotInCart() throws Exception {
+        // Given
+        ModifyCartRequest request = createValidRemoveCartRequest();
+        User user = createTestUser();
+        Item item = createTestItem();
+
+        when(userRepository.findByUsername("testuser")).thenReturn(user);
+        when(itemRepository.findById(1L)).thenReturn(Optional.of(item));
+
+        // When & Then
+        mockMvc.perform(post("/api/cart/removeFromCart")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(1));
+
+        verify(cartRepository, never()).save(any(Cart.class));
+    }
+
+    // ==================== TESTES PARA batch() ====================
+
+    @Test
+    @WithMockUser
+    @DisplayName("Aplicar operações em lote - sucesso com um único save")
+    void batch_Success() throws Exception {
+        // Given
+        User user = createTestUser();
+        Item item = createTestItem();
+        BatchCartRequest request = createBatchRequest(
+                new CartOperation(CartOperation.Type.ADD, 1L, 5),
+                new CartOperation(CartOperation.Type.REMOVE, 1L, 2),
+                new CartOperation(CartOperation.Type.SET, 1L, 4));
+
+        when(userRepository.findByUsername("testuser")).thenReturn(user);
+        when(itemRepository.findAllById(any())).thenReturn(List.of(item));
+
+        // When & Then
+        mockMvc.perform(post("/api/cart/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[0].quantity").value(4))
+                .andExpect(jsonPath("$.total").value(79.96));
+
+        verify(itemRepository).findAllById(any());
+        verify(itemRepository, never()).findById(anyLong());
+        verify(cartRepository, times(1)).save(any(Cart.class));
+    }
+
+    @Test
+    @WithMockUser
+    @DisplayName("Aplicar operações em lote - item não encontrado")
+    void batch_ItemNotFound() throws Exception {
+        // Given
+        User user = createTestUser();
+        BatchCartRequest request = createBatchRequest(
+                new CartOperation(CartOperation.Type.ADD, 1L, 1),
+                new CartOperation(CartOperation.Type.ADD, 999L, 1));
+
+        when(userRepository.findByUsername("testuser")).thenReturn(user);
+        when(itemRepository.findAllById(any())).thenReturn(List.of(createTestItem()));
+
+        // When & Then
+        mockMvc.perform(post("/api/cart/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isNotFound());
+
+        verify(cartRepository, never()).save(any(Cart.class));
+    }
+
+    @Test
+    @WithMockUser
+    @DisplayName("Aplicar operações em lote - lista vazia")
+    void batch_EmptyOperations() throws Exception {
+        // When & Then
+        mockMvc.perform(post("/api/cart/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(createBatchRequest())))
+                .andExpect(status().isBadRequest());
+
+        verify(userRepository, never()).findByUsername(any());
+    }
+
+    @Test
+    @WithMockUser
+    @DisplayName("Aplicar operações em lote - quantidade zero ou negativa")
+    void batch_InvalidQuantity() throws Exception {
+        // Given
+        List<CartOperation> invalid = List.of(
+                new CartOperation(CartOperation.Type.ADD, 2L, 0),
+                new CartOperation(CartOperation.Type.ADD, 2L, -1),
+                new CartOperation(CartOperation.Type.REMOVE, 2L, 0),
+                new CartOperation(CartOperation.Type.SET, 2L, -2));
+
+        // When & Then
+        for (CartOperation operation : invalid) {
+            mockMvc.perform(post("/api/cart/batch")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(objectMapper.writeValueAsString(
+                                    createBatchRequest(new CartOperation(CartOperation.Type.ADD, 1L, 1), operation))))
+                    .andExpect(status().isBadRequest());
+        }
+
+        verify(userRepository, never()).findByUsername(any());
+    }
+
+    // ==================== TESTES PARA merge() ====================
+
+    @Test
+    @WithMockUser
+    @DisplayName("Mesclar carrinho de visitante - uma única gravação")
+    void merge_Success() throws Exception {
+        // Given
+        User user = createTestUser();
+        Item item = createTestItem();
+        MergeCartRequest request = new MergeCartRequest();
+        request.setUsername("testuser");
+        request.setGuestCart(guestCartTokens.encode(Map.of(1L, 3, 999L, 1)));
+
+        when(userRepository.findByUsername("testuser")).thenReturn(user);
+        when(itemRepository.findAllById(any())).thenReturn(List.of(item));
+
+        // When & Then
+        mockMvc.perform(post("/api/cart/merge")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items.length()").value(1))
+                .andExpect(jsonPath("$.items[0].quantity").value(3))
+                .andExpect(jsonPath("$.total").value(59.97));
+
+        verify(itemRepository, times(1)).findAllById(any());
+        verify(cartRepository, times(1)).save(any(Cart.class));
+    }
+
+    @Test
+    @WithMockUser
+    @DisplayName("Mesclar o mesmo carrinho de visitante duas vezes - quantidades não se somam")
+    void merge_SameTokenTwiceIsIdempotent() throws Exception {
+        // Given
+        User user = createTestUser();
+        Item item = createTestItem();
+        user.getCart().setQuantity(item, 1);
+        MergeCartRequest request = new MergeCartRequest();
+        request.setUsername("testuser");
+        request.setGuestCart(guestCartTokens.encode(Map.of(1L, 3)));
+
+        when(userRepository.findByUsername("testuser")).thenReturn(user);
+        when(itemRepository.findAllById(any())).thenReturn(List.of(item));
+
+        // When
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(post("/api/cart/merge")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(objectMapper.writeValueAsString(request)))
+                    .andExpect(status().isOk());
+        }
+
+        // Then
+        assertEquals(3, user.getCart().getQuantity(item));
+    }
+
+    @Test
+    @WithMockUser
+    @DisplayName("Mesclar carrinho de visitante - token adulterado")
+    void merge_InvalidToken() throws Exception {
+        // Given
+        MergeCartRequest request = new MergeCartRequest();
+        request.setUsername("testuser");
+        request.setGuestCart("bm90LXNpZ25lZA.AAAA");
+
+        // When & Then
+        mockMvc.perform(post("/api/cart/merge")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isBadRequest());
+
+        verify(cartRepository, never()).save(any(Cart.class));
+    }
+
+    // ==================== TESTES PARA Prefer: return=minimal|delta ====================
+
+    @Test
+    @WithMockUser
+    @DisplayName("Adicionar item com resposta mínima - apenas versão, linhas e total")
+    void addToCart_PreferMinimal() throws Exception {
+        // Given
+        ModifyCartRequest request = createValidAddCartRequest();
+        request.setQuantity(3);
+        User user = createTestUser();
+
+        when(userRepository.findByUsername("testuser")).thenReturn(user);
+        when(itemRepository.findById(1L)).thenReturn(Optional.of(createTestItem()));
+
+        // When & Then
+        mockMvc.perform(post("/api/cart/addToCart")
+                        .header("Prefer", "return=minimal")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Preference-Applied", "return=minimal"))
+                .andExpect(jsonPath("$.version").value(1))
+                .andExpect(jsonPath("$.lineCount").value(1))
+                .andExpect(jsonPath("$.total").value(59.97))
+                .andExpect(jsonPath("$.items").doesNotExist())
+                .andExpect(jsonPath("$.user").doesNotExist());
+    }
+
+    @Test
+    @WithMockUser
+    @DisplayName("Aplicar operações em lote com resposta delta - apenas linhas alteradas")
+    void batch_PreferDelta() throws Exception {
+        // Given
+        User user = createTestUser();
+        Item item = createTestItem();
+        Item other = createTestItem();
+        other.setId(2L);
+        user.getCart().addItem(other, 2);
+        BatchCartRequest request = createBatchRequest(
+                new CartOperation(CartOperation.Type.ADD, 1L, 2),
+                new CartOperation(CartOperation.Type.REMOVE, 2L, 2));
+
+        when(userRepository.findByUsername("testuser")).thenReturn(user);
+        when(itemRepository.findAllById(any())).thenReturn(List.of(item, other));
+
+        // When & Then
+        mockMvc.perform(post("/api/cart/batch")
+                        .header("Prefer", "return=delta")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Preference-Applied", "return=delta"))
+                .andExpect(jsonPath("$.lineCount").value(1))
+                .andExpect(jsonPath("$.lines.length()").value(1))
+                .andExpect(jsonPath("$.lines[0].itemId").value(1))
+                .andExpect(jsonPath("$.lines[0].quantity").value(2))
+                .andExpect(jsonPath("$.removed[0]").value(2));
     }
 
     // ==================== TESTES DE VALIDAÇÃO DE ENTRADA ====================
@@ -331,6 +761,27 @@ class CartControllerTest {
         return request;
     }
 
+    private BatchCartRequest createBatchRequest(CartOperation... operations) {
+        BatchCartRequest request = new BatchCartRequest();
+        request.setUsername("testuser");
+        request.setOperations(List.of(operations));
+        return request;
+    }
+
+    private CartRepository.CartVersion cartVersion(Long id, long version) {
+        return new CartRepository.CartVersion() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public long getVersion() {
+                return version;
+            }
+        };
+    }
+
     private User createTestUser() {
         User user = new User();
         user.setId(1L);
@@ -338,8 +789,7 @@ class CartControllerTest {
 
         Cart cart = new Cart();
         cart.setId(1L);
-        cart.setItems(new ArrayList<>());
-        cart.setTotal(BigDecimal.ZERO);
+        cart.setTotal(Money.ZERO);
         user.setCart(cart);
 
         return user;
@@ -350,7 +800,7 @@ class CartControllerTest {
         item.setId(1L);
         item.setName("Test Item");
         item.setDescription("Test Description");
-        item.setPrice(new BigDecimal("19.99"));
+        item.setPrice(Money.of("19.99"));
         return item;
     }
 }
\ No newline at end of file
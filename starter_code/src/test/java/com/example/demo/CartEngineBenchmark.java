@@ -0,0 +1,122 @@
+package com.example.demo;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.repositories.CartRepository;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.requests.CartOperation;
+import com.example.demo.services.CartEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compara o caminho síncrono (entity) com os shards de escritor único sob
+ * alta contenção: 16 threads alterando poucos carrinhos "quentes". Cada
+ * operação carrega o carrinho numa transação, como faz o CartController
+ * com open-in-view.
+ *
+ * Executar com: {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.example.demo.CartEngineBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+public class CartEngineBenchmark {
+
+    @Param({"entity", "sharded"})
+    public String engine;
+
+    @Param({"4"})
+    public int hotCarts;
+
+    private ConfigurableApplicationContext context;
+    private CartEngine cartEngine;
+    private CartRepository cartRepository;
+    private TransactionTemplate transactionTemplate;
+    private Long[] cartIds;
+    private Map<Long, Item> items;
+    private List<CartOperation> operations;
+    private final AtomicLong conflicts = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(SareetaApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "cart.engine=" + engine,
+                        "spring.datasource.url=jdbc:h2:mem:benchmark-" + engine + ";NON_KEYWORDS=user",
+                        "logging.level.root=WARN")
+                .run();
+        cartEngine = context.getBean(CartEngine.class);
+        cartRepository = context.getBean(CartRepository.class);
+        transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+
+        Item item = context.getBean(ItemRepository.class).findById(1L).orElseThrow();
+        items = Map.of(1L, item);
+        operations = List.of(new CartOperation(CartOperation.Type.ADD, 1L, 1));
+
+        cartIds = new Long[hotCarts];
+        for (int i = 0; i < hotCarts; i++) {
+            // a linha já existe, para que o caminho síncrono não dispute a inserção
+            Cart cart = new Cart();
+            cart.addItem(item);
+            cartIds[i] = cartRepository.save(cart).getId();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.println("engine=" + engine + " conflitos=" + conflicts.get());
+        context.close();
+    }
+
+    @Benchmark
+    public Cart addToHotCart() {
+        Long cartId = cartIds[ThreadLocalRandom.current().nextInt(cartIds.length)];
+        try {
+            return transactionTemplate.execute(status ->
+                    cartEngine.apply(cartRepository.findById(cartId).orElseThrow(), operations, items));
+        } catch (ConcurrencyFailureException e) {
+            // o caminho síncrono pode falhar por conflito de escrita; contamos em vez de abortar
+            conflicts.incrementAndGet();
+            return null;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CartEngineBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
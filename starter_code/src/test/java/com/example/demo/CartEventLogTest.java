@@ -0,0 +1,161 @@
+package com.example.demo;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.Money;
+import com.example.demo.model.requests.CartOperation;
+import com.example.demo.services.CartEventLog;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("CartEventLog Tests")
+class CartEventLogTest {
+
+    @TempDir
+    Path directory;
+
+    private Item roundWidget;
+    private Item squareWidget;
+
+    @BeforeEach
+    void setUp() {
+        roundWidget = createItem(1L, "2.99");
+        squareWidget = createItem(2L, "1.99");
+    }
+
+    @Test
+    @DisplayName("Deve reconstruir o estado a partir do log após reinício")
+    void recover_FromLogTail() throws Exception {
+        // Given
+        CartEventLog log = open();
+        log.append(10L, new CartOperation(CartOperation.Type.ADD, 1L, 3), roundWidget, 1);
+        log.append(10L, new CartOperation(CartOperation.Type.ADD, 2L, 2), squareWidget, 2);
+        log.append(10L, new CartOperation(CartOperation.Type.REMOVE, 1L, 1), roundWidget, 3);
+        log.append(20L, new CartOperation(CartOperation.Type.SET, 2L, 5), squareWidget, 1);
+        log.close();
+
+        // When
+        CartEventLog reopened = open();
+        Map<Long, Cart> carts = reopened.recover();
+
+        // Then
+        assertEquals(4, reopened.getReplayedEvents());
+        assertEquals(2, carts.get(10L).getQuantity(roundWidget));
+        assertEquals(2, carts.get(10L).getQuantity(squareWidget));
+        assertEquals(0, Money.of("9.96").compareTo(carts.get(10L).getTotal()));
+        assertEquals(5, carts.get(20L).getQuantity(squareWidget));
+        reopened.close();
+    }
+
+    @Test
+    @DisplayName("Deve combinar snapshot e cauda do log")
+    void recover_FromSnapshotAndTail() throws Exception {
+        // Given
+        CartEventLog log = open();
+        log.append(10L, new CartOperation(CartOperation.Type.ADD, 1L, 3), roundWidget, 1);
+        log.snapshot();
+        log.append(10L, new CartOperation(CartOperation.Type.ADD, 1L, 1), roundWidget, 2);
+        log.appendClear(30L);
+        log.close();
+
+        // When
+        CartEventLog reopened = open();
+        Map<Long, Cart> carts = reopened.recover();
+
+        // Then - só os eventos após o snapshot são reaplicados
+        assertEquals(2, reopened.getReplayedEvents());
+        assertEquals(4, carts.get(10L).getQuantity(roundWidget));
+        assertFalse(carts.containsKey(30L));
+        reopened.close();
+    }
+
+    @Test
+    @DisplayName("Deve restaurar a versão registrada do carrinho, não a contagem de eventos")
+    void recover_KeepsLoggedVersion() throws Exception {
+        // Given - um lote de duas operações que deixou o carrinho na versão 7
+        CartEventLog log = open();
+        log.append(10L, new CartOperation(CartOperation.Type.ADD, 1L, 3), roundWidget, 5);
+        log.snapshot();
+        log.append(10L, new CartOperation(CartOperation.Type.SET, 1L, 1), roundWidget, 7);
+        log.append(10L, new CartOperation(CartOperation.Type.ADD, 2L, 2), squareWidget, 7);
+        log.append(20L, new CartOperation(CartOperation.Type.ADD, 1L, 1), roundWidget, 12);
+        log.snapshot();
+        log.close();
+
+        // When
+        Map<Long, Cart> carts = open().recover();
+
+        // Then
+        assertEquals(7, carts.get(10L).getVersion());
+        assertEquals(1, carts.get(10L).getQuantity(roundWidget));
+        assertEquals(2, carts.get(10L).getQuantity(squareWidget));
+        assertEquals(12, carts.get(20L).getVersion());
+    }
+
+    @Test
+    @DisplayName("Deve descartar registro incompleto no fim do log")
+    void recover_TruncatesTornRecord() throws Exception {
+        // Given
+        CartEventLog log = open();
+        log.append(10L, new CartOperation(CartOperation.Type.ADD, 1L, 3), roundWidget, 1);
+        log.close();
+        Files.write(directory.resolve("events-0.log"), new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+
+        // When
+        CartEventLog reopened = open();
+
+        // Then
+        assertEquals(1, reopened.getReplayedEvents());
+        assertEquals(3, reopened.recover().get(10L).getQuantity(roundWidget));
+        reopened.append(10L, new CartOperation(CartOperation.Type.ADD, 1L, 1), roundWidget, 2);
+        reopened.close();
+        assertEquals(4, open().recover().get(10L).getQuantity(roundWidget));
+    }
+
+    @Test
+    @DisplayName("Deve medir a vazão de replay")
+    void replayThroughput() throws Exception {
+        // Given
+        int events = 200_000;
+        CartEventLog log = open();
+        for (int i = 0; i < events; i++) {
+            log.append((long) (i % 1000), new CartOperation(CartOperation.Type.ADD, 1L, 1), roundWidget, i / 1000 + 1);
+        }
+        log.close();
+
+        // When
+        long start = System.nanoTime();
+        CartEventLog reopened = open();
+        long elapsed = System.nanoTime() - start;
+
+        // Then
+        assertEquals(events, reopened.getReplayedEvents());
+        assertEquals(events / 1000, reopened.recover().get(0L).getQuantity(roundWidget));
+        System.out.printf("Replay de %d eventos em %d ms (%d eventos/s)%n",
+                events, elapsed / 1_000_000, events * 1_000_000_000L / Math.max(elapsed, 1));
+        reopened.close();
+    }
+
+    private CartEventLog open() throws Exception {
+        CartEventLog log = new CartEventLog(new SimpleMeterRegistry(), directory.toString(), false);
+        log.open();
+        return log;
+    }
+
+    private Item createItem(Long id, String price) {
+        Item item = new Item();
+        item.setId(id);
+        item.setPrice(Money.of(price));
+        return item;
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.demo;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.Money;
+import com.example.demo.model.persistence.repositories.CartRepository;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.requests.CartOperation;
+import com.example.demo.services.CartExpirySweeper;
+import com.example.demo.services.CartService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "cart.expiry.enabled=true",
+        "cart.expiry.ttl-ms=200",
+        "cart.expiry.tick-ms=10"
+})
+class CartExpirySweeperTest {
+
+    private static final long PAST_TTL_MS = 400;
+
+    @Autowired
+    private CartExpirySweeper cartExpirySweeper;
+
+    @Autowired
+    private CartService cartService;
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Cart cart;
+    private Item roundWidget;
+
+    @BeforeEach
+    void setUp() {
+        cart = TestUsers.createWithCart(userRepository, "expiry").getCart();
+
+        roundWidget = itemRepository.findById(1L).orElseThrow();
+    }
+
+    @Test
+    @DisplayName("Carrinho parado além do TTL é esvaziado")
+    void sweep_EmptiesIdleCart() throws Exception {
+        // Given
+        cartService.apply(cart, List.of(new CartOperation(CartOperation.Type.ADD, 1L, 2)), Map.of(1L, roundWidget));
+
+        // When
+        Thread.sleep(PAST_TTL_MS);
+        cartExpirySweeper.sweep();
+
+        // Then
+        assertNull(cartRepository.findLineQuantity(cart.getId(), 1L));
+        assertEquals(0, Money.ZERO.compareTo(cartRepository.findById(cart.getId()).orElseThrow().getTotal()));
+    }
+
+    @Test
+    @DisplayName("Carrinho alterado depois de agendado não é esvaziado")
+    void sweep_KeepsCartChangedSinceScheduled() throws Exception {
+        // Given - uma escrita cuja renovação do TTL ainda não chegou ao sweeper
+        cartService.apply(cart, List.of(new CartOperation(CartOperation.Type.ADD, 1L, 2)), Map.of(1L, roundWidget));
+        new TransactionTemplate(transactionManager).executeWithoutResult(
+                status -> cartRepository.incrementTotal(cart.getId(), BigDecimal.ZERO));
+
+        // When
+        Thread.sleep(PAST_TTL_MS);
+        cartExpirySweeper.sweep();
+
+        // Then
+        assertEquals(2, cartRepository.findLineQuantity(cart.getId(), 1L));
+        assertEquals(0, Money.of("5.98").compareTo(cartRepository.findById(cart.getId()).orElseThrow().getTotal()));
+    }
+}
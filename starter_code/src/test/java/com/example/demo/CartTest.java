@@ -1,49 +1,37 @@
 package com.example.demo;
 
 import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.Mockito.*;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.util.ArrayList;
-import java.util.List;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.DisplayName;
-import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.Mock;
-import org.mockito.junit.jupiter.MockitoExtension;
 
 import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.CartLine;
 import com.example.demo.model.persistence.Item;
-import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.Money;
+import com.example.demo.model.persistence.OrderLine;
+import com.example.demo.model.persistence.UserOrder;
 
-import static org.assertj.core.api.Assertions.*;
 
-
-@ExtendWith(MockitoExtension.class)
 @DisplayName("Cart Entity Tests")
 public class CartTest {
 
     private Cart cart;
 
-    @Mock
-    private Item mockItem1;
-
-    @Mock
-    private Item mockItem2;
+    private Item item1;
 
-    @Mock
-    private User mockUser;
+    private Item item2;
 
     @BeforeEach
     void setUp() {
         cart = new Cart();
 
-        // Configurar mocks para os itens
-        when(mockItem1.getPrice()).thenReturn(new BigDecimal("10.99"));
-        when(mockItem2.getPrice()).thenReturn(new BigDecimal("5.50"));
+        item1 = createItem(1L, "10.99");
+        item2 = createItem(2L, "5.50");
     }
 
     // Testes para Getters e Setters
@@ -56,58 +44,83 @@ public class CartTest {
     }
 
     @Test
-    @DisplayName("Deve adicionar item quando lista já existe")
-    void testAddItem_WhenItemsListExists() {
+    @DisplayName("Deve adicionar item quando linhas já existem")
+    void testAddItem_WhenLinesExist() {
         // Given
-        List<Item> existingItems = new ArrayList<>();
-        existingItems.add(mockItem2);
-        cart.setItems(existingItems);
+        cart.addItem(item2);
 
         // When
-        cart.addItem(mockItem1);
+        cart.addItem(item1);
 
         // Then
         assertEquals(2, cart.getItems().size());
-        assertTrue(cart.getItems().contains(mockItem1));
-        assertTrue(cart.getItems().contains(mockItem2));
+        assertEquals(1, cart.getQuantity(item1));
+        assertEquals(1, cart.getQuantity(item2));
     }
 
     @Test
-    @DisplayName("Deve inicializar total como zero quando total é null")
-    void testAddItem_WhenTotalIsNull() {
+    @DisplayName("Deve começar com total zero")
+    void testAddItem_WhenTotalIsZero() {
         // Given
-        assertNull(cart.getTotal());
+        assertEquals(Money.ZERO, cart.getTotal());
 
         // When
-        cart.addItem(mockItem1);
+        cart.addItem(item1);
 
         // Then
-        assertEquals(new BigDecimal("10.99"), cart.getTotal());
+        assertEquals(Money.of("10.99"), cart.getTotal());
     }
 
     @Test
     @DisplayName("Deve somar preço do item ao total existente")
     void testAddItem_WhenTotalExists() {
         // Given
-        cart.setTotal(new BigDecimal("15.00"));
+        cart.setTotal(Money.of("15.00"));
 
         // When
-        cart.addItem(mockItem1);
+        cart.addItem(item1);
 
         // Then
-        assertEquals(new BigDecimal("25.99"), cart.getTotal());
+        assertEquals(Money.of("25.99"), cart.getTotal());
     }
 
     @Test
     @DisplayName("Deve adicionar múltiplos itens e calcular total corretamente")
     void testAddItem_MultipleItems() {
         // When
-        cart.addItem(mockItem1);
-        cart.addItem(mockItem2);
+        cart.addItem(item1);
+        cart.addItem(item2);
 
         // Then
         assertEquals(2, cart.getItems().size());
-        assertEquals(new BigDecimal("16.49"), cart.getTotal());
+        assertEquals(Money.of("16.49"), cart.getTotal());
+    }
+
+    @Test
+    @DisplayName("Deve agrupar unidades do mesmo item em uma única linha")
+    void testAddItem_WithQuantity() {
+        // When
+        cart.addItem(item1, 500);
+        cart.addItem(item1, 2);
+
+        // Then
+        assertEquals(1, cart.getItems().size());
+        CartLine line = cart.getLines().get(1L);
+        assertEquals(502, line.getQuantity());
+        assertEquals(Money.of("5516.98"), line.getSubtotal());
+        assertEquals(Money.of("5516.98"), cart.getTotal());
+    }
+
+    @Test
+    @DisplayName("Deve ignorar quantidade zero ou negativa")
+    void testAddItem_WithNonPositiveQuantity() {
+        // When
+        cart.addItem(item1, 0);
+        cart.addItem(item1, -3);
+
+        // Then
+        assertTrue(cart.getItems().isEmpty());
+        assertEquals(Money.ZERO, cart.getTotal());
     }
 
     // Testes para removeItem()
@@ -115,48 +128,98 @@ public class CartTest {
     @DisplayName("Deve remover item da lista existente")
     void testRemoveItem_WhenItemExists() {
         // Given
-        cart.addItem(mockItem1);
-        cart.addItem(mockItem2);
+        cart.addItem(item1);
+        cart.addItem(item2);
 
         // When
-        cart.removeItem(mockItem1);
+        cart.removeItem(item1);
 
         // Then
         assertEquals(1, cart.getItems().size());
-        assertFalse(cart.getItems().contains(mockItem1));
-        assertTrue(cart.getItems().contains(mockItem2));
-        assertEquals(new BigDecimal("5.50"), cart.getTotal());
+        assertEquals(0, cart.getQuantity(item1));
+        assertEquals(1, cart.getQuantity(item2));
+        assertEquals(Money.of("5.50"), cart.getTotal());
+    }
+
+    @Test
+    @DisplayName("Deve reduzir a quantidade da linha sem removê-la")
+    void testRemoveItem_PartialQuantity() {
+        // Given
+        cart.addItem(item2, 10);
+
+        // When
+        cart.removeItem(item2, 4);
+
+        // Then
+        assertEquals(6, cart.getQuantity(item2));
+        assertEquals(Money.of("33.00"), cart.getLines().get(2L).getSubtotal());
+        assertEquals(Money.of("33.00"), cart.getTotal());
+    }
+
+    @Test
+    @DisplayName("Deve limitar a remoção às unidades existentes")
+    void testRemoveItem_MoreThanInCart() {
+        // Given
+        cart.addItem(item2, 2);
+
+        // When
+        cart.removeItem(item2, 5);
+
+        // Then
+        assertTrue(cart.getItems().isEmpty());
+        assertEquals(0, cart.getTotal().compareTo(Money.ZERO));
     }
 
     @Test
-    @DisplayName("Deve inicializar lista vazia quando lista é null")
-    void testRemoveItem_WhenItemsListIsNull() {
+    @DisplayName("Deve manter carrinho vazio quando linhas são null")
+    void testRemoveItem_WhenLinesAreNull() {
         // Given
-        assertNull(cart.getItems());
+        assertNull(cart.getLines());
 
         // When
-        cart.removeItem(mockItem1);
+        cart.removeItem(item1);
 
         // Then
         assertNotNull(cart.getItems());
         assertEquals(0, cart.getItems().size());
+        assertEquals(Money.ZERO, cart.getTotal());
     }
 
 
     @Test
-    @DisplayName("Deve remover item mesmo quando não existe na lista")
+    @DisplayName("Não deve alterar o total quando o item não está no carrinho")
     void testRemoveItem_WhenItemNotInList() {
         // Given
-        cart.addItem(mockItem2);
-        BigDecimal originalTotal = cart.getTotal();
+        cart.addItem(item2);
+        Money originalTotal = cart.getTotal();
 
         // When
-        cart.removeItem(mockItem1);
+        cart.removeItem(item1);
 
         // Then
         assertEquals(1, cart.getItems().size());
-        assertTrue(cart.getItems().contains(mockItem2));
-        assertEquals(originalTotal.subtract(mockItem1.getPrice()), cart.getTotal());
+        assertEquals(1, cart.getQuantity(item2));
+        assertEquals(originalTotal, cart.getTotal());
+    }
+
+    // Testes para version
+    @Test
+    @DisplayName("Deve incrementar a versão apenas quando o carrinho muda")
+    void testVersion_IncrementsOnChange() {
+        // When
+        cart.addItem(item1, 2);
+        cart.removeItem(item2);
+        cart.setQuantity(item1, 2);
+
+        // Then
+        assertEquals(1, cart.getVersion());
+
+        // When
+        cart.removeItem(item1);
+
+        // Then
+        assertEquals(2, cart.getVersion());
+        assertEquals(2, cart.copy().getVersion());
     }
 
     // Testes de cenários de borda
@@ -164,55 +227,90 @@ public class CartTest {
     @DisplayName("Deve funcionar com preços zero")
     void testAddAndRemoveItem_WithZeroPrice() {
         // Given
-        Item zeroItem = mock(Item.class);
-        when(zeroItem.getPrice()).thenReturn(BigDecimal.ZERO);
+        Item zeroItem = createItem(3L, "0");
 
         // When
         cart.addItem(zeroItem);
 
         // Then
-        assertEquals(BigDecimal.ZERO, cart.getTotal());
+        assertEquals(Money.ZERO, cart.getTotal());
 
         // When
         cart.removeItem(zeroItem);
 
         // Then
-        assertEquals(BigDecimal.ZERO, cart.getTotal());
+        assertEquals(Money.ZERO, cart.getTotal());
     }
 
     @Test
     @DisplayName("Deve funcionar com preços negativos")
     void testAddAndRemoveItem_WithNegativePrice() {
         // Given
-        Item negativeItem = mock(Item.class);
-        when(negativeItem.getPrice()).thenReturn(new BigDecimal("-5.00"));
+        Item negativeItem = createItem(3L, "-5.00");
 
         // When
         cart.addItem(negativeItem);
 
         // Then
-        assertEquals(new BigDecimal("-5.00"), cart.getTotal());
+        assertEquals(Money.of("-5.00"), cart.getTotal());
 
         // When
         cart.removeItem(negativeItem);
 
         // Then
-        assertEquals(BigDecimal.ZERO, cart.getTotal());
+        assertEquals(0, cart.getTotal().compareTo(Money.ZERO));
     }
 
     @Test
     @DisplayName("Deve manter precisão decimal correta")
     void testDecimalPrecision() {
         // Given
-        Item preciseItem = mock(Item.class);
-        when(preciseItem.getPrice()).thenReturn(new BigDecimal("9.999"));
+        Item preciseItem = createItem(3L, "0.10");
+
+        // When
+        cart.addItem(preciseItem, 3);
+
+        // Then
+        assertEquals(Money.of("0.30"), cart.getTotal());
+        assertEquals(30, cart.getTotalMinorUnits());
+    }
+
+    @Test
+    @DisplayName("Deve rejeitar valores com frações de centavo sem arredondamento explícito")
+    void testSubCentAmount_RequiresRounding() {
+        // When & Then
+        assertThrows(ArithmeticException.class, () -> Money.of("9.999"));
+        assertEquals(Money.of("10.00"), Money.of(new BigDecimal("9.995"), RoundingMode.HALF_EVEN));
+        assertEquals(Money.of("9.98"), Money.of(new BigDecimal("9.985"), RoundingMode.HALF_EVEN));
+    }
+
+    @Test
+    @DisplayName("Deve falhar em vez de estourar o total")
+    void testAddItem_Overflow() {
+        // Given
+        Item expensive = new Item();
+        expensive.setId(9L);
+        expensive.setPrice(Money.ofMinor(Long.MAX_VALUE / 2));
+
+        // When & Then
+        assertThrows(ArithmeticException.class, () -> cart.addItem(expensive, 3));
+    }
+
+    @Test
+    @DisplayName("Linha do pedido copia o preço do item em vez de dividir o subtotal")
+    void testOrderLine_UnitPriceFromItem() {
+        // Given - subtotal acumulado por deltas que não é múltiplo do preço atual
+        cart.addItem(item1, 3);
+        CartLine line = cart.getLines().get(1L);
+        line.setSubtotal(Money.of("32.00"));
 
         // When
-        cart.addItem(preciseItem);
-        cart.addItem(preciseItem);
+        OrderLine orderLine = new OrderLine(new UserOrder(), line);
 
         // Then
-        assertEquals(new BigDecimal("19.998"), cart.getTotal());
+        assertEquals(Money.of("10.99"), orderLine.getUnitPrice());
+        assertEquals(Money.of("32.00"), orderLine.getLineTotal());
+        assertEquals(3, orderLine.getQuantity());
     }
 
     // Testes de estado inicial
@@ -222,9 +320,10 @@ public class CartTest {
         Cart newCart = new Cart();
 
         assertNull(newCart.getId());
-        assertNull(newCart.getItems());
+        assertNull(newCart.getLines());
+        assertTrue(newCart.getItems().isEmpty());
         assertNull(newCart.getUser());
-        assertNull(newCart.getTotal());
+        assertEquals(Money.ZERO, newCart.getTotal());
     }
 
     // Teste de integração completo
@@ -232,29 +331,34 @@ public class CartTest {
     @DisplayName("Deve funcionar em cenário completo de uso")
     void testCompleteScenario() {
         // Given
-        Item item1 = mock(Item.class);
-        Item item2 = mock(Item.class);
-        Item item3 = mock(Item.class);
-
-        when(item1.getPrice()).thenReturn(new BigDecimal("10.00"));
-        when(item2.getPrice()).thenReturn(new BigDecimal("15.50"));
-        when(item3.getPrice()).thenReturn(new BigDecimal("7.25"));
+        Item item3 = createItem(3L, "10.00");
+        Item item4 = createItem(4L, "15.50");
+        Item item5 = createItem(5L, "7.25");
 
         // When - Adicionar itens
-        cart.addItem(item1);
-        cart.addItem(item2);
         cart.addItem(item3);
+        cart.addItem(item4);
+        cart.addItem(item5);
 
         // Then - Verificar estado após adições
         assertEquals(3, cart.getItems().size());
-        assertEquals(new BigDecimal("32.75"), cart.getTotal());
+        assertEquals(Money.of("32.75"), cart.getTotal());
 
         // When - Remover um item
-        cart.removeItem(item2);
+        cart.removeItem(item4);
 
         // Then - Verificar estado após remoção
         assertEquals(2, cart.getItems().size());
-        assertEquals(new BigDecimal("17.25"), cart.getTotal());
-        assertFalse(cart.getItems().contains(item2));
+        assertEquals(Money.of("17.25"), cart.getTotal());
+        assertEquals(0, cart.getQuantity(item4));
+    }
+
+    private Item createItem(Long id, String price) {
+        Item item = new Item();
+        item.setId(id);
+        item.setName("Item " + id);
+        item.setDescription("Item " + id);
+        item.setPrice(Money.of(price));
+        return item;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,182 @@
+package com.example.demo;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.Money;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.model.persistence.repositories.CartRepository;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.requests.CartOperation;
+import com.example.demo.services.CartService;
+import com.example.demo.services.CheckoutService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class CheckoutServiceTest {
+
+    @Autowired
+    private CheckoutService checkoutService;
+
+    @Autowired
+    private CartService cartService;
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private User user;
+    private Cart cart;
+    private Item roundWidget;
+    private Item squareWidget;
+
+    @BeforeEach
+    void setUp() {
+        user = TestUsers.createWithCart(userRepository, "checkout");
+        cart = user.getCart();
+
+        roundWidget = itemRepository.findById(1L).orElseThrow();
+        squareWidget = itemRepository.findById(2L).orElseThrow();
+        cart = cartService.apply(cart, List.of(
+                        new CartOperation(CartOperation.Type.ADD, 1L, 3),
+                        new CartOperation(CartOperation.Type.ADD, 2L, 2)),
+                Map.of(1L, roundWidget, 2L, squareWidget));
+    }
+
+    @Test
+    @DisplayName("Checkout cria o pedido com as linhas e esvazia o carrinho")
+    void checkout_CreatesOrderAndEmptiesCart() {
+        // When
+        UserOrder order = checkoutService.checkout(user, cart.getId());
+
+        // Then
+        assertNotNull(order.getId());
+        assertEquals(Money.of("12.95"), order.getTotal());
+        assertEquals(2, order.getLines().size());
+        assertEquals(2, countRows("select count(*) from user_order_line where order_id = ?", order.getId()));
+        assertEquals(5, countRows("select sum(quantity) from user_order_line where order_id = ?", order.getId()));
+        assertEquals(0, countRows("select count(*) from cart_line where cart_id = ?", cart.getId()));
+        assertEquals(Money.ZERO, cartRepository.findById(cart.getId()).orElseThrow().getTotal());
+    }
+
+    @Test
+    @DisplayName("Checkout de carrinho vazio não cria pedido")
+    void checkout_EmptyCart() {
+        // Given
+        checkoutService.checkout(user, cart.getId());
+
+        // When & Then
+        assertNull(checkoutService.checkout(user, cart.getId()));
+    }
+
+    @Test
+    @DisplayName("Checkouts concorrentes do mesmo carrinho criam um único pedido")
+    void checkout_ConcurrentCheckoutsOrderOnce() throws Exception {
+        // Given
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<UserOrder>> futures = new ArrayList<>();
+
+        // When
+        for (int i = 0; i < 4; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return checkoutService.checkout(user, cart.getId());
+            }));
+        }
+        start.countDown();
+        int placed = 0;
+        for (Future<UserOrder> future : futures) {
+            if (future.get() != null) {
+                placed++;
+            }
+        }
+        executor.shutdown();
+
+        // Then
+        assertEquals(1, placed);
+        assertEquals(1, countRows("select count(*) from user_order where user_id = ?", user.getId()));
+    }
+
+    @Test
+    @DisplayName("Pedido montado de uma versão antiga não é gravado nem esvazia o carrinho alterado depois")
+    void place_StaleVersionKeepsCart() {
+        // Given
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        Cart builtFrom = transaction.execute(status -> {
+            Cart loaded = cartRepository.findById(cart.getId()).orElseThrow();
+            loaded.getItems().size();
+            return loaded;
+        });
+        UserOrder order = UserOrder.createFromCart(builtFrom);
+        order.setUser(user);
+        transaction.executeWithoutResult(status -> cartService.apply(cartRepository.findById(cart.getId()).orElseThrow(),
+                List.of(new CartOperation(CartOperation.Type.ADD, 1L, 1)), Map.of(1L, roundWidget)));
+
+        // When
+        Boolean emptied = transaction.execute(status -> checkoutService.place(order, cart.getId(), builtFrom.getVersion()));
+
+        // Then
+        assertFalse(emptied);
+        assertNull(order.getId());
+        assertEquals(0, countRows("select count(*) from user_order where user_id = ?", user.getId()));
+        assertEquals(4, countRows("select sum(quantity) from cart_line where cart_id = ? and item_id = 1", cart.getId()));
+    }
+
+    @Test
+    @DisplayName("Linhas do pedido guardam nome e preço da época, sem mudar com o catálogo")
+    void checkout_LinesAreSnapshots() {
+        // Given
+        UserOrder order = checkoutService.checkout(user, cart.getId());
+        jdbcTemplate.update("update item set name = 'Renamed Widget', price = 9.99 where id = 1");
+
+        try {
+            // When
+            Map<String, Object> line = jdbcTemplate.queryForMap(
+                    "select name, unit_price, quantity, line_total from user_order_line where order_id = ? and item_id = 1",
+                    order.getId());
+
+            // Then
+            assertEquals("Round Widget", line.get("NAME"));
+            assertEquals(0, new BigDecimal("2.99").compareTo((BigDecimal) line.get("UNIT_PRICE")));
+            assertEquals(3, line.get("QUANTITY"));
+            assertEquals(0, new BigDecimal("8.97").compareTo((BigDecimal) line.get("LINE_TOTAL")));
+        } finally {
+            jdbcTemplate.update("update item set name = 'Round Widget', price = 2.99 where id = 1");
+        }
+    }
+
+    private int countRows(String sql, Long id) {
+        return jdbcTemplate.queryForObject(sql, Integer.class, id);
+    }
+}
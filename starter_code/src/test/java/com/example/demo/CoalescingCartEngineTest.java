@@ -0,0 +1,103 @@
+package com.example.demo;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.Money;
+import com.example.demo.model.persistence.repositories.CartRepository;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.requests.CartOperation;
+import com.example.demo.services.CoalescingCartEngine;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "cart.engine=coalescing",
+        "cart.coalescing.window-ms=50"
+})
+class CoalescingCartEngineTest {
+
+    private static final int THREADS = 20;
+
+    @Autowired
+    private CoalescingCartEngine cartEngine;
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Cart cart;
+    private Item squareWidget;
+
+    @BeforeEach
+    void setUp() {
+        cart = TestUsers.createWithCart(userRepository, "coalescing").getCart();
+
+        squareWidget = itemRepository.findById(2L).orElseThrow();
+    }
+
+    @Test
+    @DisplayName("Rajada de mutações no mesmo carrinho gera menos gravações")
+    void burst_IsMergedIntoFewerWrites() throws Exception {
+        // Given
+        double commitsBefore = meterRegistry.get("cart.coalescing.commits").counter().count();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Cart>> futures = new ArrayList<>();
+
+        // When
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return cartEngine.apply(cart, List.of(new CartOperation(CartOperation.Type.ADD, 2L, 1)),
+                        Map.of(2L, squareWidget));
+            }));
+        }
+        start.countDown();
+        for (Future<Cart> future : futures) {
+            assertNotNull(future.get());
+        }
+        executor.shutdown();
+
+        // Then
+        assertEquals(THREADS, cartRepository.findLineQuantity(cart.getId(), 2L));
+        Cart persisted = cartRepository.findById(cart.getId()).orElseThrow();
+        assertEquals(0, Money.of("1.99").times(THREADS).compareTo(persisted.getTotal()));
+        double commits = meterRegistry.get("cart.coalescing.commits").counter().count() - commitsBefore;
+        assertTrue(commits < THREADS, "esperado menos gravações que requisições, foram " + commits);
+    }
+
+    @Test
+    @DisplayName("Requisição isolada é gravada após a janela")
+    void singleRequest_IsCommitted() {
+        // When
+        Cart result = cartEngine.apply(cart, List.of(new CartOperation(CartOperation.Type.ADD, 2L, 3)),
+                Map.of(2L, squareWidget));
+
+        // Then
+        assertEquals(3, result.getQuantity(squareWidget));
+        assertEquals(3, cartRepository.findLineQuantity(cart.getId(), 2L));
+    }
+}
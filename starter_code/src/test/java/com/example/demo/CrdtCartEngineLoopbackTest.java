@@ -0,0 +1,160 @@
+package com.example.demo;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.repositories.CartRepository;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.requests.CartOperation;
+import com.example.demo.services.CrdtCartEngine;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs two application instances on loopback with {@code cart.engine=crdt},
+ * each with its own in-memory database, pointing at each other as peers.
+ */
+class CrdtCartEngineLoopbackTest {
+
+    private static final String REPLICATION_KEY = "loopback-test-key";
+
+    private static ConfigurableApplicationContext nodeA;
+    private static ConfigurableApplicationContext nodeB;
+
+    @BeforeAll
+    static void startNodes() throws IOException {
+        int portA = freePort();
+        int portB = freePort();
+        nodeA = startNode("a", portA, portB);
+        nodeB = startNode("b", portB, portA);
+    }
+
+    @AfterAll
+    static void stopNodes() {
+        nodeA.close();
+        nodeB.close();
+    }
+
+    @Test
+    @DisplayName("Edições em nós diferentes convergem via gossip")
+    void concurrentEdits_ConvergeOverLoopback() throws Exception {
+        // Given
+        Cart cartA = createCart(nodeA, "gossip");
+        Cart cartB = createCart(nodeB, "gossip");
+        assertEquals(cartA.getId(), cartB.getId());
+
+        // When
+        apply(nodeA, cartA, new CartOperation(CartOperation.Type.ADD, 1L, 3));
+        apply(nodeB, cartB, new CartOperation(CartOperation.Type.ADD, 1L, 2));
+        apply(nodeB, cartB, new CartOperation(CartOperation.Type.ADD, 2L, 1));
+
+        // Then
+        awaitQuantity(nodeA, cartA.getId(), 1L, 5);
+        awaitQuantity(nodeB, cartB.getId(), 1L, 5);
+        assertEquals(1, engine(nodeA).current(cartA.getId()).getQuantity(item(nodeA, 2L)));
+    }
+
+    @Test
+    @DisplayName("Checkout mescla o estado dos pares e grava o carrinho uma vez")
+    void flush_PullsPeerStateAndPersists() throws Exception {
+        // Given
+        Cart cartA = createCart(nodeA, "checkout");
+        Cart cartB = createCart(nodeB, "checkout");
+        apply(nodeA, cartA, new CartOperation(CartOperation.Type.ADD, 2L, 4));
+        apply(nodeB, cartB, new CartOperation(CartOperation.Type.REMOVE, 2L, 1));
+        apply(nodeB, cartB, new CartOperation(CartOperation.Type.ADD, 1L, 1));
+
+        // When
+        Cart flushed = engine(nodeA).flush(cartA);
+
+        // Then
+        assertEquals(1, flushed.getQuantity(item(nodeA, 1L)));
+        Cart persisted = nodeA.getBean(CartRepository.class).findById(cartA.getId()).orElseThrow();
+        assertEquals(0, flushed.getTotal().compareTo(persisted.getTotal()));
+        assertEquals(flushed.getQuantity(item(nodeA, 2L)),
+                nodeA.getBean(CartRepository.class).findLineQuantity(cartA.getId(), 2L));
+    }
+
+    @Test
+    @DisplayName("Nó que conhece o carrinho só pelo banco não conta as edições duas vezes")
+    void seedFromFlushedRow_NotCountedTwice() throws Exception {
+        // Given - o carrinho foi gravado pelo checkout com as edições do nó a
+        Cart cartA = createCart(nodeA, "reseed");
+        createCart(nodeB, "reseed");
+        apply(nodeA, cartA, new CartOperation(CartOperation.Type.ADD, 1L, 3));
+        engine(nodeA).flush(cartA);
+        CrdtCartEngine restarted = new CrdtCartEngine(new SimpleMeterRegistry(), "a", List.of(), REPLICATION_KEY, 500);
+        nodeA.getAutowireCapableBeanFactory().autowireBean(restarted);
+        Cart persisted = nodeA.getBean(CartRepository.class).findById(cartA.getId()).orElseThrow();
+
+        // When - semeado do banco sem pares e depois alcançado pelo gossip
+        restarted.apply(persisted, List.of(), Map.of());
+        restarted.receive(Map.of(cartA.getId(), engine(nodeA).snapshot(cartA.getId())));
+
+        // Then
+        assertEquals(3, restarted.current(cartA.getId()).getQuantity(item(nodeA, 1L)));
+        assertEquals(engine(nodeA).current(cartA.getId()).getVersion(), restarted.current(cartA.getId()).getVersion());
+    }
+
+    // ==================== MÉTODOS AUXILIARES ====================
+
+    private static ConfigurableApplicationContext startNode(String nodeId, int port, int peerPort) {
+        // command line arguments, since application.properties overrides builder defaults
+        return new SpringApplicationBuilder(SareetaApplication.class)
+                .run("--server.port=" + port,
+                        "--spring.datasource.url=jdbc:h2:mem:crdt-" + nodeId + ";NON_KEYWORDS=user",
+                        "--cart.engine=crdt",
+                        "--cart.crdt.node-id=" + nodeId,
+                        "--cart.crdt.peers=http://127.0.0.1:" + peerPort,
+                        "--cart.crdt.replication-key=" + REPLICATION_KEY,
+                        "--cart.crdt.gossip-interval-ms=50");
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static CrdtCartEngine engine(ConfigurableApplicationContext node) {
+        return node.getBean(CrdtCartEngine.class);
+    }
+
+    private static Item item(ConfigurableApplicationContext node, Long id) {
+        return node.getBean(ItemRepository.class).findById(id).orElseThrow();
+    }
+
+    private static Cart createCart(ConfigurableApplicationContext node, String prefix) {
+        return TestUsers.createWithCart(node.getBean(UserRepository.class), prefix).getCart();
+    }
+
+    private static void apply(ConfigurableApplicationContext node, Cart cart, CartOperation operation) {
+        engine(node).apply(cart, List.of(operation), Map.of(operation.getItemId(), item(node, operation.getItemId())));
+    }
+
+    private static void awaitQuantity(ConfigurableApplicationContext node, Long cartId, Long itemId, int expected)
+            throws InterruptedException {
+        Item item = item(node, itemId);
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (System.currentTimeMillis() < deadline) {
+            Cart current = engine(node).current(cartId);
+            if (current != null && current.getQuantity(item) == expected) {
+                return;
+            }
+            Thread.sleep(20);
+        }
+        fail("Cart " + cartId + " did not converge to " + expected + " units of item " + itemId);
+    }
+}
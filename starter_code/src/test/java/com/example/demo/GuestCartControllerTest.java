@@ -0,0 +1,142 @@
+package com.example.demo;
+
+import com.example.demo.model.persistence.repositories.CartRepository;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.requests.CartOperation;
+import com.example.demo.model.requests.GuestCartRequest;
+import com.example.demo.services.GuestCartTokens;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureWebMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureWebMvc
+class GuestCartControllerTest {
+
+    @Autowired
+    private WebApplicationContext webApplicationContext;
+
+    @Autowired
+    private GuestCartTokens guestCartTokens;
+
+    @MockBean
+    private UserRepository userRepository;
+
+    @MockBean
+    private CartRepository cartRepository;
+
+    @MockBean
+    private ItemRepository itemRepository;
+
+    private MockMvc mockMvc;
+    private ObjectMapper objectMapper;
+
+    @BeforeEach
+    void setUp() {
+        mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+        objectMapper = new ObjectMapper();
+    }
+
+    // ==================== TESTES PARA batch() ====================
+
+    @Test
+    @DisplayName("Carrinho de visitante - sem autenticação e sem acesso ao banco")
+    void batch_WithoutDatabase() throws Exception {
+        // Given
+        GuestCartRequest request = createRequest(guestCartTokens.encode(Map.of(1L, 2)),
+                new CartOperation(CartOperation.Type.ADD, 1L, 3),
+                new CartOperation(CartOperation.Type.ADD, 2L, 1));
+
+        // When
+        String body = mockMvc.perform(post("/api/guest-cart/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items['1']").value(5))
+                .andExpect(jsonPath("$.items['2']").value(1))
+                .andReturn().getResponse().getContentAsString();
+
+        // Then
+        JsonNode response = objectMapper.readTree(body);
+        assertEquals(Map.of(1L, 5, 2L, 1), guestCartTokens.decode(response.get("guestCart").asText()));
+        verifyNoInteractions(userRepository, cartRepository, itemRepository);
+    }
+
+    @Test
+    @DisplayName("Carrinho de visitante - remover até zero apaga a linha")
+    void batch_RemoveLine() throws Exception {
+        // Given
+        GuestCartRequest request = createRequest(guestCartTokens.encode(Map.of(1L, 2, 2L, 1)),
+                new CartOperation(CartOperation.Type.REMOVE, 1L, 5));
+
+        // When & Then
+        mockMvc.perform(post("/api/guest-cart/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items['1']").doesNotExist())
+                .andExpect(jsonPath("$.items['2']").value(1));
+    }
+
+    @Test
+    @DisplayName("Carrinho de visitante - token inválido")
+    void batch_InvalidToken() throws Exception {
+        // Given
+        GuestCartRequest request = createRequest("bm90LXNpZ25lZA.AAAA",
+                new CartOperation(CartOperation.Type.ADD, 1L, 1));
+
+        // When & Then
+        mockMvc.perform(post("/api/guest-cart/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("Carrinho de visitante - operação sem item")
+    void batch_MissingItemId() throws Exception {
+        // Given
+        String token = guestCartTokens.encode(Map.of(1L, 2));
+        String[] operations = {
+                "{\"type\":\"ADD\",\"itemId\":null,\"quantity\":1}",
+                "{\"type\":\"ADD\",\"quantity\":1}"
+        };
+
+        for (String operation : operations) {
+            // When & Then
+            mockMvc.perform(post("/api/guest-cart/batch")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"guestCart\":\"" + token + "\",\"operations\":[" + operation + "]}"))
+                    .andExpect(status().isBadRequest());
+        }
+        verifyNoInteractions(userRepository, cartRepository, itemRepository);
+    }
+
+    // ==================== MÉTODOS AUXILIARES ====================
+
+    private GuestCartRequest createRequest(String token, CartOperation... operations) {
+        GuestCartRequest request = new GuestCartRequest();
+        request.setGuestCart(token);
+        request.setOperations(List.of(operations));
+        return request;
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.demo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.example.demo.services.GuestCartTokens;
+
+@DisplayName("GuestCartTokens Tests")
+public class GuestCartTokensTest {
+
+    private GuestCartTokens tokens;
+
+    @BeforeEach
+    void setUp() {
+        tokens = new GuestCartTokens("test-secret", 60_000, 3);
+    }
+
+    @Test
+    @DisplayName("Deve codificar e decodificar as linhas do carrinho")
+    void testEncodeAndDecode() {
+        // Given
+        Map<Long, Integer> lines = new LinkedHashMap<>();
+        lines.put(300L, 2);
+        lines.put(1L, 1_000_000);
+        lines.put(2L, 0);
+
+        // When
+        Map<Long, Integer> decoded = tokens.decode(tokens.encode(lines));
+
+        // Then
+        assertEquals(Map.of(1L, 1_000_000, 300L, 2), decoded);
+    }
+
+    @Test
+    @DisplayName("Deve recusar iniciar sem segredo configurado")
+    void testConstructor_BlankSecret() {
+        assertThrows(IllegalStateException.class, () -> new GuestCartTokens("", 60_000, 3));
+        assertThrows(IllegalStateException.class, () -> new GuestCartTokens("  ", 60_000, 3));
+    }
+
+    @Test
+    @DisplayName("Deve tratar token ausente como carrinho vazio")
+    void testDecode_Empty() {
+        assertTrue(tokens.decode(null).isEmpty());
+        assertTrue(tokens.decode("").isEmpty());
+    }
+
+    @Test
+    @DisplayName("Deve rejeitar token adulterado")
+    void testDecode_Tampered() {
+        // Given
+        String token = tokens.encode(Map.of(1L, 1));
+        String forged = tokens.encode(Map.of(1L, 50));
+        String tampered = forged.substring(0, forged.indexOf('.')) + token.substring(token.indexOf('.'));
+
+        // When & Then
+        assertThrows(IllegalArgumentException.class, () -> tokens.decode(tampered));
+    }
+
+    @Test
+    @DisplayName("Deve rejeitar token assinado com outro segredo")
+    void testDecode_OtherSecret() {
+        // Given
+        String token = new GuestCartTokens("other-secret", 60_000, 3).encode(Map.of(1L, 1));
+
+        // When & Then
+        assertThrows(IllegalArgumentException.class, () -> tokens.decode(token));
+    }
+
+    @Test
+    @DisplayName("Deve rejeitar token expirado")
+    void testDecode_Expired() {
+        // Given
+        GuestCartTokens shortLived = new GuestCartTokens("test-secret", -1_000, 3);
+        String token = shortLived.encode(Map.of(1L, 1));
+
+        // When & Then
+        assertThrows(IllegalArgumentException.class, () -> shortLived.decode(token));
+    }
+
+    @Test
+    @DisplayName("Deve limitar o número de linhas")
+    void testEncode_TooManyLines() {
+        assertThrows(IllegalArgumentException.class,
+                () -> tokens.encode(Map.of(1L, 1, 2L, 1, 3L, 1, 4L, 1)));
+    }
+
+    @Test
+    @DisplayName("Deve rejeitar linha sem item")
+    void testEncode_MissingItemId() {
+        // Given
+        Map<Long, Integer> lines = new HashMap<>();
+        lines.put(null, 1);
+
+        // When & Then
+        assertThrows(IllegalArgumentException.class, () -> tokens.encode(lines));
+        assertThrows(IllegalArgumentException.class, () -> tokens.encode(Map.of(0L, 1)));
+    }
+}
@@ -0,0 +1,215 @@
+package com.example.demo;
+
+import com.example.demo.services.IdempotencyStore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("IdempotencyStore Tests")
+class IdempotencyStoreTest {
+
+    private IdempotencyStore store(long maxBytes) {
+        return new IdempotencyStore(new ObjectMapper(), new SimpleMeterRegistry(), maxBytes, 60_000, 5_000);
+    }
+
+    @Test
+    @DisplayName("Deve executar uma vez e repetir a resposta guardada para a mesma chave")
+    void execute_ReplaysStoredResponse() {
+        // Given
+        IdempotencyStore store = store(1_000_000);
+        AtomicInteger calls = new AtomicInteger();
+
+        // When
+        ResponseEntity<Object> first = store.execute("order/submit/ana", "k1", "body",
+                () -> ResponseEntity.ok(Map.of("id", calls.incrementAndGet())));
+        ResponseEntity<Object> retry = store.execute("order/submit/ana", "k1", "body",
+                () -> ResponseEntity.ok(Map.of("id", calls.incrementAndGet())));
+
+        // Then
+        assertEquals(1, calls.get());
+        assertEquals(HttpStatus.OK, retry.getStatusCode());
+        assertEquals("{\"id\":1}", new String((byte[]) retry.getBody(), StandardCharsets.UTF_8));
+        assertArrayEquals((byte[]) first.getBody(), (byte[]) retry.getBody());
+        assertNull(first.getHeaders().getFirst(IdempotencyStore.REPLAYED_HEADER));
+        assertEquals("true", retry.getHeaders().getFirst(IdempotencyStore.REPLAYED_HEADER));
+    }
+
+    @Test
+    @DisplayName("Deve executar sempre quando não há chave")
+    void execute_WithoutKeyAlwaysRuns() {
+        // Given
+        IdempotencyStore store = store(1_000_000);
+        AtomicInteger calls = new AtomicInteger();
+
+        // When
+        store.execute("cart/addToCart/ana", null, "body", () -> ResponseEntity.ok(calls.incrementAndGet()));
+        store.execute("cart/addToCart/ana", null, "body", () -> ResponseEntity.ok(calls.incrementAndGet()));
+
+        // Then
+        assertEquals(2, calls.get());
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    @DisplayName("Deve rejeitar com 422 a chave reutilizada com outro corpo")
+    void execute_KeyReusedWithDifferentBody() {
+        // Given
+        IdempotencyStore store = store(1_000_000);
+        store.execute("cart/addToCart/ana", "k1", Map.of("quantity", 1), () -> ResponseEntity.ok("done"));
+
+        // When
+        ResponseEntity<Object> response = store.execute("cart/addToCart/ana", "k1", Map.of("quantity", 2),
+                () -> ResponseEntity.ok("again"));
+
+        // Then
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, response.getStatusCode());
+    }
+
+    @Test
+    @DisplayName("Não deve guardar erros do servidor, permitindo nova tentativa")
+    void execute_ServerErrorsAreNotStored() {
+        // Given
+        IdempotencyStore store = store(1_000_000);
+        AtomicInteger calls = new AtomicInteger();
+
+        // When
+        store.execute("order/submit/ana", "k1", "body", () -> {
+            calls.incrementAndGet();
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        });
+        ResponseEntity<Object> retry = store.execute("order/submit/ana", "k1", "body", () -> {
+            calls.incrementAndGet();
+            return ResponseEntity.ok("placed");
+        });
+
+        // Then
+        assertEquals(2, calls.get());
+        assertEquals(HttpStatus.OK, retry.getStatusCode());
+    }
+
+    @Test
+    @DisplayName("Deve fazer a repetição concorrente esperar pela original em andamento")
+    void execute_CoalescesInFlightDuplicates() throws Exception {
+        // Given
+        IdempotencyStore store = store(1_000_000);
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            // When
+            Future<ResponseEntity<Object>> original = executor.submit(() ->
+                    store.execute("order/submit/ana", "k1", "body", () -> {
+                        started.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return ResponseEntity.ok(calls.incrementAndGet());
+                    }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<ResponseEntity<Object>> duplicate = executor.submit(() ->
+                    store.execute("order/submit/ana", "k1", "body",
+                            () -> ResponseEntity.ok(calls.incrementAndGet())));
+            Thread.sleep(100);
+            assertFalse(duplicate.isDone());
+            release.countDown();
+
+            // Then
+            assertEquals(HttpStatus.OK, original.get(5, TimeUnit.SECONDS).getStatusCode());
+            ResponseEntity<Object> replayed = duplicate.get(5, TimeUnit.SECONDS);
+            assertEquals("1", new String((byte[]) replayed.getBody(), StandardCharsets.UTF_8));
+            assertEquals(1, calls.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("Deve descartar as chaves mais antigas quando as respostas passam do limite de bytes")
+    void execute_EvictsOldestKeysOverByteBudget() {
+        // Given - o tamanho de uma entrada, medido numa loja sem aperto
+        String body = "x".repeat(1_000);
+        IdempotencyStore measuring = store(1_000_000);
+        measuring.execute("user/create", "a", "a", () -> ResponseEntity.ok(body));
+        long entryBytes = measuring.bytes();
+        IdempotencyStore store = store(entryBytes * 2 + entryBytes / 2);
+        AtomicInteger calls = new AtomicInteger();
+
+        // When
+        for (String key : new String[] {"a", "b", "c"}) {
+            store.execute("user/create", key, key, () -> {
+                calls.incrementAndGet();
+                return ResponseEntity.ok(body);
+            });
+        }
+        store.execute("user/create", "a", "a", () -> {
+            calls.incrementAndGet();
+            return ResponseEntity.ok(body);
+        });
+
+        // Then - "a" foi descartada e executou de novo
+        assertTrue(entryBytes > body.length());
+        assertEquals(4, calls.get());
+        assertEquals(2, store.size());
+        assertTrue(store.bytes() <= entryBytes * 2 + entryBytes / 2);
+    }
+
+    @Test
+    @DisplayName("Não deve descartar a chave de uma requisição ainda em andamento")
+    void execute_KeepsInFlightKeysOverBudget() throws Exception {
+        // Given - um limite que nenhuma resposta cabe
+        IdempotencyStore store = store(1);
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            Future<ResponseEntity<Object>> original = executor.submit(() ->
+                    store.execute("order/submit/ana", "k1", "body", () -> {
+                        started.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return ResponseEntity.ok(calls.incrementAndGet());
+                    }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            // When - outras chaves passam pela loja enquanto k1 roda
+            store.execute("order/submit/ana", "k2", "body", () -> ResponseEntity.ok("other"));
+            store.execute("order/submit/ana", "k3", "body", () -> ResponseEntity.ok("other"));
+            Future<ResponseEntity<Object>> duplicate = executor.submit(() ->
+                    store.execute("order/submit/ana", "k1", "body",
+                            () -> ResponseEntity.ok(calls.incrementAndGet())));
+            Thread.sleep(100);
+            assertFalse(duplicate.isDone());
+            release.countDown();
+
+            // Then
+            assertEquals(HttpStatus.OK, original.get(5, TimeUnit.SECONDS).getStatusCode());
+            assertEquals("1", new String((byte[]) duplicate.get(5, TimeUnit.SECONDS).getBody(), StandardCharsets.UTF_8));
+            assertEquals(1, calls.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.demo;
 
 import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.Money;
 import com.example.demo.model.persistence.repositories.ItemRepository;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
@@ -15,7 +16,6 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 
-import java.math.BigDecimal;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -54,9 +54,9 @@ class ItemControllerTest {
     void getItems_Success() throws Exception {
         // Given
         List<Item> items = Arrays.asList(
-                createTestItem(1L, "Laptop", "High-performance laptop", new BigDecimal("999.99")),
-                createTestItem(2L, "Mouse", "Wireless mouse", new BigDecimal("29.99")),
-                createTestItem(3L, "Keyboard", "Mechanical keyboard", new BigDecimal("79.99"))
+                createTestItem(1L, "Laptop", "High-performance laptop", Money.of("999.99")),
+                createTestItem(2L, "Mouse", "Wireless mouse", Money.of("29.99")),
+                createTestItem(3L, "Keyboard", "Mechanical keyboard", Money.of("79.99"))
         );
 
         when(itemRepository.findAll()).thenReturn(items);
@@ -98,7 +98,7 @@ class ItemControllerTest {
     void getItems_WithZeroPrice() throws Exception {
         // Given
         List<Item> items = Arrays.asList(
-                createTestItem(1L, "Free Item", "Free sample", BigDecimal.ZERO)
+                createTestItem(1L, "Free Item", "Free sample", Money.ZERO)
         );
 
         when(itemRepository.findAll()).thenReturn(items);
@@ -119,7 +119,7 @@ class ItemControllerTest {
     @DisplayName("Buscar item por ID - sucesso")
     void getItemById_Success() throws Exception {
         // Given
-        Item item = createTestItem(1L, "Laptop", "High-performance laptop", new BigDecimal("999.99"));
+        Item item = createTestItem(1L, "Laptop", "High-performance laptop", Money.of("999.99"));
         when(itemRepository.findById(1L)).thenReturn(Optional.of(item));
 
         // When & Then
@@ -194,8 +194,8 @@ class ItemControllerTest {
     void getItemsByName_Success() throws Exception {
         // Given
         List<Item> items = Arrays.asList(
-                createTestItem(1L, "Laptop", "Gaming laptop", new BigDecimal("1299.99")),
-                createTestItem(2L, "Laptop", "Business laptop", new BigDecimal("899.99"))
+                createTestItem(1L, "Laptop", "Gaming laptop", Money.of("1299.99")),
+                createTestItem(2L, "Laptop", "Business laptop", Money.of("899.99"))
         );
 
         when(itemRepository.findByName("Laptop")).thenReturn(items);
@@ -218,7 +218,7 @@ class ItemControllerTest {
     void getItemsByName_SingleItem() throws Exception {
         // Given
         List<Item> items = Arrays.asList(
-                createTestItem(1L, "Mouse", "Wireless mouse", new BigDecimal("29.99"))
+                createTestItem(1L, "Mouse", "Wireless mouse", Money.of("29.99"))
         );
 
         when(itemRepository.findByName("Mouse")).thenReturn(items);
@@ -278,7 +278,7 @@ class ItemControllerTest {
     void getItemsByName_NameWithSpaces() throws Exception {
         // Given
         List<Item> items = Arrays.asList(
-                createTestItem(1L, "Gaming Mouse", "High-DPI gaming mouse", new BigDecimal("59.99"))
+                createTestItem(1L, "Gaming Mouse", "High-DPI gaming mouse", Money.of("59.99"))
         );
 
         when(itemRepository.findByName("Gaming Mouse")).thenReturn(items);
@@ -298,7 +298,7 @@ class ItemControllerTest {
     void getItemsByName_NameWithSpecialCharacters() throws Exception {
         // Given
         List<Item> items = Arrays.asList(
-                createTestItem(1L, "USB-C Cable", "High-speed USB-C cable", new BigDecimal("19.99"))
+                createTestItem(1L, "USB-C Cable", "High-speed USB-C cable", Money.of("19.99"))
         );
 
         when(itemRepository.findByName("USB-C Cable")).thenReturn(items);
@@ -365,7 +365,7 @@ class ItemControllerTest {
 
     // ==================== MÉTODOS AUXILIARES ====================
 
-    private Item createTestItem(Long id, String name, String description, BigDecimal price) {
+    private Item createTestItem(Long id, String name, String description, Money price) {
         Item item = new Item();
         item.setId(id);
         item.setName(name);
@@ -0,0 +1,95 @@
+package com.example.demo;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.Money;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compara a manutenção do total do carrinho com {@link BigDecimal} (o
+ * caminho antigo: {@code total.add(price.multiply(quantity))} por unidade)
+ * com centavos em {@code long}, usados agora por {@link Money} e pelas
+ * entidades. Rode com {@code -prof gc} para ver a alocação por operação.
+ *
+ * Executar com: {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.example.demo.MoneyBenchmark}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoneyBenchmark {
+
+    @Param({"1000"})
+    public int lines;
+
+    private BigDecimal[] decimalPrices;
+    private long[] minorPrices;
+    private Item[] items;
+
+    @Setup
+    public void setUp() {
+        decimalPrices = new BigDecimal[lines];
+        minorPrices = new long[lines];
+        items = new Item[lines];
+        for (int i = 0; i < lines; i++) {
+            Money price = Money.ofMinor(99 + i * 37L % 10_000);
+            decimalPrices[i] = price.toBigDecimal();
+            minorPrices[i] = price.minorUnits();
+            items[i] = new Item();
+            items[i].setId((long) i);
+            items[i].setPrice(price);
+        }
+    }
+
+    @Benchmark
+    public BigDecimal bigDecimalTotal() {
+        BigDecimal total = new BigDecimal(0);
+        for (int i = 0; i < lines; i++) {
+            total = total.add(decimalPrices[i].multiply(BigDecimal.valueOf(1 + (i & 3))));
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long minorUnitsTotal() {
+        long total = 0;
+        for (int i = 0; i < lines; i++) {
+            total = Math.addExact(total, Math.multiplyExact(minorPrices[i], 1 + (i & 3)));
+        }
+        return total;
+    }
+
+    @Benchmark
+    public Money cartAddItem() {
+        Cart cart = new Cart();
+        for (int i = 0; i < lines; i++) {
+            cart.addItem(items[i], 1 + (i & 3));
+        }
+        return cart.getTotal();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(MoneyBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.demo;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.Money;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.model.persistence.repositories.CartRepository;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.requests.CartOperation;
+import com.example.demo.model.responses.OrderSummary;
+import com.example.demo.services.CartService;
+import com.example.demo.services.CheckoutService;
+import com.example.demo.services.OrderArchive;
+import com.example.demo.services.OrderHistoryExporter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "order.archive.enabled=true",
+        "order.archive.min-age-ms=3600000",
+        "order.archive.interval-ms=3600000",
+        "order.archive.batch-size=2"
+})
+class OrderArchiveTest {
+
+    @TempDir
+    static Path directory;
+
+    @DynamicPropertySource
+    static void archiveDirectory(DynamicPropertyRegistry registry) {
+        registry.add("order.archive.dir", () -> directory.toString());
+    }
+
+    @Autowired
+    private OrderArchive orderArchive;
+
+    @Autowired
+    private OrderHistoryExporter orderHistoryExporter;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private CheckoutService checkoutService;
+
+    @Autowired
+    private CartService cartService;
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private User user;
+    private Cart cart;
+
+    @BeforeEach
+    void setUp() {
+        user = TestUsers.createWithCart(userRepository, "archive");
+        cart = user.getCart();
+    }
+
+    @Test
+    @DisplayName("Deve mover pedidos antigos para o arquivo e devolvê-los com as linhas")
+    void archive_MovesOldOrdersOutOfTables() {
+        // Given
+        List<Long> old = List.of(placeOrder(1), placeOrder(2), placeOrder(3));
+        Long recent = placeOrder(4);
+        backdate(old);
+
+        // When
+        orderArchive.archive();
+
+        // Then
+        assertEquals(0, countRows("select count(*) from user_order where user_id = ? and id <> " + recent));
+        assertEquals(0, countRows("select count(*) from user_order_line l join user_order o on o.id = l.order_id"
+                + " where o.user_id = ? and o.id <> " + recent));
+        List<OrderSummary> history = orderArchive.merge(user.getId(), List.of(), null, null, null, 10);
+        assertEquals(List.of(old.get(2), old.get(1), old.get(0)), history.stream().map(OrderSummary::getId).toList());
+        assertEquals(Money.of("5.98"), history.get(1).getTotal());
+        assertEquals("Round Widget", history.get(1).getLines().get(0).getName());
+        assertEquals(2, history.get(1).getLines().get(0).getQuantity());
+    }
+
+    @Test
+    @DisplayName("Deve intercalar pedidos arquivados com os da tabela respeitando cursor e limite")
+    void merge_InterleavesWithHotOrders() {
+        // Given
+        List<Long> old = List.of(placeOrder(1), placeOrder(2));
+        backdate(old);
+        orderArchive.archive();
+        OrderSummary hot = new OrderSummary(old.get(1) + 100, 299, null);
+
+        // When
+        List<OrderSummary> firstPage = orderArchive.merge(user.getId(), List.of(hot), null, null, null, 2);
+        List<OrderSummary> nextPage = orderArchive.merge(user.getId(), List.of(), old.get(1), null, null, 2);
+
+        // Then
+        assertEquals(List.of(hot.getId(), old.get(1)), firstPage.stream().map(OrderSummary::getId).toList());
+        assertEquals(List.of(old.get(0)), nextPage.stream().map(OrderSummary::getId).toList());
+    }
+
+    @Test
+    @DisplayName("Deve recarregar o índice após reinício e descartar a cauda incompleta")
+    void open_RecoversIndexAndCutsTornTail() throws Exception {
+        // Given
+        List<Long> old = List.of(placeOrder(1), placeOrder(2));
+        backdate(old);
+        orderArchive.archive();
+        try (var files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.write(file, new byte[] {1, 2, 3}, StandardOpenOption.APPEND);
+            }
+        }
+
+        // When
+        OrderArchive reopened = new OrderArchive(transactionManager, new SimpleMeterRegistry(),
+                directory.toString(), 3600000, 2, 1024);
+        reopened.open();
+
+        // Then
+        List<OrderSummary> history = reopened.merge(user.getId(), List.of(), null, null, null, 10);
+        assertEquals(List.of(old.get(1), old.get(0)), history.stream().map(OrderSummary::getId).toList());
+        reopened.close();
+    }
+
+    @Test
+    @DisplayName("Exportação inclui pedidos arquivados, em ordem e sem duplicatas")
+    void export_IncludesArchivedOrders() throws Exception {
+        // Given - três pedidos em dois blocos, um ainda na tabela
+        List<Long> old = List.of(placeOrder(1), placeOrder(2), placeOrder(3));
+        Long recent = placeOrder(4);
+        backdate(old);
+        orderArchive.archive();
+        // a crash between writing a block and deleting the rows leaves the order in both places
+        jdbcTemplate.update("insert into user_order (id, user_id, total, created_at) values (?, ?, 2.99, current_timestamp)",
+                old.get(0), user.getId());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // When
+        long written = orderHistoryExporter.export(user, out);
+
+        // Then
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(4, written);
+        assertEquals(4, lines.length);
+        List<Long> ids = new ArrayList<>();
+        for (String line : lines) {
+            ids.add(objectMapper.readTree(line).get("id").asLong());
+        }
+        assertEquals(List.of(old.get(0), old.get(1), old.get(2), recent), ids);
+        JsonNode archived = objectMapper.readTree(lines[1]);
+        assertEquals(user.getUsername(), archived.get("user").get("username").asText());
+        assertEquals("Round Widget", archived.get("lines").get(0).get("name").asText());
+        assertEquals(2, archived.get("lines").get(0).get("quantity").asInt());
+    }
+
+    private Long placeOrder(int quantity) {
+        Item roundWidget = itemRepository.findById(1L).orElseThrow();
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> cartService.apply(
+                cartRepository.findById(cart.getId()).orElseThrow(),
+                List.of(new CartOperation(CartOperation.Type.ADD, 1L, quantity)),
+                Map.of(1L, roundWidget)));
+        UserOrder order = checkoutService.checkout(user, cart.getId());
+        return order.getId();
+    }
+
+    private void backdate(List<Long> orderIds) {
+        for (Long orderId : orderIds) {
+            jdbcTemplate.update("update user_order set created_at = dateadd('HOUR', -2, created_at) where id = ?", orderId);
+        }
+    }
+
+    private int countRows(String sql) {
+        return jdbcTemplate.queryForObject(sql, Integer.class, user.getId());
+    }
+}
@@ -2,10 +2,16 @@ package com.example.demo;
 
 import com.example.demo.model.persistence.Cart;
 import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.OrderLine;
+import com.example.demo.model.persistence.Money;
 import com.example.demo.model.persistence.User;
 import com.example.demo.model.persistence.UserOrder;
 import com.example.demo.model.persistence.repositories.OrderRepository;
 import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.responses.OrderStatus;
+import com.example.demo.model.responses.OrderSummary;
+import com.example.demo.services.CheckoutService;
+import com.example.demo.services.OrderSubmissionQueue;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -14,18 +20,24 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureWebMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.Limit;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 
-import java.math.BigDecimal;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
@@ -44,6 +56,14 @@ class OrderControllerTest {
     @MockBean
     private OrderRepository orderRepository;
 
+    @MockBean
+    private OrderSubmissionQueue orderSubmissionQueue;
+
+    @MockBean
+    private CheckoutService checkoutService;
+
+    private static final Instant PLACED_AT = Instant.parse("2024-05-01T10:15:30Z");
+
     private MockMvc mockMvc;
     private ObjectMapper objectMapper;
 
@@ -63,24 +83,24 @@ class OrderControllerTest {
         User user = createTestUserWithItems();
 
         // Simular o que o UserOrder.createFromCart() retornaria
-        UserOrder mockOrder = new UserOrder();
+        UserOrder mockOrder = UserOrder.createFromCart(user.getCart());
         mockOrder.setId(1L);
         mockOrder.setUser(user);
-        mockOrder.setItems(user.getCart().getItems());
-        mockOrder.setTotal(user.getCart().getTotal());
 
         when(userRepository.findByUsername("testuser")).thenReturn(user);
-        when(orderRepository.save(any(UserOrder.class))).thenReturn(mockOrder);
+        when(checkoutService.checkout(user, user.getCart().getId())).thenReturn(mockOrder);
 
         // When & Then
         mockMvc.perform(post("/api/order/submit/testuser"))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.id").value(1))
                 .andExpect(jsonPath("$.user.username").value("testuser"))
-                .andExpect(jsonPath("$.items").isArray());
+                .andExpect(jsonPath("$.lines.length()").value(2))
+                .andExpect(jsonPath("$.lines[0].name").value("Laptop"))
+                .andExpect(jsonPath("$.lines[0].unitPrice").value(19.99));
 
         verify(userRepository).findByUsername("testuser");
-        verify(orderRepository).save(any(UserOrder.class));
+        verify(checkoutService).checkout(user, user.getCart().getId());
     }
 
     @Test
@@ -95,7 +115,7 @@ class OrderControllerTest {
                 .andExpect(status().isNotFound());
 
         verify(userRepository).findByUsername("nonexistent");
-        verify(orderRepository, never()).save(any(UserOrder.class));
+        verify(checkoutService, never()).checkout(any(), any());
     }
 
     @Test
@@ -105,24 +125,88 @@ class OrderControllerTest {
         // Given
         User user = createTestUserWithEmptyCart();
 
-        UserOrder mockOrder = new UserOrder();
-        mockOrder.setId(1L);
-        mockOrder.setUser(user);
-        mockOrder.setItems(new ArrayList<>());
-        mockOrder.setTotal(BigDecimal.ZERO);
-
         when(userRepository.findByUsername("testuser")).thenReturn(user);
-        when(orderRepository.save(any(UserOrder.class))).thenReturn(mockOrder);
 
         // When & Then
         mockMvc.perform(post("/api/order/submit/testuser"))
-                .andExpect(status().isOk())
-                .andExpect(jsonPath("$.id").value(1))
-                .andExpect(jsonPath("$.items").isArray())
-                .andExpect(jsonPath("$.total").value(0));
+                .andExpect(status().isBadRequest());
 
         verify(userRepository).findByUsername("testuser");
-        verify(orderRepository).save(any(UserOrder.class));
+        verify(checkoutService, never()).checkout(any(), any());
+    }
+
+    @Test
+    @WithMockUser
+    @DisplayName("Submeter pedido assíncrono - retorna 202 com handle para consulta")
+    void submit_RespondAsync() throws Exception {
+        // Given
+        User user = createTestUserWithItems();
+        OrderStatus pending = new OrderStatus("abc-123", OrderStatus.State.PENDING, null);
+
+        when(userRepository.findByUsername("testuser")).thenReturn(user);
+        when(orderSubmissionQueue.submit(any(UserOrder.class), any(), anyLong())).thenReturn(pending);
+
+        // When & Then
+        mockMvc.perform(post("/api/order/submit/testuser")
+                        .header("Prefer", "respond-async"))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", "http://localhost/api/order/status/abc-123"))
+                .andExpect(header().string("Preference-Applied", "respond-async"))
+                .andExpect(jsonPath("$.handle").value("abc-123"))
+                .andExpect(jsonPath("$.state").value("PENDING"))
+                .andExpect(jsonPath("$.orderId").doesNotExist());
+
+        verify(orderSubmissionQueue).submit(argThat(order -> order.getUser() == user && order.getLines().size() == 2),
+                eq(user.getCart().getId()), anyLong());
+        verify(checkoutService, never()).checkout(any(), any());
+    }
+
+    @Test
+    @WithMockUser
+    @DisplayName("Submeter pedido assíncrono - fila cheia retorna 503")
+    void submit_RespondAsyncQueueFull() throws Exception {
+        // Given
+        User user = createTestUserWithItems();
+
+        when(userRepository.findByUsername("testuser")).thenReturn(user);
+        when(orderSubmissionQueue.submit(any(UserOrder.class), any(), anyLong())).thenReturn(null);
+
+        // When & Then
+        mockMvc.perform(post("/api/order/submit/testuser")
+                        .header("Prefer", "respond-async"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().exists("Retry-After"));
+
+        verify(checkoutService, never()).checkout(any(), any());
+    }
+
+    // ==================== TESTES PARA getSubmissionStatus() ====================
+
+    @Test
+    @WithMockUser
+    @DisplayName("Consultar pedido assíncrono - concluído com id do pedido")
+    void getSubmissionStatus_Completed() throws Exception {
+        // Given
+        when(orderSubmissionQueue.status("abc-123"))
+                .thenReturn(new OrderStatus("abc-123", OrderStatus.State.COMPLETED, 42L));
+
+        // When & Then
+        mockMvc.perform(get("/api/order/status/abc-123"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.state").value("COMPLETED"))
+                .andExpect(jsonPath("$.orderId").value(42));
+    }
+
+    @Test
+    @WithMockUser
+    @DisplayName("Consultar pedido assíncrono - handle desconhecido")
+    void getSubmissionStatus_UnknownHandle() throws Exception {
+        // Given
+        when(orderSubmissionQueue.status("nope")).thenReturn(null);
+
+        // When & Then
+        mockMvc.perform(get("/api/order/status/nope"))
+                .andExpect(status().isNotFound());
     }
 
     // ==================== TESTES PARA getOrdersForUser() ====================
@@ -134,19 +218,28 @@ class OrderControllerTest {
         // Given
         User user = createTestUser();
         List<UserOrder> orders = createTestOrderHistory(user);
+        List<OrderLine> lines = new ArrayList<>(orders.get(0).getLines());
+        lines.addAll(orders.get(1).getLines());
 
         when(userRepository.findByUsername("testuser")).thenReturn(user);
-        when(orderRepository.findByUser(user)).thenReturn(orders);
+        when(orderRepository.findSummariesByUser(eq(user), any(Limit.class)))
+                .thenReturn(List.of(new OrderSummary(1L, 3998, PLACED_AT), new OrderSummary(2L, 1999, PLACED_AT)));
+        when(orderRepository.findLinesByOrderIds(Set.of(1L, 2L))).thenReturn(lines);
 
         // When & Then
         mockMvc.perform(get("/api/order/history/testuser"))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.length()").value(2))
                 .andExpect(jsonPath("$[0].id").value(1))
-                .andExpect(jsonPath("$[1].id").value(2));
+                .andExpect(jsonPath("$[0].total").value(39.98))
+                .andExpect(jsonPath("$[0].lines.length()").value(2))
+                .andExpect(jsonPath("$[0].user").doesNotExist())
+                .andExpect(jsonPath("$[1].id").value(2))
+                .andExpect(jsonPath("$[1].lines[0].name").value("Laptop"));
 
         verify(userRepository).findByUsername("testuser");
-        verify(orderRepository).findByUser(user);
+        verify(orderRepository).findSummariesByUser(user, Limit.of(51));
+        verify(orderRepository).findLinesByOrderIds(Set.of(1L, 2L));
     }
 
     @Test
@@ -161,7 +254,7 @@ class OrderControllerTest {
                 .andExpect(status().isNotFound());
 
         verify(userRepository).findByUsername("nonexistent");
-        verify(orderRepository, never()).findByUser(any(User.class));
+        verify(orderRepository, never()).findSummariesByUser(any(User.class), any(Limit.class));
     }
 
     @Test
@@ -172,7 +265,7 @@ class OrderControllerTest {
         User user = createTestUser();
 
         when(userRepository.findByUsername("testuser")).thenReturn(user);
-        when(orderRepository.findByUser(user)).thenReturn(Collections.emptyList());
+        when(orderRepository.findSummariesByUser(eq(user), any(Limit.class))).thenReturn(Collections.emptyList());
 
         // When & Then
         mockMvc.perform(get("/api/order/history/testuser"))
@@ -180,7 +273,159 @@ class OrderControllerTest {
                 .andExpect(jsonPath("$.length()").value(0));
 
         verify(userRepository).findByUsername("testuser");
-        verify(orderRepository).findByUser(user);
+        verify(orderRepository).findSummariesByUser(user, Limit.of(51));
+    }
+
+    @Test
+    @WithMockUser
+    @DisplayName("Obter histórico de pedidos paginado - retorna link para a próxima página")
+    void getOrdersForUser_FirstPageWithNextLink() throws Exception {
+        // Given
+        User user = createTestUser();
+        List<OrderSummary> orders = new ArrayList<>();
+        for (long id = 30; id > 27; id--) {
+            orders.add(new OrderSummary(id, 0, PLACED_AT));
+        }
+
+        when(userRepository.findByUsername("testuser")).thenReturn(user);
+        when(orderRepository.findSummariesByUser(user, Limit.of(3))).thenReturn(orders);
+
+        // When & Then
+        mockMvc.perform(get("/api/order/history/testuser").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].id").value(30))
+                .andExpect(jsonPath("$[1].id").value(29))
+                .andExpect(header().string("Link",
+                        "<http://localhost/api/order/history/testuser?before=29&limit=2>; rel=\"next\""));
+    }
+
+    @Test
+    @WithMockUser
+    @DisplayName("Obter histórico de pedidos com cursor - última página sem link")
+    void getOrdersForUser_LastPageWithCursor() throws Exception {
+        // Given
+        User user = createTestUser();
+        OrderSummary order = new OrderSummary(5L, 0, PLACED_AT);
+
+        when(userRepository.findByUsername("testuser")).thenReturn(user);
+        when(orderRepository.findSummariesByUserBefore(user, 29L, Limit.of(3))).thenReturn(List.of(order));
+
+        // When & Then
+        mockMvc.perform(get("/api/order/history/testuser").param("before", "29").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].id").value(5))
+                .andExpect(header().doesNotExist("Link"));
+
+        verify(orderRepository, never()).findSummariesByUser(any(), any());
+    }
+
+    @Test
+    @WithMockUser
+    @DisplayName("Obter histórico de pedidos - tamanho de página acima do limite é reduzido")
+    void getOrdersForUser_LimitCapped() throws Exception {
+        // Given
+        User user = createTestUser();
+
+        when(userRepository.findByUsername("testuser")).thenReturn(user);
+        when(orderRepository.findSummariesByUser(eq(user), any(Limit.class))).thenReturn(Collections.emptyList());
+
+        // When & Then
+        mockMvc.perform(get("/api/order/history/testuser").param("limit", "100000"))
+                .andExpect(status().isOk());
+
+        verify(orderRepository).findSummariesByUser(user, Limit.of(201));
+    }
+
+    @Test
+    @WithMockUser
+    @DisplayName("Obter histórico de pedidos - cursor ou limite inválido")
+    void getOrdersForUser_InvalidPage() throws Exception {
+        // When & Then
+        mockMvc.perform(get("/api/order/history/testuser").param("limit", "0"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/order/history/testuser").param("before", "-1"))
+                .andExpect(status().isBadRequest());
+
+        verify(userRepository, never()).findByUsername(any());
+    }
+
+    @Test
+    @WithMockUser
+    @DisplayName("Obter histórico de pedidos por período - usa a consulta por data de criação")
+    void getOrdersForUser_TimeRange() throws Exception {
+        // Given
+        User user = createTestUser();
+        Instant from = Instant.parse("2024-05-01T00:00:00Z");
+        Instant to = Instant.parse("2024-05-02T00:00:00Z");
+
+        when(userRepository.findByUsername("testuser")).thenReturn(user);
+        when(orderRepository.findSummariesByUserCreatedBetween(user, from, to, Limit.of(3)))
+                .thenReturn(List.of(new OrderSummary(9L, 1999, PLACED_AT), new OrderSummary(8L, 1999, PLACED_AT),
+                        new OrderSummary(7L, 1999, PLACED_AT)));
+
+        // When & Then
+        mockMvc.perform(get("/api/order/history/testuser?from=2024-05-01T00:00:00Z&to=2024-05-02T00:00:00Z&limit=2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].createdAt").value("2024-05-01T10:15:30Z"))
+                .andExpect(header().string("Link", "<http://localhost/api/order/history/testuser"
+                        + "?from=2024-05-01T00:00:00Z&to=2024-05-02T00:00:00Z&before=8&limit=2>; rel=\"next\""));
+
+        verify(orderRepository, never()).findSummariesByUser(any(), any());
+    }
+
+    @Test
+    @WithMockUser
+    @DisplayName("Obter histórico de pedidos por período - período vazio")
+    void getOrdersForUser_EmptyTimeRange() throws Exception {
+        // When & Then
+        mockMvc.perform(get("/api/order/history/testuser")
+                        .param("from", "2024-05-02T00:00:00Z")
+                        .param("to", "2024-05-01T00:00:00Z"))
+                .andExpect(status().isBadRequest());
+
+        verify(userRepository, never()).findByUsername(any());
+    }
+
+    // ==================== TESTES PARA getRevenue() ====================
+
+    @Test
+    @WithMockUser
+    @DisplayName("Obter receita - granularidade desconhecida")
+    void getRevenue_UnknownGranularity() throws Exception {
+        // When & Then
+        mockMvc.perform(get("/api/order/revenue").param("granularity", "week"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @WithMockUser
+    @DisplayName("Obter receita - período com buckets demais")
+    void getRevenue_TooManyBuckets() throws Exception {
+        // When & Then
+        mockMvc.perform(get("/api/order/revenue")
+                        .param("granularity", "minute")
+                        .param("from", "2000-01-01T00:00:00Z")
+                        .param("to", "2024-01-01T00:00:00Z"))
+                .andExpect(status().isBadRequest());
+    }
+
+    // ==================== TESTES PARA exportOrdersForUser() ====================
+
+    @Test
+    @WithMockUser
+    @DisplayName("Exportar histórico de pedidos - usuário não encontrado")
+    void exportOrdersForUser_UserNotFound() throws Exception {
+        // Given
+        when(userRepository.findByUsername("nonexistent")).thenReturn(null);
+
+        // When & Then
+        mockMvc.perform(get("/api/order/history/nonexistent/export"))
+                .andExpect(status().isNotFound());
+
+        verify(orderRepository, never()).streamByUser(any());
     }
 
     // ==================== TESTES DE SEGURANÇA ====================
@@ -193,7 +438,7 @@ class OrderControllerTest {
                 .andExpect(status().isUnauthorized());
 
         verify(userRepository, never()).findByUsername(any());
-        verify(orderRepository, never()).save(any());
+        verify(checkoutService, never()).checkout(any(), any());
     }
 
     @Test
@@ -204,7 +449,7 @@ class OrderControllerTest {
                 .andExpect(status().isUnauthorized());
 
         verify(userRepository, never()).findByUsername(any());
-        verify(orderRepository, never()).findByUser(any());
+        verify(orderRepository, never()).findSummariesByUser(any(), any());
     }
 
     // ==================== MÉTODOS AUXILIARES ====================
@@ -222,8 +467,7 @@ class OrderControllerTest {
 
         Cart cart = new Cart();
         cart.setId(1L);
-        cart.setItems(createTestItems());
-        cart.setTotal(new BigDecimal("39.98"));
+        createTestItems().forEach(cart::addItem);
         cart.setUser(user);
         user.setCart(cart);
 
@@ -235,8 +479,7 @@ class OrderControllerTest {
 
         Cart cart = new Cart();
         cart.setId(1L);
-        cart.setItems(new ArrayList<>());
-        cart.setTotal(BigDecimal.ZERO);
+        cart.setTotal(Money.ZERO);
         cart.setUser(user);
         user.setCart(cart);
 
@@ -248,13 +491,13 @@ class OrderControllerTest {
         item1.setId(1L);
         item1.setName("Laptop");
         item1.setDescription("Gaming laptop");
-        item1.setPrice(new BigDecimal("19.99"));
+        item1.setPrice(Money.of("19.99"));
 
         Item item2 = new Item();
         item2.setId(2L);
         item2.setName("Mouse");
         item2.setDescription("Gaming mouse");
-        item2.setPrice(new BigDecimal("19.99"));
+        item2.setPrice(Money.of("19.99"));
 
         return Arrays.asList(item1, item2);
     }
@@ -263,14 +506,14 @@ class OrderControllerTest {
         UserOrder order1 = new UserOrder();
         order1.setId(1L);
         order1.setUser(user);
-        order1.setItems(createTestItems());
-        order1.setTotal(new BigDecimal("39.98"));
+        order1.setLines(createTestItems().stream().map(item -> new OrderLine(order1, item, 1)).toList());
+        order1.setTotal(Money.of("39.98"));
 
         UserOrder order2 = new UserOrder();
         order2.setId(2L);
         order2.setUser(user);
-        order2.setItems(Arrays.asList(createTestItems().get(0)));
-        order2.setTotal(new BigDecimal("19.99"));
+        order2.setLines(List.of(new OrderLine(order2, createTestItems().get(0), 1)));
+        order2.setTotal(Money.of("19.99"));
 
         return Arrays.asList(order1, order2);
     }
@@ -0,0 +1,138 @@
+package com.example.demo;
+
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.services.OrderHistoryExporter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.SessionStatistics;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class OrderHistoryExportTest {
+
+    private static final int ORDERS = 250;
+
+    @Autowired
+    private OrderHistoryExporter orderHistoryExporter;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        user = TestUsers.createWithCart(userRepository, "export");
+    }
+
+    @Test
+    @DisplayName("Exportar histórico mantém o contexto de persistência limitado e carrega as linhas em lotes")
+    void export_BoundedPersistenceContext() throws Exception {
+        // Given
+        insertOrders(ORDERS);
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        ProbingOutputStream out = new ProbingOutputStream();
+
+        // When
+        long written = orderHistoryExporter.export(user, out);
+
+        // Then - um lote de pedidos com suas linhas, nunca o histórico inteiro
+        assertEquals(ORDERS, written);
+        assertTrue(out.maxManaged > 0, "the persistence context was never sampled");
+        assertTrue(out.maxManaged <= UserOrder.LINE_BATCH_SIZE * 3 + 10,
+                "up to " + out.maxManaged + " entities were managed at once");
+        assertTrue(statistics.getPrepareStatementCount() < ORDERS / 10,
+                "export took " + statistics.getPrepareStatementCount() + " statements");
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(ORDERS, lines.length);
+        JsonNode first = objectMapper.readTree(lines[0]);
+        JsonNode last = objectMapper.readTree(lines[ORDERS - 1]);
+        assertTrue(first.get("id").asLong() < last.get("id").asLong());
+        assertEquals(2, first.get("lines").size());
+        assertEquals(2, last.get("lines").size());
+    }
+
+    // ==================== MÉTODOS AUXILIARES ====================
+
+    private void insertOrders(int count) {
+        Timestamp createdAt = Timestamp.from(Instant.parse("2024-05-01T10:15:30Z"));
+        jdbcTemplate.batchUpdate("insert into user_order (user_id, total, created_at) values (?, ?, ?)",
+                Collections.nCopies(count, user.getId()), 100, (statement, userId) -> {
+                    statement.setLong(1, userId);
+                    statement.setBigDecimal(2, new BigDecimal("7.97"));
+                    statement.setTimestamp(3, createdAt);
+                });
+        List<Long> orderIds = jdbcTemplate.queryForList("select id from user_order where user_id = ?", Long.class,
+                user.getId());
+        jdbcTemplate.batchUpdate("insert into user_order_line (order_id, item_id, name, unit_price, quantity, line_total)"
+                        + " values (?, 1, 'Round Widget', 2.99, 2, 5.98), (?, 2, 'Square Widget', 1.99, 1, 1.99)",
+                orderIds, 100, (statement, orderId) -> {
+                    statement.setLong(1, orderId);
+                    statement.setLong(2, orderId);
+                });
+    }
+
+    /**
+     * Records, on every write, how many entities the exporter's persistence
+     * context holds. Writes happen inside the export transaction, so the
+     * shared entity manager resolves to the exporter's session.
+     */
+    private class ProbingOutputStream extends ByteArrayOutputStream {
+
+        private int maxManaged;
+
+        @Override
+        public synchronized void write(int b) {
+            sample();
+            super.write(b);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            sample();
+            super.write(b, off, len);
+        }
+
+        private void sample() {
+            SessionStatistics session = entityManager.unwrap(Session.class).getStatistics();
+            maxManaged = Math.max(maxManaged, session.getEntityCount());
+        }
+    }
+}
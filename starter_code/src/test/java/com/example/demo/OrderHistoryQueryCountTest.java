@@ -0,0 +1,118 @@
+package com.example.demo;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.repositories.CartRepository;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.requests.CartOperation;
+import com.example.demo.services.CartService;
+import com.example.demo.services.CheckoutService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureWebMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureWebMvc
+class OrderHistoryQueryCountTest {
+
+    @Autowired
+    private WebApplicationContext webApplicationContext;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private CheckoutService checkoutService;
+
+    @Autowired
+    private CartService cartService;
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private MockMvc mockMvc;
+    private Statistics statistics;
+    private User user;
+    private Cart cart;
+
+    @BeforeEach
+    void setUp() {
+        mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        user = TestUsers.createWithCart(userRepository, "history");
+        cart = user.getCart();
+    }
+
+    @Test
+    @WithMockUser
+    @DisplayName("Histórico de pedidos usa o mesmo número de consultas com 1 ou com 10 pedidos")
+    void getOrdersForUser_QueryCountDoesNotGrowWithOrders() throws Exception {
+        // Given
+        placeOrders(1);
+        long withOneOrder = countHistoryStatements(1);
+        placeOrders(9);
+
+        // When
+        long withTenOrders = countHistoryStatements(10);
+
+        // Then - usuário, carrinho do usuário, pedidos e linhas
+        assertTrue(withOneOrder > 0, "no statements counted, are Hibernate statistics enabled?");
+        assertEquals(withOneOrder, withTenOrders);
+        assertTrue(withTenOrders <= 4, "history took " + withTenOrders + " statements");
+    }
+
+    private long countHistoryStatements(int expectedOrders) throws Exception {
+        statistics.clear();
+        mockMvc.perform(get("/api/order/history/" + user.getUsername()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(expectedOrders))
+                .andExpect(jsonPath("$[0].lines.length()").value(2))
+                .andExpect(jsonPath("$[0].user").doesNotExist());
+        return statistics.getPrepareStatementCount();
+    }
+
+    private void placeOrders(int count) {
+        Item roundWidget = itemRepository.findById(1L).orElseThrow();
+        Item squareWidget = itemRepository.findById(2L).orElseThrow();
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        for (int i = 0; i < count; i++) {
+            transaction.executeWithoutResult(status -> cartService.apply(
+                    cartRepository.findById(cart.getId()).orElseThrow(),
+                    List.of(new CartOperation(CartOperation.Type.ADD, 1L, 2),
+                            new CartOperation(CartOperation.Type.ADD, 2L, 1)),
+                    Map.of(1L, roundWidget, 2L, squareWidget)));
+            assertNotNull(checkoutService.checkout(user, cart.getId()));
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.demo;
+
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.Money;
+import com.example.demo.model.persistence.OrderLine;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.services.OrderLedger;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("OrderLedger Tests")
+class OrderLedgerTest {
+
+    // room for three single-line orders per segment
+    private static final int SEGMENT_BYTES = 256;
+
+    private static final Instant PLACED_AT = Instant.parse("2024-05-01T10:00:00.123456789Z");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("Deve ler todos os pedidos em ordem, atravessando segmentos")
+    void reader_ReadsEveryOrderAcrossSegments() throws Exception {
+        // Given
+        OrderLedger ledger = open();
+        for (long id = 1; id <= 7; id++) {
+            ledger.append(order(id, (int) id));
+        }
+
+        // When & Then
+        try (OrderLedger.Reader reader = ledger.reader(0)) {
+            for (long id = 1; id <= 7; id++) {
+                assertTrue(reader.next());
+                assertEquals(id, reader.orderId());
+                assertEquals(42L, reader.userId());
+                assertEquals(PLACED_AT, reader.createdAt());
+                assertEquals(299 * id, reader.totalMinorUnits());
+                assertEquals(1, reader.lineCount());
+                assertEquals(1L, reader.itemId(0));
+                assertEquals(id, reader.quantity(0));
+                assertEquals(299, reader.unitPriceMinorUnits(0));
+                assertEquals(299 * id, reader.lineTotalMinorUnits(0));
+            }
+            assertFalse(reader.next());
+            assertEquals(ledger.position(), reader.position());
+        }
+        ledger.close();
+    }
+
+    @Test
+    @DisplayName("Leitor acompanha o fim do ledger e retoma de uma posição")
+    void reader_FollowsTail() throws Exception {
+        // Given
+        OrderLedger ledger = open();
+        ledger.append(order(1, 1));
+        OrderLedger.Reader reader = ledger.reader(0);
+        assertTrue(reader.next());
+        assertFalse(reader.next());
+
+        // When
+        ledger.append(order(2, 1));
+        ledger.append(order(3, 1));
+        ledger.append(order(4, 1));
+
+        // Then
+        assertTrue(reader.next());
+        assertEquals(2, reader.orderId());
+        long resumeAt = reader.position();
+        reader.close();
+        try (OrderLedger.Reader resumed = ledger.reader(resumeAt)) {
+            assertTrue(resumed.next());
+            assertEquals(3, resumed.orderId());
+            assertTrue(resumed.next());
+            assertEquals(4, resumed.orderId());
+            assertFalse(resumed.next());
+        }
+        ledger.close();
+    }
+
+    @Test
+    @DisplayName("Deve descartar registro incompleto após queda e continuar gravando")
+    void open_CutsTornRecordAndResumes() throws Exception {
+        // Given
+        OrderLedger ledger = open();
+        ledger.append(order(1, 1));
+        ledger.append(order(2, 1));
+        long end = ledger.position();
+        ledger.close();
+        try (FileChannel file = FileChannel.open(directory.resolve("ledger-00000000000000000000.dat"),
+                StandardOpenOption.WRITE)) {
+            // a length with only part of the record behind it
+            file.write(ByteBuffer.allocate(20).putInt(80).putInt(12345).putLong(3L).putInt(7).flip(), end);
+        }
+
+        // When
+        OrderLedger reopened = open();
+        long position = reopened.append(order(3, 2));
+
+        // Then
+        assertEquals(end, position);
+        try (OrderLedger.Reader reader = reopened.reader(0)) {
+            for (long id = 1; id <= 3; id++) {
+                assertTrue(reader.next());
+                assertEquals(id, reader.orderId());
+            }
+            assertEquals(2, reader.quantity(0));
+            assertFalse(reader.next());
+        }
+        reopened.close();
+    }
+
+    @Test
+    @DisplayName("Deve gravar na reconciliação os pedidos perdidos na queda, sem duplicar os já gravados")
+    void reconcile_AppendsOrdersLostInCrash() throws Exception {
+        // Given - os pedidos 3 a 5 foram confirmados, mas só o 4 chegou ao ledger após reabrir
+        OrderLedger ledger = open();
+        ledger.append(order(1, 1));
+        ledger.append(order(2, 1));
+        ledger.close();
+        OrderLedger reopened = open();
+        reopened.append(order(4, 1));
+
+        // When
+        long after = reopened.lastOrderId();
+        int appended = reopened.reconcile(List.of(order(3, 1), order(4, 1), order(5, 1)));
+        reopened.reconciled();
+        long late = reopened.append(order(5, 1));
+
+        // Then
+        assertEquals(2, after);
+        assertEquals(2, appended);
+        assertEquals(-1, late);
+        try (OrderLedger.Reader reader = reopened.reader(0)) {
+            for (long id : new long[] {1, 2, 4, 3, 5}) {
+                assertTrue(reader.next());
+                assertEquals(id, reader.orderId());
+            }
+            assertFalse(reader.next());
+        }
+        reopened.close();
+    }
+
+    private OrderLedger open() throws Exception {
+        OrderLedger ledger = new OrderLedger(new SimpleMeterRegistry(), directory.toString(), SEGMENT_BYTES);
+        ledger.open();
+        return ledger;
+    }
+
+    private UserOrder order(long id, int quantity) {
+        Item item = new Item();
+        item.setId(1L);
+        item.setName("Round Widget");
+        item.setPrice(Money.of("2.99"));
+        User user = new User();
+        user.setId(42L);
+        UserOrder order = new UserOrder();
+        order.setId(id);
+        order.setUser(user);
+        order.setLines(List.of(new OrderLine(order, item, quantity)));
+        order.setTotal(Money.of("2.99").times(quantity));
+        order.setCreatedAt(PLACED_AT);
+        return order;
+    }
+}
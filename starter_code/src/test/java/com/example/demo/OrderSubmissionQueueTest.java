@@ -0,0 +1,174 @@
+package com.example.demo;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.model.persistence.repositories.CartRepository;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.requests.CartOperation;
+import com.example.demo.model.responses.OrderStatus;
+import com.example.demo.services.CartService;
+import com.example.demo.services.OrderSubmissionQueue;
+import com.example.demo.services.RevenueRollups;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+
+@SpringBootTest
+class OrderSubmissionQueueTest {
+
+    @Autowired
+    private OrderSubmissionQueue orderSubmissionQueue;
+
+    @Autowired
+    private CartService cartService;
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @MockBean
+    private RevenueRollups revenueRollups;
+
+    private User user;
+    private Cart cart;
+    private Item roundWidget;
+
+    @BeforeEach
+    void setUp() {
+        user = TestUsers.createWithCart(userRepository, "async");
+        cart = user.getCart();
+
+        roundWidget = itemRepository.findById(1L).orElseThrow();
+        cart = cartService.apply(cart, List.of(new CartOperation(CartOperation.Type.ADD, 1L, 2)), Map.of(1L, roundWidget));
+    }
+
+    @Test
+    @DisplayName("Pedido assíncrono é gravado uma vez mesmo se a contabilização pós-commit falhar")
+    void submit_PostCommitFailureDoesNotReinsert() throws Exception {
+        // Given
+        doThrow(new IllegalStateException("rollup unavailable")).when(revenueRollups).record(any(UserOrder.class));
+
+        // When
+        OrderStatus status = awaitFinished(orderSubmissionQueue.submit(buildOrder(), cart.getId(), cart.getVersion()));
+
+        // Then
+        assertEquals(OrderStatus.State.COMPLETED, status.getState());
+        assertNotNull(status.getOrderId());
+        assertEquals(1, countRows("select count(*) from user_order where user_id = ?", user.getId()));
+        assertEquals(0, countRows("select count(*) from cart_line where cart_id = ?", cart.getId()));
+    }
+
+    @Test
+    @DisplayName("Pedido assíncrono de um carrinho alterado depois não é gravado")
+    void submit_StaleCartFails() throws Exception {
+        // Given
+        UserOrder order = buildOrder();
+        long builtFrom = cart.getVersion();
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> cartService.apply(
+                cartRepository.findById(cart.getId()).orElseThrow(),
+                List.of(new CartOperation(CartOperation.Type.ADD, 1L, 1)), Map.of(1L, roundWidget)));
+
+        // When
+        OrderStatus status = awaitFinished(orderSubmissionQueue.submit(order, cart.getId(), builtFrom));
+
+        // Then
+        assertEquals(OrderStatus.State.FAILED, status.getState());
+        assertEquals(0, countRows("select count(*) from user_order where user_id = ?", user.getId()));
+        assertEquals(3, countRows("select sum(quantity) from cart_line where cart_id = ?", cart.getId()));
+    }
+
+    @Test
+    @DisplayName("Pedido assíncrono pendente em um reinício é gravado a partir do carrinho")
+    void resume_PlacesPendingSubmission() throws Exception {
+        // Given - registrado antes de uma parada, sem pedido em memória
+        String handle = recordPending(cart.getVersion());
+
+        // When
+        orderSubmissionQueue.resume();
+        OrderStatus status = awaitFinished(new OrderStatus(handle, OrderStatus.State.PENDING, null));
+
+        // Then
+        assertEquals(OrderStatus.State.COMPLETED, status.getState());
+        assertEquals(1, countRows("select count(*) from user_order where user_id = ?", user.getId()));
+        assertEquals(0, countRows("select count(*) from cart_line where cart_id = ?", cart.getId()));
+        assertEquals("COMPLETED", jdbcTemplate.queryForObject(
+                "select state from order_submission where handle = ?", String.class, handle));
+    }
+
+    @Test
+    @DisplayName("Pedido pendente de um carrinho alterado durante a parada falha e o estado é lido da tabela")
+    void resume_StaleCartFailsFromTable() throws Exception {
+        // Given
+        String handle = recordPending(cart.getVersion() - 1);
+
+        // When
+        orderSubmissionQueue.resume();
+        OrderStatus status = orderSubmissionQueue.status(handle);
+
+        // Then
+        assertEquals(OrderStatus.State.FAILED, status.getState());
+        assertNull(status.getOrderId());
+        assertEquals(0, countRows("select count(*) from user_order where user_id = ?", user.getId()));
+        assertEquals(2, countRows("select sum(quantity) from cart_line where cart_id = ?", cart.getId()));
+    }
+
+    // ==================== MÉTODOS AUXILIARES ====================
+
+    private String recordPending(long cartVersion) {
+        String handle = UUID.randomUUID().toString();
+        jdbcTemplate.update("insert into order_submission (handle, user_id, cart_id, cart_version, state, accepted_at)"
+                + " values (?, ?, ?, ?, 'PENDING', current_timestamp)", handle, user.getId(), cart.getId(), cartVersion);
+        return handle;
+    }
+
+    private UserOrder buildOrder() {
+        UserOrder order = new TransactionTemplate(transactionManager).execute(status ->
+                UserOrder.createFromCart(cartRepository.findById(cart.getId()).orElseThrow()));
+        order.setUser(user);
+        return order;
+    }
+
+    private OrderStatus awaitFinished(OrderStatus pending) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (System.currentTimeMillis() < deadline) {
+            OrderStatus status = orderSubmissionQueue.status(pending.getHandle());
+            if (status.getState() != OrderStatus.State.PENDING) {
+                return status;
+            }
+            Thread.sleep(20);
+        }
+        return fail("Order " + pending.getHandle() + " is still pending");
+    }
+
+    private int countRows(String sql, Long id) {
+        return jdbcTemplate.queryForObject(sql, Integer.class, id);
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.demo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.example.demo.model.requests.CartOperation;
+import com.example.demo.services.ReplicatedCart;
+
+@DisplayName("ReplicatedCart CRDT Tests")
+public class ReplicatedCartTest {
+
+    private ReplicatedCart nodeA;
+
+    private ReplicatedCart nodeB;
+
+    @BeforeEach
+    void setUp() {
+        nodeA = new ReplicatedCart();
+        nodeB = new ReplicatedCart();
+        nodeA.setQuantity(ReplicatedCart.BASE_REPLICA, 1L, 2);
+        nodeB.setQuantity(ReplicatedCart.BASE_REPLICA, 1L, 2);
+    }
+
+    @Test
+    @DisplayName("Deve convergir com edições concorrentes em nós diferentes")
+    void testConcurrentEdits_Converge() {
+        // Given
+        nodeA.apply("a", new CartOperation(CartOperation.Type.ADD, 1L, 3));
+        nodeB.apply("b", new CartOperation(CartOperation.Type.REMOVE, 1L, 2));
+        nodeB.apply("b", new CartOperation(CartOperation.Type.ADD, 2L, 1));
+
+        // When
+        ReplicatedCart mergedA = nodeA.copy();
+        mergedA.merge(nodeB);
+        ReplicatedCart mergedB = nodeB.copy();
+        mergedB.merge(nodeA);
+
+        // Then
+        assertEquals(Map.of(1L, 3, 2L, 1), mergedA.quantities());
+        assertEquals(mergedA.quantities(), mergedB.quantities());
+    }
+
+    @Test
+    @DisplayName("Versão deriva dos contadores: cresce a cada edição e coincide entre nós convergidos")
+    void testVersion_DerivedFromCounters() {
+        // Given
+        long initial = nodeA.getVersion();
+        nodeA.apply("a", new CartOperation(CartOperation.Type.ADD, 1L, 3));
+        nodeB.apply("b", new CartOperation(CartOperation.Type.REMOVE, 1L, 1));
+        assertTrue(nodeA.getVersion() > initial);
+
+        // When
+        ReplicatedCart mergedA = nodeA.copy();
+        mergedA.merge(nodeB);
+        ReplicatedCart mergedB = nodeB.copy();
+        mergedB.merge(nodeA);
+        mergedB.merge(nodeA);
+
+        // Then
+        assertEquals(mergedA.getVersion(), mergedB.getVersion());
+        assertTrue(mergedA.getVersion() > nodeA.getVersion());
+    }
+
+    @Test
+    @DisplayName("Deve ser idempotente ao mesclar o mesmo estado várias vezes")
+    void testMerge_Idempotent() {
+        // Given
+        nodeB.apply("b", new CartOperation(CartOperation.Type.ADD, 1L, 1));
+        nodeA.merge(nodeB);
+
+        // When
+        boolean changed = nodeA.merge(nodeB);
+
+        // Then
+        assertFalse(changed);
+        assertEquals(3, nodeA.getQuantity(1L));
+    }
+
+    @Test
+    @DisplayName("Não deve duplicar as linhas carregadas do banco em cada nó")
+    void testBaseReplica_NotCountedTwice() {
+        // When
+        nodeA.merge(nodeB);
+
+        // Then
+        assertEquals(2, nodeA.getQuantity(1L));
+    }
+
+    @Test
+    @DisplayName("Remoções concorrentes não devem engolir uma adição posterior")
+    void testConcurrentRemovals_ThenAdd() {
+        // Given
+        nodeA.apply("a", new CartOperation(CartOperation.Type.REMOVE, 1L, 2));
+        nodeB.apply("b", new CartOperation(CartOperation.Type.REMOVE, 1L, 2));
+        nodeA.merge(nodeB);
+        assertEquals(0, nodeA.getQuantity(1L));
+
+        // When
+        nodeA.apply("a", new CartOperation(CartOperation.Type.ADD, 1L, 1));
+
+        // Then
+        assertEquals(1, nodeA.getQuantity(1L));
+        assertEquals(Map.of(1L, 1), nodeA.quantities());
+    }
+}
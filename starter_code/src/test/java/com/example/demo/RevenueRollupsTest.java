@@ -0,0 +1,173 @@
+package com.example.demo;
+
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.Money;
+import com.example.demo.model.persistence.OrderLine;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.RevenueRollup.Granularity;
+import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.responses.RevenueReport;
+import com.example.demo.services.RevenueRollups;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "order.rollup.flush-interval-ms=3600000")
+class RevenueRollupsTest {
+
+    private static final int THREADS = 8;
+    private static final int ITERATIONS = 250;
+
+    @Autowired
+    private RevenueRollups revenueRollups;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Test
+    @DisplayName("Deve agregar pedidos por minuto, hora e dia")
+    void report_AggregatesByBucket() {
+        // Given
+        revenueRollups.record(order("2001-03-04T10:15:30Z", "2.99", 1));
+        revenueRollups.record(order("2001-03-04T10:15:59Z", "5.98", 2));
+        revenueRollups.record(order("2001-03-04T11:00:00Z", "1.99", 1));
+
+        // When
+        RevenueReport byMinute = revenueRollups.report(Granularity.MINUTE,
+                Instant.parse("2001-03-04T10:00:00Z"), Instant.parse("2001-03-04T12:00:00Z"));
+        RevenueReport byDay = revenueRollups.report(Granularity.DAY,
+                Instant.parse("2001-03-04T00:00:00Z"), Instant.parse("2001-03-05T00:00:00Z"));
+
+        // Then
+        assertEquals(2, byMinute.getBuckets().size());
+        assertEquals(Instant.parse("2001-03-04T10:15:00Z"), byMinute.getBuckets().get(0).getStart());
+        assertEquals(2, byMinute.getBuckets().get(0).getOrders());
+        assertEquals(Money.of("8.97"), byMinute.getBuckets().get(0).getRevenue());
+        assertEquals(3, byMinute.getBuckets().get(0).getUnits());
+        assertEquals(1, byDay.getBuckets().size());
+        assertEquals(3, byDay.getOrders());
+        assertEquals(Money.of("10.96"), byDay.getRevenue());
+        assertEquals(4, byDay.getUnits());
+    }
+
+    @Test
+    @DisplayName("Flush grava as diferenças na tabela sem contar duas vezes")
+    void flush_WritesDeltasOnce() {
+        // Given
+        Instant from = Instant.parse("2002-06-01T00:00:00Z");
+        Instant to = Instant.parse("2002-06-02T00:00:00Z");
+        revenueRollups.record(order("2002-06-01T08:00:00Z", "2.99", 1));
+
+        // When
+        revenueRollups.flush();
+        revenueRollups.record(order("2002-06-01T09:00:00Z", "1.99", 1));
+        revenueRollups.flush();
+        revenueRollups.flush();
+
+        // Then
+        assertEquals(2, revenueRollups.report(Granularity.DAY, from, to).getOrders());
+        assertEquals(Money.of("4.98"), revenueRollups.report(Granularity.HOUR, from, to).getRevenue());
+        assertEquals(2, jdbcTemplate.queryForObject(
+                "select orders from revenue_rollup where granularity = 'DAY' and bucket_start = ?",
+                Long.class, OffsetDateTime.ofInstant(from, ZoneOffset.UTC)));
+    }
+
+    @Test
+    @DisplayName("Registros concorrentes não perdem pedidos")
+    void record_ConcurrentOrdersAreAllCounted() throws Exception {
+        // Given
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        // When
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    revenueRollups.record(order("2003-01-01T00:00:01Z", "1.00", 1));
+                    if (i % 50 == 0) {
+                        revenueRollups.flush();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        revenueRollups.flush();
+
+        // Then
+        RevenueReport report = revenueRollups.report(Granularity.MINUTE,
+                Instant.parse("2003-01-01T00:00:00Z"), Instant.parse("2003-01-01T00:01:00Z"));
+        assertEquals(THREADS * ITERATIONS, report.getOrders());
+        assertEquals(Money.of("2000.00"), report.getRevenue());
+    }
+
+    @Test
+    @DisplayName("Backfill conta os pedidos já existentes uma única vez")
+    void backfill_CountsExistingOrdersOnce() {
+        // Given - pedidos gravados antes das agregações existirem
+        User user = TestUsers.createWithCart(userRepository, "rollup");
+        insertOrder(user, "2004-02-03T10:15:00Z", "5.98", 2);
+        insertOrder(user, "2004-02-03T18:00:00Z", "1.99", 1);
+        jdbcTemplate.update("delete from revenue_rollup");
+        Instant from = Instant.parse("2004-02-03T00:00:00Z");
+        Instant to = Instant.parse("2004-02-04T00:00:00Z");
+
+        // When
+        revenueRollups.backfill();
+        revenueRollups.backfill();
+
+        // Then
+        RevenueReport byDay = revenueRollups.report(Granularity.DAY, from, to);
+        assertEquals(2, byDay.getOrders());
+        assertEquals(Money.of("7.97"), byDay.getRevenue());
+        assertEquals(3, byDay.getUnits());
+        assertEquals(2, revenueRollups.report(Granularity.HOUR, from, to).getBuckets().size());
+    }
+
+    private UserOrder order(String createdAt, String price, int quantity) {
+        Item item = new Item();
+        item.setId(1L);
+        item.setName("Round Widget");
+        item.setPrice(Money.of(price));
+        UserOrder order = new UserOrder();
+        order.setLines(List.of(new OrderLine(order, item, quantity)));
+        order.setTotal(Money.of(price));
+        order.setCreatedAt(Instant.parse(createdAt));
+        return order;
+    }
+
+    private void insertOrder(User user, String createdAt, String total, int quantity) {
+        jdbcTemplate.update("insert into user_order (user_id, total, created_at) values (?, ?, ?)",
+                user.getId(), new BigDecimal(total), Timestamp.from(Instant.parse(createdAt)));
+        Long orderId = jdbcTemplate.queryForObject("select max(id) from user_order where user_id = ?", Long.class,
+                user.getId());
+        jdbcTemplate.update("insert into user_order_line (order_id, item_id, name, unit_price, quantity, line_total)"
+                + " values (?, 1, 'Round Widget', 2.99, ?, ?)", orderId, quantity, new BigDecimal(total));
+    }
+}
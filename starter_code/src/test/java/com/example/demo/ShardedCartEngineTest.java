@@ -0,0 +1,121 @@
+package com.example.demo;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.repositories.CartRepository;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.requests.CartOperation;
+import com.example.demo.services.ShardedCartEngine;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "cart.engine=sharded",
+        "cart.sharded.shards=3"
+})
+class ShardedCartEngineTest {
+
+    private static final int THREADS = 12;
+    private static final int ITERATIONS = 25;
+
+    @Autowired
+    private ShardedCartEngine cartEngine;
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Cart cart;
+    private Item roundWidget;
+
+    @BeforeEach
+    void setUp() {
+        cart = TestUsers.createWithCart(userRepository, "sharded").getCart();
+
+        roundWidget = itemRepository.findById(1L).orElseThrow();
+    }
+
+    @Test
+    @DisplayName("Quantidade de shards segue a configuração")
+    void shardCount_FromProperty() {
+        assertEquals(3, cartEngine.getShardCount());
+    }
+
+    @Test
+    @DisplayName("Shard único aplica mutações concorrentes sem perder atualizações")
+    void concurrentMutations_KeepExactTotal() throws Exception {
+        // Given
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        // When
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    cartEngine.apply(cart, List.of(new CartOperation(CartOperation.Type.ADD, 1L, 1)),
+                            Map.of(1L, roundWidget));
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        // Then
+        int units = THREADS * ITERATIONS;
+        assertEquals(units, cartRepository.findLineQuantity(cart.getId(), 1L));
+        Cart persisted = cartRepository.findById(cart.getId()).orElseThrow();
+        assertEquals(0, roundWidget.getPrice().times(units).compareTo(persisted.getTotal()));
+    }
+
+    @Test
+    @DisplayName("Carrinho esvaziado no banco antes da invalidação não é ressuscitado pelo cache do shard")
+    void emptiedInDatabase_NotResurrectedFromCache() {
+        // Given - o shard guarda o carrinho em cache e o checkout o esvazia sem passar por ele
+        Cart cached = cartEngine.apply(cart, List.of(new CartOperation(CartOperation.Type.ADD, 1L, 2)),
+                Map.of(1L, roundWidget));
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            cartRepository.resetTotalIfVersion(cart.getId(), cached.getVersion());
+            cartRepository.deleteLines(List.of(cart.getId()));
+        });
+
+        // When
+        Cart result = cartEngine.apply(cart, List.of(new CartOperation(CartOperation.Type.ADD, 1L, 1)),
+                Map.of(1L, roundWidget));
+
+        // Then
+        assertEquals(1, result.getQuantity(roundWidget));
+        assertEquals(1, cartRepository.findLineQuantity(cart.getId(), 1L));
+        Cart persisted = cartRepository.findById(cart.getId()).orElseThrow();
+        assertEquals(0, roundWidget.getPrice().compareTo(persisted.getTotal()));
+    }
+}
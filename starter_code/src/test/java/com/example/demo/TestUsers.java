@@ -0,0 +1,28 @@
+package com.example.demo;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.repositories.UserRepository;
+
+import java.util.UUID;
+
+/**
+ * Persists users for the tests that run against the database. The user and
+ * its empty cart go in one save, and every username is unique so tests
+ * sharing the context never collide.
+ */
+final class TestUsers {
+
+    private TestUsers() {
+    }
+
+    static User createWithCart(UserRepository userRepository, String prefix) {
+        User user = new User();
+        user.setUsername(prefix + "-" + UUID.randomUUID());
+        user.setPassword("hashedPassword");
+        Cart cart = new Cart();
+        cart.setUser(user);
+        user.setCart(cart);
+        return userRepository.save(user);
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.demo;
+
+import com.example.demo.services.TimingWheel;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("TimingWheel Tests")
+class TimingWheelTest {
+
+    @Test
+    @DisplayName("Deve expirar a chave quando o prazo passa")
+    void advance_ExpiresDueKeys() {
+        // Given
+        TimingWheel<Long> wheel = new TimingWheel<>(10, 8, 3, 0);
+        wheel.schedule(1L, 50);
+        wheel.schedule(2L, 120);
+
+        // When & Then
+        assertTrue(wheel.advance(40).isEmpty());
+        assertEquals(List.of(1L), wheel.advance(50));
+        assertTrue(wheel.advance(110).isEmpty());
+        assertEquals(List.of(2L), wheel.advance(120));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    @DisplayName("Deve descer prazos longos pelos níveis até expirar no tick certo")
+    void advance_CascadesLongDeadlines() {
+        // Given - 8 * 8 * 8 ticks cabem nos três níveis
+        TimingWheel<Long> wheel = new TimingWheel<>(1, 8, 3, 0);
+        wheel.schedule(1L, 300);
+        wheel.schedule(2L, 2000); // além do último nível
+
+        // When & Then
+        assertTrue(wheel.advance(299).isEmpty());
+        assertEquals(List.of(1L), wheel.advance(300));
+        assertTrue(wheel.advance(1999).isEmpty());
+        assertEquals(List.of(2L), wheel.advance(2000));
+    }
+
+    @Test
+    @DisplayName("Novo toque adia a expiração e cancelamento remove a chave")
+    void schedule_MovesDeadline() {
+        // Given
+        TimingWheel<Long> wheel = new TimingWheel<>(1, 16, 2, 0);
+        wheel.schedule(1L, 10);
+        wheel.schedule(2L, 10);
+
+        // When
+        wheel.schedule(1L, 30);
+        assertTrue(wheel.cancel(2L));
+
+        // Then
+        assertTrue(wheel.advance(29).isEmpty());
+        assertEquals(List.of(1L), wheel.advance(30));
+        assertFalse(wheel.cancel(2L));
+    }
+
+    @Test
+    @DisplayName("Deve concordar com uma implementação ingênua em prazos aleatórios")
+    void advance_MatchesNaiveModel() {
+        // Given
+        Random random = new Random(42);
+        TimingWheel<Long> wheel = new TimingWheel<>(1, 4, 3, 0);
+        Map<Long, Long> deadlines = new HashMap<>();
+
+        // When & Then
+        for (long now = 1; now <= 500; now++) {
+            for (int i = 0; i < 3; i++) {
+                long key = random.nextInt(50);
+                long deadline = now + random.nextInt(150);
+                wheel.schedule(key, deadline);
+                deadlines.put(key, deadline);
+            }
+            List<Long> expected = new ArrayList<>();
+            final long tick = now;
+            deadlines.forEach((key, deadline) -> {
+                if (deadline <= tick) {
+                    expected.add(key);
+                }
+            });
+            expected.forEach(deadlines::remove);
+
+            List<Long> expired = wheel.advance(now);
+            assertEquals(expected.size(), expired.size(), "tick " + now);
+            assertTrue(expired.containsAll(expected), "tick " + now);
+        }
+    }
+}
@@ -85,6 +85,42 @@ class UserControllerTest {
         verify(bCryptPasswordEncoder).encode("password123");
     }
 
+    @Test
+    @DisplayName("Criar usuário repetido com a mesma Idempotency-Key - cria uma vez e repete a resposta")
+    void createUser_IdempotentRetry() throws Exception {
+        // Given
+        CreateUserRequest request = createValidUserRequest();
+        request.setUsername("retryuser");
+        String body = objectMapper.writeValueAsString(request);
+
+        when(bCryptPasswordEncoder.encode("password123")).thenReturn("hashedPassword");
+        doAnswer(invocation -> {
+            User user = invocation.getArgument(0);
+            user.setId(7L);
+            return user;
+        }).when(userRepository).save(any(User.class));
+
+        mockMvc.perform(post("/api/user/create")
+                        .header("Idempotency-Key", "create-retryuser-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Idempotent-Replayed"));
+
+        // When & Then
+        mockMvc.perform(post("/api/user/create")
+                        .header("Idempotency-Key", "create-retryuser-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Idempotent-Replayed", "true"))
+                .andExpect(jsonPath("$.username").value("retryuser"))
+                .andExpect(jsonPath("$.id").value(7));
+
+        verify(userRepository, times(1)).save(any(User.class));
+        verify(userRepository, times(1)).findByUsername("retryuser");
+    }
+
     @Test
     @DisplayName("Criar usuário - senha nula")
     void createUser_NullPassword() throws Exception {
@@ -0,0 +1,163 @@
+package com.example.demo;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.Money;
+import com.example.demo.model.persistence.repositories.CartRepository;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.requests.CartOperation;
+import com.example.demo.services.WriteBehindCartEngine;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "cart.engine=write-behind",
+        "cart.write-behind.flush-interval-ms=3600000",
+        "cart.write-behind.max-carts=2"
+})
+class WriteBehindCartEngineTest {
+
+    @Autowired
+    private WriteBehindCartEngine cartEngine;
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Cart cart;
+    private Item roundWidget;
+
+    @BeforeEach
+    void setUp() {
+        cart = TestUsers.createWithCart(userRepository, "write-behind").getCart();
+
+        roundWidget = itemRepository.findById(1L).orElseThrow();
+    }
+
+    @Test
+    @DisplayName("Mutações ficam em memória até o flush")
+    void apply_DoesNotWriteUntilFlush() {
+        // When
+        Cart result = cartEngine.apply(cart, List.of(new CartOperation(CartOperation.Type.ADD, 1L, 3)),
+                Map.of(1L, roundWidget));
+
+        // Then
+        assertEquals(3, result.getQuantity(roundWidget));
+        assertNull(cartRepository.findLineQuantity(cart.getId(), 1L));
+        assertEquals(1.0, meterRegistry.get("cart.write_behind.queue.depth").gauge().value());
+
+        // When
+        cartEngine.flushDirty();
+
+        // Then
+        assertEquals(3, cartRepository.findLineQuantity(cart.getId(), 1L));
+        Cart persisted = cartRepository.findById(cart.getId()).orElseThrow();
+        assertEquals(0, Money.of("8.97").compareTo(persisted.getTotal()));
+        assertEquals(0.0, meterRegistry.get("cart.write_behind.queue.depth").gauge().value());
+        assertTrue(meterRegistry.get("cart.write_behind.batch.size").summary().count() > 0);
+    }
+
+    @Test
+    @DisplayName("Carrinhos limpos além do limite saem da memória e voltam do banco na próxima mudança")
+    void flushDirty_EvictsLeastRecentlyUsedCleanCarts() {
+        // Given
+        Cart second = TestUsers.createWithCart(userRepository, "write-behind").getCart();
+        Cart third = TestUsers.createWithCart(userRepository, "write-behind").getCart();
+        for (Cart each : List.of(cart, second, third)) {
+            cartEngine.apply(each, List.of(new CartOperation(CartOperation.Type.ADD, 1L, 2)), Map.of(1L, roundWidget));
+        }
+
+        // When
+        cartEngine.flushDirty();
+
+        // Then - o menos usado saiu, os outros continuam em memória
+        assertNull(cartEngine.current(cart.getId()));
+        assertNotNull(cartEngine.current(second.getId()));
+        assertNotNull(cartEngine.current(third.getId()));
+        assertTrue(meterRegistry.get("cart.write_behind.evictions").counter().count() > 0);
+
+        // When - a cópia antiga do chamador não sobrescreve o que foi gravado
+        Cart result = cartEngine.apply(cart, List.of(new CartOperation(CartOperation.Type.ADD, 1L, 1)),
+                Map.of(1L, roundWidget));
+
+        // Then
+        assertEquals(3, result.getQuantity(roundWidget));
+    }
+
+    @Test
+    @DisplayName("Flush forçado grava o carrinho antes do checkout")
+    void flush_WritesSingleCart() {
+        // Given
+        cartEngine.apply(cart, List.of(new CartOperation(CartOperation.Type.ADD, 1L, 2)), Map.of(1L, roundWidget));
+        cartEngine.apply(cart, List.of(new CartOperation(CartOperation.Type.REMOVE, 1L, 1)), Map.of(1L, roundWidget));
+
+        // When
+        Cart flushed = cartEngine.flush(cart);
+
+        // Then
+        assertEquals(1, flushed.getQuantity(roundWidget));
+        assertEquals(1, cartRepository.findLineQuantity(cart.getId(), 1L));
+    }
+
+    @Test
+    @DisplayName("Expirar durante mutações concorrentes não quebra o flush")
+    void expire_ConcurrentWithApply() throws Exception {
+        // Given
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        // When
+        for (int t = 0; t < 3; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < 500; i++) {
+                    cartEngine.apply(cart, List.of(new CartOperation(CartOperation.Type.ADD, 1L, 1)),
+                            Map.of(1L, roundWidget));
+                }
+                return null;
+            }));
+        }
+        futures.add(executor.submit(() -> {
+            start.await();
+            for (int i = 0; i < 200; i++) {
+                cartEngine.expire(List.of(cart.getId()));
+                cartEngine.flushDirty();
+            }
+            return null;
+        }));
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        Cart latest = cartEngine.apply(cart, List.of(new CartOperation(CartOperation.Type.ADD, 1L, 1)), Map.of(1L, roundWidget));
+        cartEngine.flushDirty();
+
+        // Then
+        assertEquals(latest.getQuantity(roundWidget), cartRepository.findLineQuantity(cart.getId(), 1L));
+    }
+}